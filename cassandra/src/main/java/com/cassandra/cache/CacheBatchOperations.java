@@ -0,0 +1,196 @@
+package com.cassandra.cache;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.UnaryOperator;
+
+import org.springframework.data.redis.cache.RedisCacheConfiguration;
+import org.springframework.data.redis.connection.ClusterSlotHashUtil;
+import org.springframework.data.redis.connection.RedisClusterConnection;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.RedisStringCommands.SetOption;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.connection.jedis.JedisClusterConnection;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.data.redis.util.ByteUtils;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Multi-key reads and writes against the redis caches in one round trip.
+ * Keys and values are written exactly as RedisCache would write them (same prefix, serializers and TTL)
+ * so entries are interchangeable with the ones the cache annotations create.
+ */
+@Slf4j
+public class CacheBatchOperations {
+
+	/**
+	 * SET the new value only if the key still holds the value it was made from, otherwise DEL it - the key
+	 * was changed in between and neither copy can be trusted.  ARGV: expected, new value, TTL in ms or 0.
+	 */
+	public static final String COMPARE_AND_SET = "if redis.call('GET', KEYS[1]) == ARGV[1] then"
+			+ " if ARGV[3] == '0' then redis.call('SET', KEYS[1], ARGV[2])"
+			+ " else redis.call('SET', KEYS[1], ARGV[2], 'PX', ARGV[3]) end"
+			+ " return 1 end"
+			+ " redis.call('DEL', KEYS[1]) return 0";
+
+	private final RedisConnectionFactory connectionFactory;
+	private final RedisCacheConfiguration defaultConfiguration;
+	private final Map<String, RedisCacheConfiguration> cacheConfigurations;
+
+	public CacheBatchOperations(RedisConnectionFactory connectionFactory, RedisCacheConfiguration defaultConfiguration,
+			Map<String, RedisCacheConfiguration> cacheConfigurations) {
+		this.connectionFactory = connectionFactory;
+		this.defaultConfiguration = defaultConfiguration;
+		this.cacheConfigurations = cacheConfigurations;
+	}
+
+	public RedisCacheConfiguration configurationFor(String cacheName) {
+		return this.cacheConfigurations.getOrDefault(cacheName, this.defaultConfiguration);
+	}
+
+	/**
+	 * One MGET for all the keys, one per hash slot on a cluster.  The result only has the keys that were found, in request order.
+	 */
+	public Map<Object, Object> getAll(String cacheName, Collection<?> keys) {
+		Map<Object, Object> found = new LinkedHashMap<>();
+		if (keys.isEmpty()) {
+			return found;
+		}
+		Object[] requested = keys.toArray();
+		byte[][] rawKeys = new byte[requested.length][];
+		for (int i = 0; i < requested.length; i++) {
+			rawKeys[i] = cacheKey(cacheName, requested[i]);
+		}
+		List<byte[]> values;
+		try (RedisConnection connection = this.connectionFactory.getConnection()) {
+			values = mGet(connection, rawKeys);
+		}
+		for (int i = 0; values != null && i < requested.length; i++) {
+			byte[] value = values.get(i);
+			if (value != null) {
+				found.put(requested[i], deserializeValue(cacheName, value));
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * Pipelined SET with the cache TTL for every entry, null values are skipped.
+	 * A cluster routes every SET to the node owning its slot, with jedis on a cluster they are not pipelined.
+	 */
+	public void putAll(String cacheName, Map<?, ?> entries) {
+		if (entries.isEmpty()) {
+			return;
+		}
+		Duration ttl = configurationFor(cacheName).getTtl();
+		Expiration expiration = ttl.isZero() || ttl.isNegative() ? Expiration.persistent() : Expiration.from(ttl);
+		try (RedisConnection connection = this.connectionFactory.getConnection()) {
+			boolean pipelined = canPipeline(connection);
+			if (pipelined)
+				connection.openPipeline();
+			try {
+				entries.forEach((key, value) -> {
+					if (value != null) {
+						connection.stringCommands().set(cacheKey(cacheName, key), serializeValue(cacheName, value),
+								expiration, SetOption.upsert());
+					}
+				});
+			} finally {
+				if (pipelined)
+					connection.closePipeline();
+			}
+		}
+		log.debug("pipelined " + entries.size() + " entries into " + cacheName);
+	}
+
+	/**
+	 * Changes a cached entry in place: GET, the function, then a compare-and-set so a write that landed in
+	 * between is not overwritten.  Nothing is cached when the key is missing.
+	 *
+	 * @return the new value, null when the key wasn't cached or changed in between and was removed
+	 */
+	public Object replace(String cacheName, Object key, UnaryOperator<Object> function) {
+		byte[] rawKey = cacheKey(cacheName, key);
+		try (RedisConnection connection = this.connectionFactory.getConnection()) {
+			byte[] current = connection.stringCommands().get(rawKey);
+			if (current == null) {
+				return null;
+			}
+			Object replaced = function.apply(deserializeValue(cacheName, current));
+			byte[] ttl = String.valueOf(ttlFor(cacheName).toMillis()).getBytes();
+			Long applied = connection.scriptingCommands().eval(COMPARE_AND_SET.getBytes(), ReturnType.INTEGER, 1,
+					rawKey, current, serializeValue(cacheName, replaced), ttl);
+			return applied != null && applied == 1 ? replaced : null;
+		}
+	}
+
+	//  a cluster only runs a multi-key command on keys of one hash slot, so the keys are grouped by slot and
+	//  the MGETs are pipelined to the nodes owning them.  jedis can't pipeline on a cluster, there they run in turn
+	private static List<byte[]> mGet(RedisConnection connection, byte[][] rawKeys) {
+		if (!(connection instanceof RedisClusterConnection)) {
+			return connection.stringCommands().mGet(rawKeys);
+		}
+		Map<Integer, List<Integer>> bySlot = new LinkedHashMap<>();
+		for (int i = 0; i < rawKeys.length; i++) {
+			bySlot.computeIfAbsent(ClusterSlotHashUtil.calculateSlot(rawKeys[i]), slot -> new ArrayList<>()).add(i);
+		}
+		List<Object> replies = new ArrayList<>(bySlot.size());
+		boolean pipelined = canPipeline(connection);
+		if (pipelined)
+			connection.openPipeline();
+		for (List<Integer> indexes : bySlot.values()) {
+			byte[][] slotKeys = new byte[indexes.size()][];
+			for (int j = 0; j < slotKeys.length; j++) {
+				slotKeys[j] = rawKeys[indexes.get(j)];
+			}
+			List<byte[]> reply = connection.stringCommands().mGet(slotKeys);
+			if (!pipelined)
+				replies.add(reply);
+		}
+		if (pipelined)
+			replies = connection.closePipeline();
+		byte[][] values = new byte[rawKeys.length][];
+		int group = 0;
+		for (List<Integer> indexes : bySlot.values()) {
+			List<?> reply = (List<?>) replies.get(group++);
+			for (int j = 0; j < indexes.size(); j++) {
+				values[indexes.get(j)] = (byte[]) reply.get(j);
+			}
+		}
+		return Arrays.asList(values);
+	}
+
+	private static boolean canPipeline(RedisConnection connection) {
+		return !(connection instanceof JedisClusterConnection);
+	}
+
+	/**
+	 * The TTL for one new entry of the cache.  Zero means no expiry.
+	 */
+	public Duration ttlFor(String cacheName) {
+		Duration ttl = configurationFor(cacheName).getTtl();
+		return ttl.isNegative() ? Duration.ZERO : ttl;
+	}
+
+	public byte[] cacheKey(String cacheName, Object key) {
+		RedisCacheConfiguration configuration = configurationFor(cacheName);
+		String redisKey = configuration.getKeyPrefixFor(cacheName) + key;
+		return ByteUtils.getBytes(configuration.getKeySerializationPair().write(redisKey));
+	}
+
+	public byte[] serializeValue(String cacheName, Object value) {
+		return ByteUtils.getBytes(configurationFor(cacheName).getValueSerializationPair().write(value));
+	}
+
+	public Object deserializeValue(String cacheName, byte[] value) {
+		return configurationFor(cacheName).getValueSerializationPair().read(ByteBuffer.wrap(value));
+	}
+}
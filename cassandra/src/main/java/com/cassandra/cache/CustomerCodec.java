@@ -0,0 +1,288 @@
+package com.cassandra.cache;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import com.cassandra.models.Customer;
+
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4FastDecompressor;
+
+/**
+ * Binary cache value format for {@link Customer} and {@code List<Customer>}.
+ * <pre>
+ * byte     format version (1)
+ * byte     type, 1 customer or 2 list of customers, 0x80 bit set when the rest is lz4 compressed
+ * [varint  uncompressed length, only when compressed]
+ * customer 0x01 and the 16 byte uuid id (a single 0x00 for a null id), then name, contactName, address, city, postalCode, country each as
+ *          varint (utf-8 length + 1, 0 for null) followed by the utf-8 bytes
+ * list     varint count followed by that many customers
+ * </pre>
+ * No class names and no field names, so values are a fraction of the JSON size and decode without reflection.
+ * Anything else, and JSON values written before this codec was switched on, go through the JSON serializer -
+ * JSON never starts with the version byte.
+ */
+public class CustomerCodec implements RedisSerializer<Object> {
+
+	static final byte VERSION_1 = 1;
+	static final byte TYPE_CUSTOMER = 1;
+	static final byte TYPE_LIST = 2;
+	static final byte FLAG_LZ4 = (byte) 0x80;
+
+	private static final LZ4Factory LZ4 = LZ4Factory.fastestInstance();
+
+	private final GenericJackson2JsonRedisSerializer fallback = new GenericJackson2JsonRedisSerializer();
+	private final LZ4Compressor compressor = LZ4.fastCompressor();
+	private final LZ4FastDecompressor decompressor = LZ4.fastDecompressor();
+	private final int compressionThreshold;
+
+	/**
+	 * @param compressionThreshold list values whose encoded size is at least this many bytes are lz4 compressed,
+	 *                             0 or less turns compression off
+	 */
+	public CustomerCodec(int compressionThreshold) {
+		this.compressionThreshold = compressionThreshold;
+	}
+
+	@Override
+	public byte[] serialize(Object value) throws SerializationException {
+		if (value instanceof Customer customer) {
+			Output out = new Output(64);
+			out.writeByte(VERSION_1);
+			out.writeByte(TYPE_CUSTOMER);
+			writeCustomer(out, customer);
+			return out.toByteArray();
+		}
+		if (value instanceof List<?> list && isCustomerList(list)) {
+			Output body = new Output(16 + list.size() * 64);
+			body.writeVarLong(list.size());
+			for (Object customer : list) {
+				writeCustomer(body, (Customer) customer);
+			}
+			return withListHeader(body);
+		}
+		return this.fallback.serialize(value);
+	}
+
+	@Override
+	public Object deserialize(byte[] bytes) throws SerializationException {
+		if (bytes == null || bytes.length == 0) {
+			return null;
+		}
+		if (bytes[0] != VERSION_1) {
+			return this.fallback.deserialize(bytes);
+		}
+		if (bytes.length < 2) {
+			throw new SerializationException("truncated customer value");
+		}
+		byte type = bytes[1];
+		Input in = new Input(bytes, 2, bytes.length);
+		if ((type & FLAG_LZ4) != 0) {
+			int length = (int) in.readVarLong();
+			byte[] raw = new byte[length];
+			this.decompressor.decompress(bytes, in.position, raw, 0, length);
+			in = new Input(raw, 0, length);
+			type &= ~FLAG_LZ4;
+		}
+		switch (type) {
+		case TYPE_CUSTOMER:
+			return readCustomer(in);
+		case TYPE_LIST:
+			int count = (int) in.readVarLong();
+			List<Customer> customers = new ArrayList<>(count);
+			for (int i = 0; i < count; i++) {
+				customers.add(readCustomer(in));
+			}
+			return customers;
+		default:
+			throw new SerializationException("unknown customer value type " + type);
+		}
+	}
+
+	private byte[] withListHeader(Output body) {
+		if (this.compressionThreshold > 0 && body.size >= this.compressionThreshold) {
+			int maxLength = this.compressor.maxCompressedLength(body.size);
+			Output out = new Output(2 + 5 + maxLength);
+			out.writeByte(VERSION_1);
+			out.writeByte((byte) (TYPE_LIST | FLAG_LZ4));
+			out.writeVarLong(body.size);
+			out.ensure(maxLength);
+			out.size += this.compressor.compress(body.bytes, 0, body.size, out.bytes, out.size, maxLength);
+			return out.toByteArray();
+		}
+		Output out = new Output(2 + body.size);
+		out.writeByte(VERSION_1);
+		out.writeByte(TYPE_LIST);
+		out.writeBytes(body.bytes, 0, body.size);
+		return out.toByteArray();
+	}
+
+	private static boolean isCustomerList(List<?> list) {
+		for (Object item : list) {
+			if (!(item instanceof Customer)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static void writeCustomer(Output out, Customer customer) {
+		out.writeUuid(customer.getId());
+		out.writeString(customer.getName());
+		out.writeString(customer.getContactName());
+		out.writeString(customer.getAddress());
+		out.writeString(customer.getCity());
+		out.writeString(customer.getPostalCode());
+		out.writeString(customer.getCountry());
+	}
+
+	private static Customer readCustomer(Input in) {
+		Customer customer = new Customer();
+		customer.setId(in.readUuid());
+		customer.setName(in.readString());
+		customer.setContactName(in.readString());
+		customer.setAddress(in.readString());
+		customer.setCity(in.readString());
+		customer.setPostalCode(in.readString());
+		customer.setCountry(in.readString());
+		return customer;
+	}
+
+	private static final class Output {
+
+		private byte[] bytes;
+		private int size;
+
+		Output(int capacity) {
+			this.bytes = new byte[capacity];
+		}
+
+		void ensure(int extra) {
+			if (this.size + extra > this.bytes.length) {
+				this.bytes = Arrays.copyOf(this.bytes, Math.max(this.bytes.length * 2, this.size + extra));
+			}
+		}
+
+		void writeByte(byte b) {
+			ensure(1);
+			this.bytes[this.size++] = b;
+		}
+
+		void writeBytes(byte[] src, int offset, int length) {
+			ensure(length);
+			System.arraycopy(src, offset, this.bytes, this.size, length);
+			this.size += length;
+		}
+
+		void writeVarLong(long value) {
+			ensure(10);
+			while ((value & ~0x7FL) != 0) {
+				this.bytes[this.size++] = (byte) ((value & 0x7F) | 0x80);
+				value >>>= 7;
+			}
+			this.bytes[this.size++] = (byte) value;
+		}
+
+		void writeUuid(UUID value) {
+			if (value == null) {
+				writeByte((byte) 0);
+				return;
+			}
+			writeByte((byte) 1);
+			writeLong(value.getMostSignificantBits());
+			writeLong(value.getLeastSignificantBits());
+		}
+
+		private void writeLong(long value) {
+			ensure(8);
+			for (int shift = 56; shift >= 0; shift -= 8) {
+				this.bytes[this.size++] = (byte) (value >>> shift);
+			}
+		}
+
+		void writeString(String value) {
+			if (value == null) {
+				writeVarLong(0);
+				return;
+			}
+			byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+			writeVarLong(utf8.length + 1L);
+			writeBytes(utf8, 0, utf8.length);
+		}
+
+		byte[] toByteArray() {
+			return this.size == this.bytes.length ? this.bytes : Arrays.copyOf(this.bytes, this.size);
+		}
+	}
+
+	private static final class Input {
+
+		private final byte[] bytes;
+		private final int limit;
+		private int position;
+
+		Input(byte[] bytes, int position, int limit) {
+			this.bytes = bytes;
+			this.position = position;
+			this.limit = limit;
+		}
+
+		long readVarLong() {
+			long value = 0;
+			for (int shift = 0; shift < 64; shift += 7) {
+				if (this.position >= this.limit) {
+					throw new SerializationException("truncated customer value");
+				}
+				byte b = this.bytes[this.position++];
+				value |= (long) (b & 0x7F) << shift;
+				if ((b & 0x80) == 0) {
+					return value;
+				}
+			}
+			throw new SerializationException("malformed varint in customer value");
+		}
+
+		UUID readUuid() {
+			if (this.position >= this.limit) {
+				throw new SerializationException("truncated customer value");
+			}
+			if (this.bytes[this.position++] == 0) {
+				return null;
+			}
+			return new UUID(readLong(), readLong());
+		}
+
+		private long readLong() {
+			if (this.position + 8 > this.limit) {
+				throw new SerializationException("truncated customer value");
+			}
+			long value = 0;
+			for (int i = 0; i < 8; i++) {
+				value = (value << 8) | (this.bytes[this.position++] & 0xFF);
+			}
+			return value;
+		}
+
+		String readString() {
+			long length = readVarLong();
+			if (length == 0) {
+				return null;
+			}
+			int byteLength = (int) (length - 1);
+			if (byteLength < 0 || this.position + byteLength > this.limit) {
+				throw new SerializationException("truncated customer value");
+			}
+			String value = new String(this.bytes, this.position, byteLength, StandardCharsets.UTF_8);
+			this.position += byteLength;
+			return value;
+		}
+	}
+}
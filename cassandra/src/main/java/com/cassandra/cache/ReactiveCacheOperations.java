@@ -0,0 +1,153 @@
+package com.cassandra.cache;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Cache-aside on a {@link ReactiveRedisTemplate} for the reactive service.  Keys, values and TTLs come from
+ * {@link CacheBatchOperations} so entries are interchangeable with the ones RedisCache writes for the servlet
+ * service.  A miss on a key is loaded once per node, concurrent callers subscribe to the running load.
+ */
+@Slf4j
+public class ReactiveCacheOperations {
+
+	private static final long SCAN_COUNT = 1000;
+
+	private static final RedisScript<Long> COMPARE_AND_SET = RedisScript.of(CacheBatchOperations.COMPARE_AND_SET, Long.class);
+
+	private final ReactiveRedisTemplate<byte[], byte[]> redisTemplate;
+	private final CacheBatchOperations cacheBatchOperations;
+	private final ConcurrentMap<String, Mono<Object>> inFlight = new ConcurrentHashMap<>();
+
+	public ReactiveCacheOperations(ReactiveRedisTemplate<byte[], byte[]> redisTemplate,
+			CacheBatchOperations cacheBatchOperations) {
+		this.redisTemplate = redisTemplate;
+		this.cacheBatchOperations = cacheBatchOperations;
+	}
+
+	/**
+	 * The cached value, otherwise the loader's value which is cached on the way out.
+	 * An empty loader is not cached, same as {@code unless = "#result == null"}.
+	 */
+	public <T> Mono<T> get(String cacheName, Object key, Class<T> type, Supplier<Mono<T>> loader) {
+		byte[] rawKey = this.cacheBatchOperations.cacheKey(cacheName, key);
+		return this.redisTemplate.opsForValue().get(rawKey)
+				.map(value -> this.cacheBatchOperations.deserializeValue(cacheName, value))
+				.filter(type::isInstance)
+				.map(type::cast)
+				.switchIfEmpty(Mono.defer(() -> load(cacheName, key, type, loader)));
+	}
+
+	private <T> Mono<T> load(String cacheName, Object key, Class<T> type, Supplier<Mono<T>> loader) {
+		String flightKey = cacheName + "::" + key;
+		Mono<Object> load = this.inFlight.computeIfAbsent(flightKey,
+				k -> Mono.defer(loader).cast(Object.class)
+						.flatMap(value -> put(cacheName, key, value).thenReturn(value))
+						.doFinally(signal -> this.inFlight.remove(k))
+						.cache());
+		return load.filter(type::isInstance).map(type::cast);
+	}
+
+	/**
+	 * One MGET for all the keys, the result only has the keys that were found, in request order.
+	 */
+	public <T> Mono<Map<Object, T>> getAll(String cacheName, Collection<?> keys, Class<T> type) {
+		if (keys.isEmpty()) {
+			return Mono.just(new LinkedHashMap<>());
+		}
+		List<Object> requested = new ArrayList<>(keys);
+		List<byte[]> rawKeys = new ArrayList<>(requested.size());
+		requested.forEach(key -> rawKeys.add(this.cacheBatchOperations.cacheKey(cacheName, key)));
+		return this.redisTemplate.opsForValue().multiGet(rawKeys).map(values -> {
+			Map<Object, T> found = new LinkedHashMap<>();
+			for (int i = 0; i < requested.size(); i++) {
+				byte[] value = values.get(i);
+				Object cached = value == null ? null : this.cacheBatchOperations.deserializeValue(cacheName, value);
+				if (type.isInstance(cached))
+					found.put(requested.get(i), type.cast(cached));
+			}
+			return found;
+		});
+	}
+
+	public Mono<Void> put(String cacheName, Object key, Object value) {
+		return set(cacheName, key, value).then();
+	}
+
+	/**
+	 * SET with the cache TTL for every entry.  The commands go out back to back on the shared lettuce
+	 * connection without waiting for each reply, which is what a pipeline does.
+	 */
+	public Mono<Void> putAll(String cacheName, Map<?, ?> entries) {
+		return Flux.fromIterable(entries.entrySet())
+				.flatMap(entry -> set(cacheName, entry.getKey(), entry.getValue()))
+				.then()
+				.doOnSuccess(done -> log.debug("wrote " + entries.size() + " entries into " + cacheName));
+	}
+
+	private Mono<Boolean> set(String cacheName, Object key, Object value) {
+		if (value == null) {
+			return Mono.just(false);
+		}
+		byte[] rawKey = this.cacheBatchOperations.cacheKey(cacheName, key);
+		byte[] rawValue = this.cacheBatchOperations.serializeValue(cacheName, value);
+		Duration ttl = this.cacheBatchOperations.ttlFor(cacheName);
+		return ttl.isZero()
+				? this.redisTemplate.opsForValue().set(rawKey, rawValue)
+				: this.redisTemplate.opsForValue().set(rawKey, rawValue, ttl);
+	}
+
+	/**
+	 * Same as {@link CacheBatchOperations#replace}, empty when the key wasn't cached or changed in between.
+	 */
+	public <T> Mono<T> replace(String cacheName, Object key, Class<T> type, UnaryOperator<T> function) {
+		byte[] rawKey = this.cacheBatchOperations.cacheKey(cacheName, key);
+		return this.redisTemplate.opsForValue().get(rawKey).flatMap(current -> {
+			Object cached = this.cacheBatchOperations.deserializeValue(cacheName, current);
+			if (!type.isInstance(cached)) {
+				return Mono.empty();
+			}
+			T replaced = function.apply(type.cast(cached));
+			byte[] ttl = String.valueOf(this.cacheBatchOperations.ttlFor(cacheName).toMillis()).getBytes();
+			return this.redisTemplate.execute(COMPARE_AND_SET, List.of(rawKey),
+							List.of(current, this.cacheBatchOperations.serializeValue(cacheName, replaced), ttl))
+					.next()
+					.filter(applied -> applied == 1)
+					.map(applied -> replaced);
+		});
+	}
+
+	public Mono<Void> evict(String cacheName, Object key) {
+		return this.redisTemplate.delete(this.cacheBatchOperations.cacheKey(cacheName, key)).then();
+	}
+
+	/**
+	 * Removes every entry of the cache with SCAN and batched DEL, like RedisCache's clear.
+	 */
+	public Mono<Void> clear(String cacheName) {
+		String pattern = this.cacheBatchOperations.configurationFor(cacheName).getKeyPrefixFor(cacheName) + "*";
+		ScanOptions options = ScanOptions.scanOptions().match(pattern).count(SCAN_COUNT).build();
+		return this.redisTemplate.scan(options)
+				.buffer((int) SCAN_COUNT)
+				.concatMap(rawKeys -> this.redisTemplate.delete(rawKeys.toArray(new byte[0][])))
+				.reduce(0L, Long::sum)
+				.doOnSuccess(count -> log.info("cleared " + count + " entries from " + cacheName))
+				.then();
+	}
+}
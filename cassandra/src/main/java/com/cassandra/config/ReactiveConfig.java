@@ -0,0 +1,46 @@
+package com.cassandra.config;
+
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.redis.connection.ReactiveRedisConnectionFactory;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializationContext;
+
+import com.cassandra.cache.CacheBatchOperations;
+import com.cassandra.cache.ReactiveCacheOperations;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * The reactive profile: WebFlux on netty with the reactive cassandra session and redis client.
+ * The blocking beans stay up for the cache manager.
+ */
+@Slf4j
+@Profile("reactive")
+@Configuration
+public class ReactiveConfig {
+
+	//  tomcat is on the classpath for the servlet mode and would otherwise be picked for webflux too
+	@Bean
+	public NettyReactiveWebServerFactory nettyReactiveWebServerFactory() {
+		return new NettyReactiveWebServerFactory();
+	}
+
+	@Bean
+	public ReactiveRedisTemplate<byte[], byte[]> reactiveCacheTemplate(RedisConnectionFactory redisConnectionFactory) {
+		if (!(redisConnectionFactory instanceof ReactiveRedisConnectionFactory reactiveConnectionFactory)) {
+			throw new IllegalStateException("the reactive profile needs cache.connection.mode lettuce");
+		}
+		log.info("reactive cache client on the shared lettuce connection");
+		return new ReactiveRedisTemplate<>(reactiveConnectionFactory, RedisSerializationContext.byteArray());
+	}
+
+	@Bean
+	public ReactiveCacheOperations reactiveCacheOperations(ReactiveRedisTemplate<byte[], byte[]> reactiveCacheTemplate,
+														   CacheBatchOperations cacheBatchOperations) {
+		return new ReactiveCacheOperations(reactiveCacheTemplate, cacheBatchOperations);
+	}
+}
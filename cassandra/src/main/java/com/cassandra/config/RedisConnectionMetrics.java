@@ -0,0 +1,91 @@
+package com.cassandra.config;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import io.lettuce.core.event.command.CommandFailedEvent;
+import io.lettuce.core.event.command.CommandListener;
+import io.lettuce.core.event.command.CommandStartedEvent;
+import io.lettuce.core.event.command.CommandSucceededEvent;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.commonspool2.CommonsObjectPool2Metrics;
+
+/**
+ * Connection level meters so the jedis and lettuce modes can be compared under the same load.
+ * <ul>
+ * <li>commons.pool2.* tagged name=&lt;pool&gt; - active, idle, waiters and borrow wait time of the connection pool.
+ * Jedis borrows for every command, lettuce only for blocking and transactional commands</li>
+ * <li>redis.commands.inflight - commands sent and not answered yet.  Lettuce counts them with a command listener,
+ * jedis runs one command at a time per borrowed connection so it reports the borrowed connections</li>
+ * </ul>
+ */
+public class RedisConnectionMetrics implements MeterBinder, CommandListener, AutoCloseable {
+
+	private static final String POOL_MBEAN = "org.apache.commons.pool2:type=GenericObjectPool,name=";
+
+	private final String mode;
+	private final String poolName;
+	private final AtomicLong inFlight = new AtomicLong();
+	private final CommonsObjectPool2Metrics poolMetrics = new CommonsObjectPool2Metrics();
+
+	public RedisConnectionMetrics(String mode, String poolName) {
+		this.mode = mode;
+		this.poolName = poolName;
+	}
+
+	public String getPoolName() {
+		return this.poolName;
+	}
+
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		this.poolMetrics.bindTo(registry);
+		Gauge.builder("redis.commands.inflight", this, RedisConnectionMetrics::inFlight)
+				.description("redis commands sent and not answered yet")
+				.tag("mode", this.mode)
+				.register(registry);
+	}
+
+	@Override
+	public void commandStarted(CommandStartedEvent event) {
+		this.inFlight.incrementAndGet();
+	}
+
+	@Override
+	public void commandSucceeded(CommandSucceededEvent event) {
+		this.inFlight.decrementAndGet();
+	}
+
+	@Override
+	public void commandFailed(CommandFailedEvent event) {
+		this.inFlight.decrementAndGet();
+	}
+
+	private double inFlight() {
+		return "lettuce".equals(this.mode) ? this.inFlight.get() : borrowedConnections();
+	}
+
+	private double borrowedConnections() {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			long active = 0;
+			for (ObjectName name : server.queryNames(new ObjectName(POOL_MBEAN + this.poolName + "*"), null)) {
+				active += ((Number) server.getAttribute(name, "NumActive")).longValue();
+			}
+			return active;
+		} catch (JMException e) {
+			return Double.NaN;
+		}
+	}
+
+	@Override
+	public void close() {
+		this.poolMetrics.close();
+	}
+}
@@ -0,0 +1,42 @@
+package com.cassandra.config;
+
+import java.util.concurrent.Executors;
+
+import org.apache.coyote.ProtocolHandler;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Opt-in virtual thread mode, same property name spring boot 3.2 uses.  Every request runs on its own virtual
+ * thread instead of one of tomcat's 200 worker threads, so a request blocked on redis or cassandra parks
+ * instead of holding a platform thread.  Async work (the NDJSON export) runs on virtual threads too.
+ * Concurrency is then bounded by the redis pool and the cassandra driver rather than by the thread pool.
+ */
+@Slf4j
+@Configuration
+@ConditionalOnProperty(name = "spring.threads.virtual.enabled", havingValue = "true")
+public class VirtualThreadConfig {
+
+	public VirtualThreadConfig() {
+		log.info("virtual thread mode on " + Runtime.version());
+	}
+
+	@Bean
+	public TomcatProtocolHandlerCustomizer<ProtocolHandler> virtualThreadProtocolHandlerCustomizer() {
+		return protocolHandler -> protocolHandler.setExecutor(
+				Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("tomcat-handler-", 0).factory()));
+	}
+
+	//  replaces spring boot's pooled applicationTaskExecutor, spring mvc runs StreamingResponseBody on it
+	@Bean(name = { TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME, "taskExecutor" })
+	public AsyncTaskExecutor applicationTaskExecutor() {
+		return new TaskExecutorAdapter(Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("task-", 0).factory()));
+	}
+}
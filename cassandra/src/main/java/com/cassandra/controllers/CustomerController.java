@@ -1,33 +1,90 @@
 package com.cassandra.controllers;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.RuntimeJsonMappingException;
+import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
 
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import com.cassandra.models.BulkLoadResult;
 import com.cassandra.models.Customer;
 import com.cassandra.services.CustomerService;
 
 
 
+@Profile("!reactive")
 @RestController
 @RequestMapping("/api")
 public class CustomerController {
 	@Autowired
 	private CustomerService customerService;
+	@Autowired
+	private ObjectMapper objectMapper;
+
+	private static final int MAX_IDS = 1000;
 
 	@GetMapping(value = "/customers", produces = MediaType.APPLICATION_JSON_VALUE)
 	@ResponseBody
-	public ResponseEntity<Object> getAllCustomers() {
+	public ResponseEntity<Object> getAllCustomers(@RequestParam(value = "ids", required = false) List<UUID> ids) {
+		if (ids != null) {
+			return getCustomersByIds(ids);
+		}
 		List<Customer> customers = this.customerService.getAll();
 		return ResponseEntity.ok(customers);
 	}
 
+	//  Accept: application/x-ndjson streams every customer, one per line, as it is read from cassandra
+	@GetMapping(value = "/customers", produces = MediaType.APPLICATION_NDJSON_VALUE)
+	public ResponseEntity<StreamingResponseBody> exportCustomers() {
+		//  let the generator and servlet buffers decide when to send a chunk instead of flushing every row
+		ObjectWriter writer = objectMapper.writerFor(Customer.class).without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+		StreamingResponseBody body = out -> {
+			try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+				generator.setRootValueSeparator(new SerializedString("\n"));
+				this.customerService.exportAll(customer -> {
+					try {
+						writer.writeValue(generator, customer);
+					} catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+				});
+				generator.writeRaw('\n');
+			}
+		};
+		return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
+	}
+
+	//  same as ?ids= for lists too long for a query string
+	@PostMapping(value = "/customers/multi-get", consumes = MediaType.APPLICATION_JSON_VALUE,
+			produces = MediaType.APPLICATION_JSON_VALUE)
+	public ResponseEntity<Object> getCustomersByIds(@RequestBody List<UUID> ids) {
+		Set<UUID> uniqueIds = new LinkedHashSet<>(ids);
+		if (uniqueIds.size() > MAX_IDS) {
+			return ResponseEntity.badRequest().body("at most " + MAX_IDS + " ids per request");
+		}
+		List<Customer> customers = this.customerService.getCustomersByIds(uniqueIds);
+		return ResponseEntity.ok(customers);
+	}
+
 	@GetMapping(value = "/customers/{id}", produces = MediaType.APPLICATION_JSON_VALUE)
 	@ResponseBody
 	public ResponseEntity<Object> getCustomerById(@PathVariable("id") String id) {
@@ -40,6 +97,12 @@ public class CustomerController {
 		this.customerService.evictCache();
 	}
 
+	//  reads every customer with the parallel token range scan and writes them all into the cache
+	@PostMapping(value = "/customers/rebuild-cache", produces = MediaType.APPLICATION_JSON_VALUE)
+	public ResponseEntity<Object> rebuildCache() {
+		return ResponseEntity.ok(this.customerService.rebuildCache());
+	}
+
 	@PostMapping(value = "/customers")
 	//  could have a separate bulk customer option not using the cache
 	public ResponseEntity<Object> addCustomer(@RequestBody Customer customer) {
@@ -47,12 +110,41 @@ public class CustomerController {
 		return ResponseEntity.status(HttpStatus.CREATED).body(created);
 	}
 
+	//  accepts a json array or newline delimited json, customers are parsed one at a time off the request
+	//  stream as the writes keep up, so the body is never held in memory.  cache=false skips loading redis.
+	//  a malformed customer is a 400 whose body has the count of customers stored before it
+	@PostMapping(value = "/customers/bulk", consumes = { MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE })
+	public ResponseEntity<Object> addCustomers(HttpServletRequest request,
+											   @RequestParam(value = "cache", defaultValue = "true") boolean cache) throws IOException {
+		try (MappingIterator<Customer> customers = objectMapper.readerFor(Customer.class).readValues(request.getInputStream())) {
+			BulkLoadResult result = this.customerService.addAll(customers, cache);
+			if (result.getError() != null) {
+				return ResponseEntity.badRequest().body(result);
+			}
+			return ResponseEntity.status(HttpStatus.CREATED).body(result);
+		} catch (RuntimeJsonMappingException e) {
+			return ResponseEntity.badRequest().body(e.getMessage());
+		}
+	}
+
 	@PutMapping(value = "/customers")
 	public ResponseEntity<Object> updateCustomer(@RequestBody Customer customer) {
 		Customer updated = this.customerService.update(customer);
 		return ResponseEntity.ok(updated);
 	}
 
+	//  only the fields sent are changed, a field sent as null is cleared
+	@PatchMapping(value = "/customers/{id}", consumes = MediaType.APPLICATION_JSON_VALUE)
+	public ResponseEntity<Object> patchCustomer(@PathVariable("id") UUID id, @RequestBody Map<String, String> changes) {
+		Customer patched;
+		try {
+			patched = this.customerService.patch(id, changes);
+		} catch (IllegalArgumentException e) {
+			return ResponseEntity.badRequest().body(e.getMessage());
+		}
+		return patched == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(patched);
+	}
+
 	@DeleteMapping(value = "/customers/{id}")
 	public ResponseEntity<Object> deleteCustomerById(@PathVariable("id") String id) {
 		UUID _id = UUID.fromString(id);
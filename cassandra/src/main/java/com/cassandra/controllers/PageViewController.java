@@ -0,0 +1,49 @@
+package com.cassandra.controllers;
+
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import com.cassandra.models.PageView;
+import com.cassandra.pageviews.PageViewCounters;
+import com.cassandra.pageviews.PageViewIngester;
+
+@Profile("!reactive")
+@RestController
+@RequestMapping("/api")
+public class PageViewController {
+	@Autowired
+	private PageViewIngester pageViewIngester;
+	@Autowired
+	private PageViewCounters pageViewCounters;
+
+	private static final int MAX_PAGES = 1000;
+
+	//  202 once the views are queued, they reach cassandra and the counters within a flush interval.
+	//  503 when the queue is full or the node is shutting down, none of the views were taken
+	@PostMapping(value = "/pageviews", consumes = MediaType.APPLICATION_JSON_VALUE)
+	public ResponseEntity<Object> addPageViews(@RequestBody List<PageView> views) {
+		for (PageView view : views) {
+			if (view.getUserid() == null || view.getPageid() == null) {
+				return ResponseEntity.badRequest().body("every page view needs a userid and a pageid");
+			}
+		}
+		if (!this.pageViewIngester.offer(views)) {
+			return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body("page view queue is full or shutting down, retry later");
+		}
+		return ResponseEntity.accepted().build();
+	}
+
+	@GetMapping(value = "/pageviews/stats", produces = MediaType.APPLICATION_JSON_VALUE)
+	public ResponseEntity<Object> getPageViewStats(@RequestParam("pages") List<String> pages) {
+		if (pages.size() > MAX_PAGES) {
+			return ResponseEntity.badRequest().body("at most " + MAX_PAGES + " pages per request");
+		}
+		return ResponseEntity.ok(this.pageViewCounters.stats(pages));
+	}
+}
@@ -0,0 +1,101 @@
+package com.cassandra.controllers;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import com.cassandra.models.Customer;
+import com.cassandra.services.ReactiveCustomerService;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * WebFlux version of {@link CustomerController} for the reactive profile, same endpoints and responses.
+ */
+@Profile("reactive")
+@RestController
+@RequestMapping("/api")
+public class ReactiveCustomerController {
+	@Autowired
+	private ReactiveCustomerService customerService;
+
+	private static final int MAX_IDS = 1000;
+
+	@GetMapping(value = "/customers", produces = MediaType.APPLICATION_JSON_VALUE)
+	public Mono<ResponseEntity<Object>> getAllCustomers(@RequestParam(value = "ids", required = false) List<UUID> ids) {
+		if (ids != null) {
+			return getCustomersByIds(ids);
+		}
+		return this.customerService.getAll().map(ResponseEntity::ok);
+	}
+
+	//  Accept: application/x-ndjson streams every customer, one per line, as fast as the client reads them
+	@GetMapping(value = "/customers", produces = MediaType.APPLICATION_NDJSON_VALUE)
+	public Flux<Customer> exportCustomers() {
+		return this.customerService.exportAll();
+	}
+
+	//  same as ?ids= for lists too long for a query string
+	@PostMapping(value = "/customers/multi-get", consumes = MediaType.APPLICATION_JSON_VALUE,
+			produces = MediaType.APPLICATION_JSON_VALUE)
+	public Mono<ResponseEntity<Object>> getCustomersByIds(@RequestBody List<UUID> ids) {
+		Set<UUID> uniqueIds = new LinkedHashSet<>(ids);
+		if (uniqueIds.size() > MAX_IDS) {
+			return Mono.just(ResponseEntity.badRequest().body("at most " + MAX_IDS + " ids per request"));
+		}
+		return this.customerService.getCustomersByIds(uniqueIds).collectList().map(ResponseEntity::ok);
+	}
+
+	@GetMapping(value = "/customers/{id}", produces = MediaType.APPLICATION_JSON_VALUE)
+	public Mono<ResponseEntity<Object>> getCustomerById(@PathVariable("id") String id) {
+		UUID _id = UUID.fromString(id);
+		return this.customerService.getCustomerById(_id)
+				.map(customer -> ResponseEntity.ok((Object) customer))
+				.defaultIfEmpty(ResponseEntity.ok().build());
+	}
+
+	@GetMapping(value = "/customers/evict-all")
+	public Mono<Void> evictCache() {
+		return this.customerService.evictCache();
+	}
+
+	@PostMapping(value = "/customers")
+	public Mono<ResponseEntity<Object>> addCustomer(@RequestBody Customer customer) {
+		return this.customerService.add(customer)
+				.map(created -> ResponseEntity.status(HttpStatus.CREATED).body(created));
+	}
+
+	@PutMapping(value = "/customers")
+	public Mono<ResponseEntity<Object>> updateCustomer(@RequestBody Customer customer) {
+		return this.customerService.update(customer)
+				.map(updated -> ResponseEntity.ok((Object) updated))
+				.defaultIfEmpty(ResponseEntity.ok().build());
+	}
+
+	//  only the fields sent are changed, a field sent as null is cleared
+	@PatchMapping(value = "/customers/{id}", consumes = MediaType.APPLICATION_JSON_VALUE)
+	public Mono<ResponseEntity<Object>> patchCustomer(@PathVariable("id") UUID id,
+													  @RequestBody Map<String, String> changes) {
+		return this.customerService.patch(id, changes)
+				.map(patched -> ResponseEntity.ok((Object) patched))
+				.defaultIfEmpty(ResponseEntity.notFound().build())
+				.onErrorResume(IllegalArgumentException.class,
+						e -> Mono.just(ResponseEntity.badRequest().body(e.getMessage())));
+	}
+
+	@DeleteMapping(value = "/customers/{id}")
+	public Mono<ResponseEntity<Object>> deleteCustomerById(@PathVariable("id") String id) {
+		UUID _id = UUID.fromString(id);
+		return this.customerService.delete(_id).thenReturn(ResponseEntity.ok().build());
+	}
+}
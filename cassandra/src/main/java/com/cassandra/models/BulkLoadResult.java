@@ -0,0 +1,23 @@
+package com.cassandra.models;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@AllArgsConstructor
+@NoArgsConstructor
+@Data
+public class BulkLoadResult {
+
+	private long rows;
+
+	private boolean cached;
+
+	private long elapsedMillis;
+
+	private double rowsPerSecond;
+
+	//  why the load stopped early, the rows before it are loaded.  null when every customer was
+	private String error;
+
+}
@@ -0,0 +1,21 @@
+package com.cassandra.models;
+
+import java.time.Instant;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@AllArgsConstructor
+@NoArgsConstructor
+@Data
+public class PageView {
+
+	private String userid;
+
+	private String pageid;
+
+	//  the time it was received when left out
+	private Instant viewtime;
+
+}
@@ -0,0 +1,19 @@
+package com.cassandra.models;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@AllArgsConstructor
+@NoArgsConstructor
+@Data
+public class PageViewStats {
+
+	private String pageid;
+
+	private long views;
+
+	//  hyperloglog estimate, within about 1% of the exact count
+	private long uniqueUsers;
+
+}
@@ -0,0 +1,106 @@
+package com.cassandra.pageviews;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.jedis.JedisClusterConnection;
+import org.springframework.stereotype.Component;
+
+import com.cassandra.models.PageView;
+import com.cassandra.models.PageViewStats;
+
+/**
+ * Per page view counts and HyperLogLog unique user estimates in redis, so dashboards read aggregates without
+ * scanning cassandra.  Each page has &lt;prefix&gt;:{pageid}:views, a counter, and &lt;prefix&gt;:{pageid}:users, a
+ * HyperLogLog of its user ids - the hash tag keeps both on one cluster slot.
+ * <p>
+ * A batch of views is collapsed to one INCRBY and one PFADD per page and sent as one pipeline, reads are one
+ * pipeline of GET and PFCOUNT.  Jedis can't pipeline on a cluster, there the commands run in turn.
+ */
+@Component
+public class PageViewCounters {
+
+	@Autowired
+	private RedisConnectionFactory connectionFactory;
+
+	@Value("${pageviews.key-prefix:pageviews}")
+	private String keyPrefix;
+
+	public void record(Collection<PageView> views) {
+		Map<String, Long> counts = new HashMap<>();
+		Map<String, Set<String>> users = new HashMap<>();
+		for (PageView view : views) {
+			counts.merge(view.getPageid(), 1L, Long::sum);
+			users.computeIfAbsent(view.getPageid(), page -> new LinkedHashSet<>()).add(view.getUserid());
+		}
+		try (RedisConnection connection = this.connectionFactory.getConnection()) {
+			boolean pipelined = canPipeline(connection);
+			if (pipelined)
+				connection.openPipeline();
+			try {
+				counts.forEach((page, count) -> connection.stringCommands().incrBy(key(page, "views"), count));
+				users.forEach((page, userIds) -> {
+					byte[][] values = new byte[userIds.size()][];
+					int i = 0;
+					for (String userId : userIds) {
+						values[i++] = userId.getBytes(StandardCharsets.UTF_8);
+					}
+					connection.hyperLogLogCommands().pfAdd(key(page, "users"), values);
+				});
+			} finally {
+				if (pipelined)
+					connection.closePipeline();
+			}
+		}
+	}
+
+	/**
+	 * Views and unique users of each page, pages never viewed have zeros.
+	 */
+	public List<PageViewStats> stats(Collection<String> pageIds) {
+		List<String> pages = new ArrayList<>(new LinkedHashSet<>(pageIds));
+		List<Object> replies = new ArrayList<>(pages.size() * 2);
+		try (RedisConnection connection = this.connectionFactory.getConnection()) {
+			boolean pipelined = canPipeline(connection);
+			if (pipelined)
+				connection.openPipeline();
+			for (String page : pages) {
+				byte[] views = connection.stringCommands().get(key(page, "views"));
+				Long users = connection.hyperLogLogCommands().pfCount(key(page, "users"));
+				if (!pipelined) {
+					replies.add(views);
+					replies.add(users);
+				}
+			}
+			if (pipelined)
+				replies = connection.closePipeline();
+		}
+		List<PageViewStats> stats = new ArrayList<>(pages.size());
+		for (int i = 0; i < pages.size(); i++) {
+			byte[] views = (byte[]) replies.get(i * 2);
+			Long users = (Long) replies.get(i * 2 + 1);
+			stats.add(new PageViewStats(pages.get(i),
+					views == null ? 0 : Long.parseLong(new String(views, StandardCharsets.US_ASCII)),
+					users == null ? 0 : users));
+		}
+		return stats;
+	}
+
+	private byte[] key(String pageId, String suffix) {
+		return (this.keyPrefix + ":{" + pageId + "}:" + suffix).getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static boolean canPipeline(RedisConnection connection) {
+		return !(connection instanceof JedisClusterConnection);
+	}
+}
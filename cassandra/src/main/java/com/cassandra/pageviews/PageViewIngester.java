@@ -0,0 +1,247 @@
+package com.cassandra.pageviews;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.context.WebServerGracefulShutdownLifecycle;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import com.cassandra.models.PageView;
+import com.datastax.oss.driver.api.core.CqlSession;
+import com.datastax.oss.driver.api.core.cql.BatchStatement;
+import com.datastax.oss.driver.api.core.cql.BatchType;
+import com.datastax.oss.driver.api.core.cql.BatchableStatement;
+import com.datastax.oss.driver.api.core.cql.PreparedStatement;
+import com.datastax.oss.driver.api.core.cql.Statement;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Takes page views in at request rate and writes them to the pageviews table and the redis counters in the
+ * background, so a request only costs a queue offer.
+ * <p>
+ * Views wait in a lock-free queue of at most queue-capacity; a request that doesn't fit is turned away whole.
+ * One flusher thread wakes every flush-interval-ms, or as soon as flush-size views are waiting, and takes up to
+ * flush-size of them:
+ * <ul>
+ * <li>the views are grouped by partition, the user, and each user's go as one single-partition UNLOGGED batch,
+ * async with at most max-in-flight writes outstanding.  A user viewing a page again keeps the latest viewtime</li>
+ * <li>the redis counters are updated with one pipeline, see {@link PageViewCounters}</li>
+ * </ul>
+ * The ingester stops after the web server, so no request is taken once it has, and views offered after stop
+ * began are turned away.  Views still queued at shutdown are flushed first, for at most the shutdown phase
+ * timeout.  A failed write is logged and counted, not retried, and a failed redis update leaves the counters
+ * short by that flush.
+ */
+@Slf4j
+@Component
+public class PageViewIngester implements SmartLifecycle, Runnable {
+
+	@Autowired
+	private CqlSession session;
+	@Autowired
+	private PageViewCounters pageViewCounters;
+
+	@Value("${pageviews.queue-capacity:100000}")
+	private int queueCapacity;
+
+	@Value("${pageviews.flush-size:1000}")
+	private int flushSize;
+
+	@Value("${pageviews.flush-interval-ms:100}")
+	private long flushInterval;
+
+	@Value("${pageviews.max-in-flight:128}")
+	private int maxInFlight;
+
+	@Value("${spring.lifecycle.timeout-per-shutdown-phase:30s}")
+	private Duration shutdownTimeout;
+
+	private final Queue<PageView> queue = new ConcurrentLinkedQueue<>();
+	//  the queue's own size() walks the whole queue
+	private final AtomicInteger queued = new AtomicInteger();
+	private final Counter acceptedCounter;
+	private final Counter rejectedCounter;
+	private final Counter writtenCounter;
+	private final Counter failedCounter;
+	private final Timer flushTimer;
+	private Semaphore inFlight;
+	private volatile PreparedStatement insert;
+	private volatile boolean running;
+	private Thread thread;
+
+	public PageViewIngester(MeterRegistry meterRegistry) {
+		this.acceptedCounter = Counter.builder("pageviews.accepted")
+				.description("page views queued")
+				.register(meterRegistry);
+		this.rejectedCounter = Counter.builder("pageviews.rejected")
+				.description("page views turned away because the queue was full")
+				.register(meterRegistry);
+		this.writtenCounter = Counter.builder("pageviews.written")
+				.description("pageviews rows written to cassandra, a user's views of one page in one flush are one row")
+				.register(meterRegistry);
+		this.failedCounter = Counter.builder("pageviews.failed")
+				.description("pageviews rows whose cassandra write failed")
+				.register(meterRegistry);
+		this.flushTimer = Timer.builder("pageviews.flush")
+				.description("time to send one flush to redis and cassandra")
+				.publishPercentiles(0.5, 0.95, 0.99)
+				.register(meterRegistry);
+		Gauge.builder("pageviews.queued", this.queued, AtomicInteger::get)
+				.description("page views waiting to be flushed")
+				.register(meterRegistry);
+	}
+
+	/**
+	 * Queues all the views or none of them.
+	 *
+	 * @return false when the queue hasn't room for them all or the ingester is stopping
+	 */
+	public boolean offer(Collection<PageView> views) {
+		//  counted before running is read: the flusher reads them the other way round before it exits, so it
+		//  either sees these views or this sees it stopping
+		int size = this.queued.addAndGet(views.size());
+		if (!this.running || size > this.queueCapacity) {
+			this.queued.addAndGet(-views.size());
+			this.rejectedCounter.increment(views.size());
+			return false;
+		}
+		Instant now = Instant.now();
+		for (PageView view : views) {
+			if (view.getViewtime() == null)
+				view.setViewtime(now);
+			this.queue.add(view);
+		}
+		this.acceptedCounter.increment(views.size());
+		if (size >= this.flushSize && size - views.size() < this.flushSize) {
+			LockSupport.unpark(this.thread);
+		}
+		return true;
+	}
+
+	@Override
+	public void start() {
+		this.inFlight = new Semaphore(this.maxInFlight);
+		this.running = true;
+		this.thread = new Thread(this, "pageview-flusher");
+		this.thread.setDaemon(true);
+		this.thread.start();
+		log.info("pageview ingester started, flushing " + flushSize + " views at least every " + flushInterval + " ms");
+	}
+
+	@Override
+	public void stop() {
+		this.running = false;
+		LockSupport.unpark(this.thread);
+		long deadline = System.nanoTime() + this.shutdownTimeout.toNanos();
+		try {
+			//  the flusher drains the queue before it exits
+			this.thread.join(Math.max(1, this.shutdownTimeout.toMillis()));
+			//  every write sent is answered before cassandra's session closes
+			if (this.inFlight.tryAcquire(this.maxInFlight, Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS))
+				this.inFlight.release(this.maxInFlight);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		int left = this.queued.get();
+		if (left > 0) {
+			log.warn("pageview ingester stopped after " + this.shutdownTimeout + ", " + left + " views left unwritten");
+		} else {
+			log.info("pageview ingester stopped, every queued view flushed");
+		}
+	}
+
+	//  stops after the web server, so no request is left holding a 202 for views nobody will flush
+	@Override
+	public int getPhase() {
+		return WebServerGracefulShutdownLifecycle.SMART_LIFECYCLE_PHASE - 2048;
+	}
+
+	@Override
+	public boolean isRunning() {
+		return this.running;
+	}
+
+	@Override
+	public void run() {
+		while (running || this.queued.get() > 0) {
+			if (running && this.queued.get() < this.flushSize) {
+				LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(this.flushInterval));
+			}
+			try {
+				flush();
+			} catch (RuntimeException e) {
+				//  the views taken are lost, the next flush goes on with the rest
+				log.error("pageview flush failed", e);
+			}
+		}
+	}
+
+	private void flush() {
+		List<PageView> views = new ArrayList<>(Math.min(this.queued.get(), this.flushSize));
+		PageView view;
+		while (views.size() < this.flushSize && (view = this.queue.poll()) != null) {
+			views.add(view);
+		}
+		if (views.isEmpty()) {
+			return;
+		}
+		this.queued.addAndGet(-views.size());
+		//  cassandra first, its writes are only sent here so a redis failure can't keep them from going out
+		this.flushTimer.record(() -> {
+			writePartitions(views);
+			this.pageViewCounters.record(views);
+		});
+	}
+
+	private void writePartitions(List<PageView> views) {
+		Map<String, Map<String, Instant>> byUser = new LinkedHashMap<>();
+		for (PageView view : views) {
+			byUser.computeIfAbsent(view.getUserid(), user -> new LinkedHashMap<>())
+					.merge(view.getPageid(), view.getViewtime(), (a, b) -> a.isAfter(b) ? a : b);
+		}
+		PreparedStatement statement = insert();
+		byUser.forEach((user, pages) -> {
+			List<BatchableStatement<?>> rows = new ArrayList<>(pages.size());
+			pages.forEach((page, viewtime) -> rows.add(statement.bind(user, page, viewtime)));
+			Statement<?> write = rows.size() == 1 ? rows.get(0) : BatchStatement.newInstance(BatchType.UNLOGGED, rows);
+			this.inFlight.acquireUninterruptibly();
+			this.session.executeAsync(write.setIdempotent(true)).whenComplete((resultSet, error) -> {
+				this.inFlight.release();
+				if (error == null) {
+					this.writtenCounter.increment(rows.size());
+				} else {
+					this.failedCounter.increment(rows.size());
+					log.warn("could not write " + rows.size() + " page views of user " + user, error);
+				}
+			});
+		});
+	}
+
+	private PreparedStatement insert() {
+		PreparedStatement statement = this.insert;
+		if (statement == null) {
+			statement = this.session.prepare("INSERT INTO pageviews (userid, pageid, viewtime) VALUES (?, ?, ?)");
+			this.insert = statement;
+		}
+		return statement;
+	}
+}
@@ -6,7 +6,7 @@ import com.cassandra.models.Customer;
 
 import java.util.UUID;
 
-public interface CustomerRepository extends CassandraRepository<Customer, UUID> {
+public interface CustomerRepository extends CassandraRepository<Customer, UUID>, CustomerRepositoryCustom {
 
 }
 
@@ -0,0 +1,56 @@
+package com.cassandra.repositories;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Consumer;
+
+import com.cassandra.models.Customer;
+
+/**
+ * Driver level operations the generated repository methods can't express efficiently.
+ */
+public interface CustomerRepositoryCustom {
+
+	/**
+	 * Read each id as its own partition read, all in flight at once and routed to a replica by token,
+	 * instead of an IN query that makes one coordinator gather every partition.
+	 */
+	List<Customer> findAllByIdAsync(Collection<UUID> ids);
+
+	/**
+	 * Every customer, read as token ranges in parallel instead of one full scan driven by one coordinator.
+	 * The ring's ranges are split cassandra.scan.splits-per-range ways and at most cassandra.scan.parallelism are
+	 * read at a time, each paged and sent to a replica of the range.  consumer gets one page at a time, on the
+	 * calling thread, in no particular order.
+	 *
+	 * @return the customers read
+	 */
+	long scanAll(Consumer<List<Customer>> consumer);
+
+	/**
+	 * Inserts every customer with async prepared INSERTs, routed to a replica by token, with at most
+	 * cassandra.ingest.max-in-flight writes in flight on this node - the iterator is not read further until one
+	 * completes.  With cassandra.ingest.batch-size above 1, customers owned by the same replicas go as UNLOGGED
+	 * batches of that many; logged batches are never used.
+	 * <p>
+	 * written gets the customers stored so far, a few hundred at a time, on the calling thread.  The first failed
+	 * write, or the first customer that can't be read, stops the insert: nothing more is sent, written still gets
+	 * every customer stored once the writes in flight complete, then the failure is thrown.
+	 *
+	 * @return the customers written
+	 */
+	long insertAll(Iterator<Customer> customers, Consumer<List<Customer>> written);
+
+	/**
+	 * One plain UPDATE of only the changed columns, no IF EXISTS: a lightweight transaction would be a paxos round
+	 * mixed with the plain writes on the partition.  An UPDATE is an upsert, so for an unknown id it creates a row
+	 * with just these columns - the caller checks the id exists first.
+	 *
+	 * @throws IllegalArgumentException see {@link CustomerPatch#columns(Map)}
+	 */
+	CompletionStage<Void> patch(UUID id, Map<String, String> changes);
+}
@@ -0,0 +1,384 @@
+package com.cassandra.repositories;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.cassandra.core.CassandraOperations;
+
+import com.cassandra.models.Customer;
+import com.datastax.oss.driver.api.core.CqlIdentifier;
+import com.datastax.oss.driver.api.core.CqlSession;
+import com.datastax.oss.driver.api.core.cql.AsyncResultSet;
+import com.datastax.oss.driver.api.core.cql.BatchStatement;
+import com.datastax.oss.driver.api.core.cql.BatchType;
+import com.datastax.oss.driver.api.core.cql.BatchableStatement;
+import com.datastax.oss.driver.api.core.cql.BoundStatement;
+import com.datastax.oss.driver.api.core.cql.PreparedStatement;
+import com.datastax.oss.driver.api.core.cql.Row;
+import com.datastax.oss.driver.api.core.cql.SimpleStatement;
+import com.datastax.oss.driver.api.core.cql.Statement;
+import com.datastax.oss.driver.api.core.metadata.Node;
+import com.datastax.oss.driver.api.core.metadata.TokenMap;
+import com.datastax.oss.driver.api.core.metadata.token.TokenRange;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+
+@Slf4j
+public class CustomerRepositoryImpl implements CustomerRepositoryCustom {
+
+	@Autowired
+	private CqlSession session;
+	@Autowired
+	private CassandraOperations cassandraOperations;
+	@Autowired
+	private MeterRegistry meterRegistry;
+
+	@Value("${cassandra.async.max-in-flight:256}")
+	private int maxInFlight;
+
+	//  shared by every bulk insert on this node, so concurrent ones don't multiply the load on the cluster
+	@Value("${cassandra.ingest.max-in-flight:256}")
+	private int ingestMaxInFlight;
+
+	@Value("${cassandra.ingest.batch-size:1}")
+	private int ingestBatchSize;
+
+	@Value("${cassandra.scan.parallelism:8}")
+	private int scanParallelism;
+
+	@Value("${cassandra.scan.splits-per-range:4}")
+	private int scanSplits;
+
+	@Value("${spring.cassandra.request.page-size:500}")
+	private int scanPageSize;
+
+	//  customers handed to insertAll's callback at a time, so the caller can write them on in one pipeline
+	private static final int WRITTEN_CHUNK = 500;
+
+	private volatile PreparedStatement selectById;
+	private volatile PreparedStatement insert;
+	private volatile PreparedStatement selectRange;
+	private volatile PreparedStatement selectAfter;
+	private Semaphore ingestPermits;
+	private Counter ingestRows;
+	private Counter ingestFailures;
+	private Timer ingestBackpressure;
+	//  one statement per set of changed columns, there are at most 63
+	private final ConcurrentMap<String, PreparedStatement> updates = new ConcurrentHashMap<>();
+
+	@Override
+	public List<Customer> findAllByIdAsync(Collection<UUID> ids) {
+		PreparedStatement statement = selectById();
+		List<Customer> customers = new ArrayList<>(ids.size());
+		List<CompletableFuture<AsyncResultSet>> window = new ArrayList<>(Math.min(ids.size(), maxInFlight));
+		for (UUID id : ids) {
+			window.add(this.session.executeAsync(statement.bind(id)).toCompletableFuture());
+			if (window.size() == maxInFlight) {
+				collect(window, customers);
+			}
+		}
+		collect(window, customers);
+		return customers;
+	}
+
+	@Override
+	public long scanAll(Consumer<List<Customer>> consumer) {
+		Deque<Statement<?>> ranges = new ArrayDeque<>(rangeStatements());
+		BlockingQueue<CompletableFuture<AsyncResultSet>> pages = new LinkedBlockingQueue<>();
+		int reading = 0;
+		while (reading < scanParallelism && !ranges.isEmpty()) {
+			fetch(this.session.executeAsync(ranges.poll()), pages);
+			reading++;
+		}
+		long rows = 0;
+		while (reading > 0) {
+			AsyncResultSet page = take(pages).join();
+			//  the range's next page is on its way while this one is consumed
+			if (page.hasMorePages())
+				fetch(page.fetchNextPage(), pages);
+			else if (!ranges.isEmpty())
+				fetch(this.session.executeAsync(ranges.poll()), pages);
+			else
+				reading--;
+			List<Customer> customers = new ArrayList<>(page.remaining());
+			page.currentPage().forEach(row -> customers.add(this.cassandraOperations.getConverter().read(Customer.class, row)));
+			rows += customers.size();
+			if (!customers.isEmpty()) {
+				consumer.accept(customers);
+			}
+		}
+		return rows;
+	}
+
+	private static void fetch(CompletionStage<AsyncResultSet> stage, BlockingQueue<CompletableFuture<AsyncResultSet>> pages) {
+		CompletableFuture<AsyncResultSet> page = stage.toCompletableFuture();
+		page.whenComplete((resultSet, error) -> pages.add(page));
+	}
+
+	private static CompletableFuture<AsyncResultSet> take(BlockingQueue<CompletableFuture<AsyncResultSet>> pages) {
+		try {
+			return pages.take();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("interrupted while scanning customers", e);
+		}
+	}
+
+	//  unwrapped so no range crosses the end of the ring.  the one that runs to the end has the minimum token as
+	//  its end, and token(id) <= minimum matches nothing, so it is read with token(id) > start alone
+	private List<Statement<?>> rangeStatements() {
+		TokenMap tokenMap = this.session.getMetadata().getTokenMap().orElse(null);
+		if (tokenMap == null) {
+			log.info("no token metadata, scanning customers with one query");
+			return List.of(SimpleStatement.newInstance("SELECT * FROM customer").setPageSize(scanPageSize));
+		}
+		List<Statement<?>> statements = new ArrayList<>();
+		for (TokenRange ringRange : tokenMap.getTokenRanges()) {
+			for (TokenRange split : ringRange.splitEvenly(Math.max(1, scanSplits))) {
+				for (TokenRange range : split.unwrap()) {
+					if (range.getEnd().compareTo(range.getStart()) > 0) {
+						statements.add(selectRange().boundStatementBuilder()
+								.setToken(0, range.getStart())
+								.setToken(1, range.getEnd())
+								.setRoutingToken(range.getEnd())
+								.setPageSize(scanPageSize)
+								.setIdempotence(true)
+								.build());
+					} else {
+						statements.add(selectAfter().boundStatementBuilder()
+								.setToken(0, range.getStart())
+								.setPageSize(scanPageSize)
+								.setIdempotence(true)
+								.build());
+					}
+				}
+			}
+		}
+		return statements;
+	}
+
+	private PreparedStatement selectRange() {
+		PreparedStatement statement = this.selectRange;
+		if (statement == null) {
+			statement = this.session.prepare("SELECT * FROM customer WHERE token(id) > ? AND token(id) <= ?");
+			this.selectRange = statement;
+		}
+		return statement;
+	}
+
+	private PreparedStatement selectAfter() {
+		PreparedStatement statement = this.selectAfter;
+		if (statement == null) {
+			statement = this.session.prepare("SELECT * FROM customer WHERE token(id) > ?");
+			this.selectAfter = statement;
+		}
+		return statement;
+	}
+
+	@PostConstruct
+	public void registerIngestMeters() {
+		ingestPermits = new Semaphore(ingestMaxInFlight);
+		ingestRows = Counter.builder("cassandra.ingest.rows")
+				.description("customers written by bulk inserts")
+				.register(meterRegistry);
+		ingestFailures = Counter.builder("cassandra.ingest.failures")
+				.description("customers in bulk insert writes that failed")
+				.register(meterRegistry);
+		ingestBackpressure = Timer.builder("cassandra.ingest.backpressure")
+				.description("time bulk inserts waited for a write to complete before sending the next")
+				.publishPercentiles(0.5, 0.95, 0.99)
+				.register(meterRegistry);
+		Gauge.builder("cassandra.ingest.inflight", this,
+						repository -> repository.ingestMaxInFlight - repository.ingestPermits.availablePermits())
+				.description("bulk insert writes sent and not answered yet")
+				.register(meterRegistry);
+	}
+
+	@Override
+	public long insertAll(Iterator<Customer> customers, Consumer<List<Customer>> written) {
+		PreparedStatement statement = insert();
+		//  without token metadata every customer goes on its own, the driver still routes it by token
+		TokenMap tokenMap = ingestBatchSize > 1 ? this.session.getMetadata().getTokenMap().orElse(null) : null;
+		CqlIdentifier keyspace = this.session.getKeyspace().orElse(null);
+		Map<Set<Node>, List<Customer>> byReplicas = new HashMap<>();
+		Ingest ingest = new Ingest();
+		long rows = 0;
+		try {
+			while (ingest.failure.get() == null) {
+				Customer customer;
+				try {
+					if (!customers.hasNext())
+						break;
+					customer = customers.next();
+				} catch (RuntimeException e) {
+					//  unreadable input stops the load like a failed write, what was sent is still waited for
+					ingest.failure.compareAndSet(null, e);
+					break;
+				}
+				BoundStatement bound = bind(statement, customer);
+				rows++;
+				if (tokenMap == null || keyspace == null) {
+					ingest.send(bound, List.of(customer));
+				} else {
+					Set<Node> replicas = tokenMap.getReplicas(keyspace, bound.getRoutingKey());
+					List<Customer> group = byReplicas.computeIfAbsent(replicas, r -> new ArrayList<>(ingestBatchSize));
+					group.add(customer);
+					if (group.size() == ingestBatchSize) {
+						ingest.send(batch(statement, group), group);
+						byReplicas.remove(replicas);
+					}
+				}
+				ingest.drain(written, WRITTEN_CHUNK);
+			}
+			for (List<Customer> group : byReplicas.values()) {
+				if (ingest.failure.get() != null)
+					break;
+				ingest.send(batch(statement, group), group);
+			}
+		} finally {
+			//  whatever happened, the caller hears of every customer that was stored
+			ingest.outstanding.arriveAndAwaitAdvance();
+			ingest.drain(written, 1);
+		}
+		Throwable failure = ingest.failure.get();
+		if (failure != null) {
+			log.warn("bulk insert stopped after " + rows + " customers read", failure);
+			throw failure instanceof RuntimeException e ? e : new IllegalStateException(failure);
+		}
+		return rows;
+	}
+
+	//  one partition per statement, so the batch is UNLOGGED: its only job is one request for rows whose
+	//  replicas are the same, the coordinator picked by the first row's token is a replica for all of them
+	private Statement<?> batch(PreparedStatement statement, List<Customer> group) {
+		if (group.size() == 1) {
+			return bind(statement, group.get(0));
+		}
+		List<BatchableStatement<?>> statements = new ArrayList<>(group.size());
+		group.forEach(customer -> statements.add(bind(statement, customer)));
+		return BatchStatement.newInstance(BatchType.UNLOGGED, statements).setIdempotent(true);
+	}
+
+	private static BoundStatement bind(PreparedStatement statement, Customer customer) {
+		return statement.bind(customer.getId(), customer.getName(), customer.getContactName(), customer.getAddress(),
+				customer.getCity(), customer.getPostalCode(), customer.getCountry()).setIdempotent(true);
+	}
+
+	private PreparedStatement insert() {
+		PreparedStatement statement = this.insert;
+		if (statement == null) {
+			statement = this.session.prepare("INSERT INTO customer (id, name, contactName, address, city, postalCode, country)"
+					+ " VALUES (?, ?, ?, ?, ?, ?, ?)");
+			this.insert = statement;
+		}
+		return statement;
+	}
+
+	//  the writes of one insertAll call: the ones still out, the customers stored and the first failure
+	private final class Ingest {
+
+		private final Phaser outstanding = new Phaser(1);
+		private final Queue<Customer> done = new ConcurrentLinkedQueue<>();
+		private final AtomicInteger doneCount = new AtomicInteger();
+		private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+		void send(Statement<?> statement, List<Customer> customers) {
+			if (!ingestPermits.tryAcquire()) {
+				long start = System.nanoTime();
+				ingestPermits.acquireUninterruptibly();
+				ingestBackpressure.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+			}
+			this.outstanding.register();
+			session.executeAsync(statement).whenComplete((resultSet, error) -> {
+				ingestPermits.release();
+				if (error == null) {
+					ingestRows.increment(customers.size());
+					this.done.addAll(customers);
+					this.doneCount.addAndGet(customers.size());
+				} else {
+					ingestFailures.increment(customers.size());
+					this.failure.compareAndSet(null, error);
+				}
+				this.outstanding.arriveAndDeregister();
+			});
+		}
+
+		void drain(Consumer<List<Customer>> written, int atLeast) {
+			if (this.doneCount.get() < atLeast) {
+				return;
+			}
+			List<Customer> chunk = new ArrayList<>();
+			for (Customer customer = this.done.poll(); customer != null; customer = this.done.poll()) {
+				chunk.add(customer);
+			}
+			this.doneCount.addAndGet(-chunk.size());
+			if (!chunk.isEmpty()) {
+				written.accept(chunk);
+			}
+		}
+	}
+
+	@Override
+	public CompletionStage<Void> patch(UUID id, Map<String, String> changes) {
+		Map<String, String> columns = CustomerPatch.columns(changes);
+		String assignments = String.join(" = ?, ", columns.keySet()) + " = ?";
+		PreparedStatement statement = this.updates.computeIfAbsent(assignments,
+				set -> this.session.prepare("UPDATE customer SET " + set + " WHERE id = ?"));
+		Object[] values = new Object[columns.size() + 1];
+		int i = 0;
+		for (String value : columns.values()) {
+			values[i++] = value;
+		}
+		values[i] = id;
+		return this.session.executeAsync(statement.bind(values)).thenApply(resultSet -> null);
+	}
+
+	private void collect(List<CompletableFuture<AsyncResultSet>> window, List<Customer> customers) {
+		for (CompletableFuture<AsyncResultSet> future : window) {
+			Row row = future.join().one();
+			if (row != null) {
+				customers.add(this.cassandraOperations.getConverter().read(Customer.class, row));
+			}
+		}
+		window.clear();
+	}
+
+	//  prepared once so the driver knows the partition key and routes each read token aware
+	private PreparedStatement selectById() {
+		PreparedStatement statement = this.selectById;
+		if (statement == null) {
+			statement = this.session.prepare("SELECT * FROM customer WHERE id = ?");
+			this.selectById = statement;
+		}
+		return statement;
+	}
+}
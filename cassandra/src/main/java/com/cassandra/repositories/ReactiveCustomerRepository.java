@@ -0,0 +1,14 @@
+package com.cassandra.repositories;
+
+import java.util.UUID;
+
+import org.springframework.data.cassandra.repository.ReactiveCassandraRepository;
+
+import com.cassandra.models.Customer;
+
+/**
+ * Reactive driver view of the customer table for the reactive profile.  Same table and mapping as {@link CustomerRepository}.
+ */
+public interface ReactiveCustomerRepository extends ReactiveCassandraRepository<Customer, UUID> {
+
+}
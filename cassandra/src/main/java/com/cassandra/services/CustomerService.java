@@ -1,21 +1,36 @@
 package com.cassandra.services;
 
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.function.Consumer;
 
+import com.cassandra.models.BulkLoadResult;
 import com.cassandra.models.Customer;
 import org.springframework.data.cassandra.repository.AllowFiltering;
 
 public interface CustomerService {
 	public List<Customer> getAll();
 
+	public void exportAll(Consumer<Customer> consumer);
+
 	public Customer add(Customer customer);
 
+	public BulkLoadResult addAll(Iterator<Customer> customers, boolean useCache);
+
 	public Customer update(Customer customer);
 
+	public Customer patch(UUID id, Map<String, String> changes);
+
 	void evictCache();
 
+	public BulkLoadResult rebuildCache();
+
 	public void delete(UUID id);
 
 	public Customer getCustomerById(UUID id);
+
+	public List<Customer> getCustomersByIds(Collection<UUID> ids);
 }
@@ -0,0 +1,34 @@
+package com.cassandra.services;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import com.cassandra.models.Customer;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Non-blocking counterpart of {@link CustomerService} for the reactive profile, same cache entries and semantics.
+ */
+public interface ReactiveCustomerService {
+	public Mono<List<Customer>> getAll();
+
+	public Flux<Customer> exportAll();
+
+	public Mono<Customer> add(Customer customer);
+
+	public Mono<Customer> update(Customer customer);
+
+	public Mono<Customer> patch(UUID id, Map<String, String> changes);
+
+	public Mono<Void> evictCache();
+
+	public Mono<Void> delete(UUID id);
+
+	public Mono<Customer> getCustomerById(UUID id);
+
+	public Flux<Customer> getCustomersByIds(Collection<UUID> ids);
+}
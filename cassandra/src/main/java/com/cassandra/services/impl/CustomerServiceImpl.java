@@ -1,20 +1,32 @@
 package com.cassandra.services.impl;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.function.Consumer;
 
 import io.micrometer.observation.Observation;
 import io.micrometer.observation.ObservationRegistry;
 import io.micrometer.observation.annotation.Observed;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.*;
 import org.springframework.stereotype.Service;
 
+import com.cassandra.cache.CacheBatchOperations;
+import com.cassandra.models.BulkLoadResult;
 import com.cassandra.models.Customer;
+import com.cassandra.repositories.CustomerPatch;
 import com.cassandra.repositories.CustomerRepository;
 import com.cassandra.services.CustomerService;
+import com.datastax.oss.driver.api.core.DriverException;
 
 @Slf4j
 @Observed(name="CusterServiceImpl")
@@ -27,6 +39,11 @@ public class CustomerServiceImpl implements CustomerService {
 	@Autowired
 	private ObservationRegistry observationRegistry;
 
+	@Autowired
+	private CacheBatchOperations cacheBatchOperations;
+	@Autowired
+	private CacheManager cacheManager;
+
 	public String sayHello() {
 		return Observation
 				.createNotStarted("CustomerService", observationRegistry)
@@ -40,7 +57,30 @@ public class CustomerServiceImpl implements CustomerService {
 	@Override
 	public List<Customer> getAll() {
 		waitSomeTime();
-		return this.customerRepository.findAll();
+		List<Customer> customers = new ArrayList<>();
+		this.customerRepository.scanAll(customers::addAll);
+		return customers;
+	}
+
+	//  token ranges read in parallel, at most two pages per range being read in memory at a time
+	@Override
+	public void exportAll(Consumer<Customer> consumer) {
+		this.customerRepository.scanAll(page -> page.forEach(consumer));
+	}
+
+	//  every customer written into its cache entry, one pipeline per page as the parallel scan returns them
+	@Override
+	public BulkLoadResult rebuildCache() {
+		long start = System.nanoTime();
+		long rows = this.customerRepository.scanAll(page -> {
+			Map<UUID, Customer> entries = new LinkedHashMap<>();
+			page.forEach(c -> entries.put(c.getId(), c));
+			cacheBatchOperations.putAll("customers", entries);
+		});
+		long elapsedMillis = Math.max(1, (System.nanoTime() - start) / 1_000_000);
+		double rowsPerSecond = rows * 1000.0 / elapsedMillis;
+		log.info("cached " + rows + " customers in " + elapsedMillis + " ms, " + (long) rowsPerSecond + " rows/s");
+		return new BulkLoadResult(rows, true, elapsedMillis, rowsPerSecond, null);
 	}
 
 	// @CacheEvict(key = "#id", condition = "#id!=null")
@@ -52,6 +92,37 @@ public class CustomerServiceImpl implements CustomerService {
 		return this.customerRepository.save(customer);
 	}
 
+	//  async token aware inserts instead of one blocking save per customer, see CustomerRepositoryCustom.insertAll.
+	//  customers are cached a chunk at a time as their writes complete, with one pipeline per chunk.
+	//  a customer that can't be read ends the load, the result has the count stored before it and the error
+	@Override
+	public BulkLoadResult addAll(Iterator<Customer> customers, boolean useCache) {
+		long start = System.nanoTime();
+		long[] rows = new long[1];
+		String error = null;
+		try {
+			this.customerRepository.insertAll(customers, written -> {
+				rows[0] += written.size();
+				if (useCache) {
+					Map<UUID, Customer> entries = new LinkedHashMap<>();
+					written.forEach(c -> entries.put(c.getId(), c));
+					cacheBatchOperations.putAll("customers", entries);
+				}
+			});
+		} catch (DriverException e) {
+			throw new IllegalStateException("bulk insert failed after " + rows[0] + " customers were stored", e);
+		} catch (RuntimeException e) {
+			error = e.getMessage();
+		}
+		long elapsedMillis = Math.max(1, (System.nanoTime() - start) / 1_000_000);
+		double rowsPerSecond = rows[0] * 1000.0 / elapsedMillis;
+		if (error != null)
+			log.warn("bulk load stopped after " + rows[0] + " customers: " + error);
+		else
+			log.info("bulk loaded " + rows[0] + " customers in " + elapsedMillis + " ms, " + (long) rowsPerSecond + " rows/s");
+		return new BulkLoadResult(rows[0], useCache, elapsedMillis, rowsPerSecond, error);
+	}
+
 	//  this causes all the entries to be deleted if any entries are updated
 	// @CacheEvict(cacheNames = "customers", allEntries = true)
 	//   this works but is kind of complex.  Here customer is the java class object (not customers)
@@ -73,6 +144,34 @@ public class CustomerServiceImpl implements CustomerService {
 		repCustomer.setCountry(customer.getCountry());
 		return this.customerRepository.save(repCustomer);
 	}
+
+	//  one plain UPDATE of the changed columns.  the cached entry is patched in place first, and a hit there is
+	//  what shows the customer exists; only a customer that isn't cached is read, which is the existence check
+	//  and the response in one.  a failed UPDATE drops the entry it already changed
+	@Override
+	public Customer patch(UUID id, Map<String, String> changes) {
+		CustomerPatch.columns(changes);
+		Object cached = cacheBatchOperations.replace("customers", id,
+				value -> value instanceof Customer customer ? CustomerPatch.apply(customer, changes) : value);
+		Customer patched;
+		if (cached instanceof Customer customer) {
+			patched = customer;
+		} else {
+			Customer stored = this.customerRepository.findById(id).orElse(null);
+			if (stored == null)
+				return null;
+			patched = CustomerPatch.apply(stored, changes);
+		}
+		try {
+			this.customerRepository.patch(id, changes).toCompletableFuture().join();
+		} catch (RuntimeException e) {
+			if (cached instanceof Customer)
+				cacheManager.getCache("customers").evict(id);
+			throw e;
+		}
+		return patched;
+	}
+
 	@CacheEvict(allEntries = true)
 	@Override
 	public void evictCache() {
@@ -94,6 +193,37 @@ public class CustomerServiceImpl implements CustomerService {
 		return this.customerRepository.findById(id).orElse(null);
 	}
 
+	//  cache first for all ids in one round trip, then parallel partition reads for the misses which are
+	//  written back in one pipeline.  ids that don't exist are left out
+	@Override
+	public List<Customer> getCustomersByIds(Collection<UUID> ids) {
+		Map<UUID, Customer> found = new LinkedHashMap<>();
+		cacheBatchOperations.getAll("customers", ids).forEach((id, value) -> {
+			if (value instanceof Customer customer)
+				found.put((UUID) id, customer);
+		});
+		List<UUID> misses = new ArrayList<>();
+		for (UUID id : ids) {
+			if (!found.containsKey(id))
+				misses.add(id);
+		}
+		if (!misses.isEmpty()) {
+			log.info("loading " + misses.size() + " of " + ids.size() + " customers from cassandra");
+			waitSomeTime();
+			Map<UUID, Customer> loaded = new LinkedHashMap<>();
+			this.customerRepository.findAllByIdAsync(misses).forEach(c -> loaded.put(c.getId(), c));
+			cacheBatchOperations.putAll("customers", loaded);
+			found.putAll(loaded);
+		}
+		List<Customer> customers = new ArrayList<>(ids.size());
+		for (UUID id : ids) {
+			Customer customer = found.get(id);
+			if (customer != null)
+				customers.add(customer);
+		}
+		return customers;
+	}
+
 	private void waitSomeTime() {
 		log.info("Long Wait Begin");
 		try {
@@ -0,0 +1,155 @@
+package com.cassandra.services.impl;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.interceptor.SimpleKey;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Service;
+
+import com.cassandra.cache.ReactiveCacheOperations;
+import com.cassandra.models.Customer;
+import com.cassandra.repositories.CustomerPatch;
+import com.cassandra.repositories.CustomerRepository;
+import com.cassandra.repositories.ReactiveCustomerRepository;
+import com.cassandra.services.ReactiveCustomerService;
+
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Cache-aside over the reactive cassandra and redis clients, nothing here blocks a thread.
+ */
+@Slf4j
+@Profile("reactive")
+@Service
+public class ReactiveCustomerServiceImpl implements ReactiveCustomerService {
+
+	private static final String CACHE = "customers";
+
+	@Autowired
+	private ReactiveCustomerRepository customerRepository;
+	@Autowired
+	private ReactiveCacheOperations cacheOperations;
+	//  only for its async driver level methods, which never block
+	@Autowired
+	private CustomerRepository blockingRepository;
+
+	@Value("${cassandra.async.max-in-flight:256}")
+	private int maxInFlight;
+
+	//  same entry as @Cacheable on the servlet service's getAll, which caches the list under SimpleKey.EMPTY
+	@Override
+	@SuppressWarnings("unchecked")
+	public Mono<List<Customer>> getAll() {
+		return this.cacheOperations.get(CACHE, SimpleKey.EMPTY, List.class,
+				() -> waitSomeTime().then(this.customerRepository.findAll().collectList().cast(List.class)))
+				.map(customers -> (List<Customer>) customers);
+	}
+
+	//  the driver fetches the next page as the client takes rows, one page in memory at a time
+	@Override
+	public Flux<Customer> exportAll() {
+		return this.customerRepository.findAll();
+	}
+
+	@Override
+	public Mono<Customer> add(Customer customer) {
+		log.info(" write to database");
+		return this.customerRepository.save(customer)
+				.flatMap(created -> this.cacheOperations.put(CACHE, created.getId(), created).thenReturn(created));
+	}
+
+	@Override
+	public Mono<Customer> update(Customer customer) {
+		return this.customerRepository.findById(customer.getId())
+				.flatMap(repCustomer -> {
+					repCustomer.setName(customer.getName());
+					repCustomer.setContactName(customer.getContactName());
+					repCustomer.setAddress(customer.getAddress());
+					repCustomer.setCity(customer.getCity());
+					repCustomer.setPostalCode(customer.getPostalCode());
+					repCustomer.setCountry(customer.getCountry());
+					return this.customerRepository.save(repCustomer);
+				})
+				.flatMap(updated -> this.cacheOperations.put(CACHE, updated.getId(), updated).thenReturn(updated));
+	}
+
+	//  same as the servlet service: the cached entry is patched in place, only an uncached customer is read, then
+	//  one plain UPDATE.  a failed UPDATE drops the entry
+	@Override
+	public Mono<Customer> patch(UUID id, Map<String, String> changes) {
+		return Mono.defer(() -> {
+			CustomerPatch.columns(changes);
+			return this.cacheOperations.replace(CACHE, id, Customer.class,
+							customer -> CustomerPatch.apply(customer, changes))
+					.switchIfEmpty(Mono.defer(() -> this.customerRepository.findById(id))
+							.map(customer -> CustomerPatch.apply(customer, changes)))
+					.flatMap(patched -> Mono.fromCompletionStage(() -> this.blockingRepository.patch(id, changes))
+							.thenReturn(patched)
+							.onErrorResume(e -> this.cacheOperations.evict(CACHE, id).then(Mono.error(e))));
+		});
+	}
+
+	@Override
+	public Mono<Void> evictCache() {
+		return this.cacheOperations.clear(CACHE).doOnSuccess(done -> log.info("all entries have been evicted"));
+	}
+
+	@Override
+	public Mono<Void> delete(UUID id) {
+		return this.customerRepository.deleteById(id).then(this.cacheOperations.evict(CACHE, id));
+	}
+
+	//  concurrent misses on one id share a single read, an id that doesn't exist is not cached
+	@Override
+	public Mono<Customer> getCustomerById(UUID id) {
+		return this.cacheOperations.get(CACHE, id, Customer.class,
+				() -> waitSomeTime().then(this.customerRepository.findById(id)));
+	}
+
+	//  cache first for all ids in one round trip, then one partition read per miss with at most
+	//  max-in-flight outstanding, written back together.  ids that don't exist are left out
+	@Override
+	public Flux<Customer> getCustomersByIds(Collection<UUID> ids) {
+		return this.cacheOperations.getAll(CACHE, ids, Customer.class).flatMapMany(found -> {
+			List<UUID> misses = new ArrayList<>();
+			for (UUID id : ids) {
+				if (!found.containsKey(id))
+					misses.add(id);
+			}
+			Mono<Map<Object, Customer>> loaded = Mono.just(Map.of());
+			if (!misses.isEmpty()) {
+				log.info("loading " + misses.size() + " of " + ids.size() + " customers from cassandra");
+				loaded = waitSomeTime()
+						.thenMany(Flux.fromIterable(misses).flatMap(this.customerRepository::findById, maxInFlight))
+						.<Map<Object, Customer>>collect(LinkedHashMap::new, (map, c) -> map.put(c.getId(), c))
+						.flatMap(customers -> this.cacheOperations.putAll(CACHE, customers).thenReturn(customers));
+			}
+			return loaded.flatMapIterable(customers -> {
+				found.putAll(customers);
+				List<Customer> ordered = new ArrayList<>(ids.size());
+				for (UUID id : ids) {
+					Customer customer = found.get(id);
+					if (customer != null)
+						ordered.add(customer);
+				}
+				return ordered;
+			});
+		});
+	}
+
+	//  same simulated latency as the servlet service, on a timer instead of a sleeping thread
+	private Mono<Long> waitSomeTime() {
+		return Mono.delay(Duration.ofMillis(3));
+	}
+
+}
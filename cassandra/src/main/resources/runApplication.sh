@@ -1,2 +1,2 @@
 #!/bin/bash
-java -jar /usr/app/spring-boot-redis-cache-0.0.1-SNAPSHOT.jar
+java $JAVA_OPTS -jar /usr/app/spring-boot-redis-cache-0.0.1-SNAPSHOT.jar
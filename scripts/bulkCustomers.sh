@@ -0,0 +1,4 @@
+# load the sample customers in one request, newline delimited json
+# add ?cache=false to skip loading them into redis
+cat customer.json customer1.json customer2.json customer3.json customer4.json customer5.json | \
+curl -X POST -H "Content-Type: application/x-ndjson" http://localhost:8080/api/customers/bulk --data-binary @-
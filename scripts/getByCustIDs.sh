@@ -0,0 +1,4 @@
+# get several customers in one call, cached ones come from one redis MGET
+curl -X GET -H "Content-Type: application/json"  'http://localhost:8080/api/customers?ids=1,2,3'
+# same lookup with the ids in the body
+curl -X POST -H "Content-Type: application/json"  'http://localhost:8080/api/customers/multi-get' --data '[1,2,3]'
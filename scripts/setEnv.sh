@@ -1,4 +1,5 @@
 export SPRING_DATASOURCE_URL=jdbc:postgresql://localhost:5432/postgres
+export SPRING_R2DBC_URL=r2dbc:postgresql://localhost:5432/postgres
 export SPRING_DATASOURCE_USERNAME=postgres
 export SPRING_DATASOURCE_PASSWORD=ekoloji
 export SPRING_REDIS_HOST=localhost
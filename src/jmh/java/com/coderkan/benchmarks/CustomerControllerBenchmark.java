@@ -0,0 +1,102 @@
+package com.coderkan.benchmarks;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.coderkan.controllers.CustomerController;
+import com.coderkan.models.Customer;
+import com.coderkan.models.CustomerPage;
+import com.coderkan.services.CustomerService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Jackson rendering of the controller responses: a keyset page written by the message converter
+ * the way spring mvc writes it, and the NDJSON export stream.  Output goes to a null stream.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CustomerControllerBenchmark {
+
+	@Param({ "10", "1000" })
+	private int customerCount;
+
+	private CustomerController customerController;
+	private MappingJackson2HttpMessageConverter converter;
+
+	@Setup
+	public void setup() {
+		List<Customer> customers = Customers.customers(customerCount);
+		CustomerService customerService = mock(CustomerService.class);
+		when(customerService.getPage(anyLong(), anyInt()))
+				.thenReturn(new CustomerPage(customers, (long) customerCount));
+		doAnswer(invocation -> {
+			Consumer<Customer> consumer = invocation.getArgument(0);
+			customers.forEach(consumer);
+			return null;
+		}).when(customerService).exportAll(any());
+
+		ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+		converter = new MappingJackson2HttpMessageConverter(objectMapper);
+		customerController = new CustomerController();
+		ReflectionTestUtils.setField(customerController, "customerService", customerService);
+		ReflectionTestUtils.setField(customerController, "objectMapper", objectMapper);
+	}
+
+	@Benchmark
+	public void page() throws IOException {
+		Object body = customerController.getAllCustomers(0L, customerCount, null).getBody();
+		converter.write(body, MediaType.APPLICATION_JSON, new NullOutputMessage());
+	}
+
+	@Benchmark
+	public void export() throws IOException {
+		customerController.exportCustomers().getBody().writeTo(OutputStream.nullOutputStream());
+	}
+
+	private static final class NullOutputMessage implements HttpOutputMessage {
+
+		private final HttpHeaders headers = new HttpHeaders();
+
+		@Override
+		public OutputStream getBody() {
+			return OutputStream.nullOutputStream();
+		}
+
+		@Override
+		public HttpHeaders getHeaders() {
+			return this.headers;
+		}
+	}
+}
@@ -0,0 +1,64 @@
+package com.coderkan.benchmarks;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import com.coderkan.cache.CacheBatchOperations;
+import com.coderkan.cache.CustomerCodec;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * A getCustomerById redis hit from the cached bytes to the response body: decoding to a Customer and
+ * rendering it with Jackson, against writing the cached bytes straight out, and the ETag a 304 costs.
+ * Output goes to a null stream.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CustomerPassThroughBenchmark {
+
+	private CustomerCodec codec;
+	private ObjectMapper objectMapper;
+	private byte[] cached;
+
+	@Setup
+	public void setup() {
+		codec = new CustomerCodec(512);
+		objectMapper = Jackson2ObjectMapperBuilder.json().build();
+		cached = codec.serialize(Customers.customers(1).get(0));
+	}
+
+	@Benchmark
+	public void decodeAndRender() throws IOException {
+		objectMapper.writeValue(OutputStream.nullOutputStream(), codec.deserialize(cached));
+	}
+
+	@Benchmark
+	public boolean passThrough() throws IOException {
+		try (JsonGenerator generator = objectMapper.getFactory().createGenerator(OutputStream.nullOutputStream())) {
+			return CustomerCodec.writeJson(cached, generator);
+		}
+	}
+
+	@Benchmark
+	public String etag() {
+		return CacheBatchOperations.etag(cached);
+	}
+}
@@ -0,0 +1,66 @@
+package com.coderkan.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.cache.Cache;
+
+import com.coderkan.services.CustomerService;
+
+/**
+ * getCustomerById through the caching proxy, see {@link CustomerServiceContext}.  The miss path includes
+ * the service's simulated 3 ms database latency.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CustomerServiceBenchmark {
+
+	private static final long HIT_ID = 1;
+	private static final long MISS_ID = 2;
+
+	@Param({ "json", "binary" })
+	private String codec;
+
+	private CustomerServiceContext context;
+	private CustomerService customerService;
+	private Cache cache;
+
+	@Setup
+	public void setup() {
+		context = new CustomerServiceContext(codec);
+		customerService = context.getCustomerService();
+		cache = context.getCache();
+		customerService.getCustomerById(HIT_ID);
+	}
+
+	@TearDown
+	public void tearDown() {
+		context.close();
+	}
+
+	@Benchmark
+	public Object cacheHit() {
+		return customerService.getCustomerById(HIT_ID);
+	}
+
+	@Benchmark
+	public Object cacheMiss() {
+		cache.evict(MISS_ID);
+		return customerService.getCustomerById(MISS_ID);
+	}
+}
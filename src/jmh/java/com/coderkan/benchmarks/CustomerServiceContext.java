@@ -0,0 +1,141 @@
+package com.coderkan.benchmarks;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Optional;
+import java.util.concurrent.locks.LockSupport;
+
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.cache.CacheStatisticsCollector;
+import org.springframework.data.redis.cache.RedisCacheConfiguration;
+import org.springframework.data.redis.cache.RedisCacheManager;
+import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializationContext.SerializationPair;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+
+import com.coderkan.cache.CacheBatchOperations;
+import com.coderkan.cache.CacheEvictor;
+import com.coderkan.cache.CacheMetrics;
+import com.coderkan.cache.CustomerCodec;
+import com.coderkan.cache.JitteredRedisCacheWriter;
+import com.coderkan.cache.TimedRedisCacheWriter;
+import com.coderkan.config.CustomerIdFilter;
+import com.coderkan.models.Customer;
+import com.coderkan.repositories.CustomerPatch;
+import com.coderkan.repositories.CustomerRepository;
+import com.coderkan.services.CustomerService;
+import com.coderkan.services.impl.CustomerServiceImpl;
+import com.coderkan.writebehind.WriteBehindQueue;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
+
+/**
+ * CustomerServiceImpl behind its caching proxy, with redis replaced by {@link InMemoryRedisCacheWriter} and the
+ * repository by a stub.  The cache manager is built like RedisConfig builds it; the single flight layer is
+ * replaced by {@link NonLockingCache} and the near cache is left out, both need a live redis.
+ */
+class CustomerServiceContext implements AutoCloseable {
+
+	private final AnnotationConfigApplicationContext context;
+	private final CustomerService customerService;
+	private final Cache cache;
+
+	@Configuration
+	@EnableCaching
+	static class CachingConfig {
+	}
+
+	CustomerServiceContext(String codec) {
+		this(codec, 0);
+	}
+
+	/**
+	 * @param roundTripNanos how long every repository call waits, a stand-in for the database round trip
+	 */
+	CustomerServiceContext(String codec, long roundTripNanos) {
+		RedisCacheConfiguration defaults = RedisCacheConfiguration.defaultCacheConfig()
+				.entryTtl(Duration.ofMinutes(30))
+				.serializeKeysWith(SerializationPair.fromSerializer(new StringRedisSerializer()))
+				.serializeValuesWith(SerializationPair.fromSerializer(new GenericJackson2JsonRedisSerializer()));
+		RedisCacheConfiguration customers = "binary".equals(codec)
+				? defaults.serializeValuesWith(SerializationPair.fromSerializer(new CustomerCodec(512)))
+				: defaults;
+		CacheMetrics cacheMetrics = new CacheMetrics(new SimpleMeterRegistry(), CacheStatisticsCollector.create());
+		RedisCacheManager redisCacheManager = RedisCacheManager
+				.builder(new JitteredRedisCacheWriter(new TimedRedisCacheWriter(
+						new InMemoryRedisCacheWriter().withStatisticsCollector(cacheMetrics.getStatistics()),
+						cacheMetrics), 10))
+				.cacheDefaults(defaults)
+				.withCacheConfiguration("customers", customers)
+				.build();
+		redisCacheManager.afterPropertiesSet();
+		Cache customerCache = new NonLockingCache(redisCacheManager.getCache("customers"));
+		CacheManager cacheManager = new CacheManager() {
+			@Override
+			public Cache getCache(String name) {
+				return "customers".equals(name) ? customerCache : redisCacheManager.getCache(name);
+			}
+
+			@Override
+			public Collection<String> getCacheNames() {
+				return redisCacheManager.getCacheNames();
+			}
+		};
+
+		CustomerRepository customerRepository = mock(CustomerRepository.class);
+		when(customerRepository.findById(anyLong())).thenAnswer(invocation -> {
+			LockSupport.parkNanos(roundTripNanos);
+			return Optional.of(Customers.customer(invocation.getArgument(0)));
+		});
+		when(customerRepository.save(any(Customer.class))).thenAnswer(invocation -> {
+			LockSupport.parkNanos(roundTripNanos);
+			return invocation.getArgument(0);
+		});
+		when(customerRepository.patch(anyLong(), anyMap())).thenAnswer(invocation -> {
+			LockSupport.parkNanos(roundTripNanos);
+			return CustomerPatch.apply(Customers.customer(invocation.getArgument(0)), invocation.getArgument(1));
+		});
+
+		//  stand-ins are registered as singletons so their @Autowired fields are left alone
+		context = new AnnotationConfigApplicationContext();
+		context.getBeanFactory().registerSingleton("cacheManager", cacheManager);
+		context.getBeanFactory().registerSingleton("customerRepository", customerRepository);
+		context.getBeanFactory().registerSingleton("observationRegistry", ObservationRegistry.NOOP);
+		context.getBeanFactory().registerSingleton("writeBehindQueue", mock(WriteBehindQueue.class));
+		context.getBeanFactory().registerSingleton("cacheBatchOperations", mock(CacheBatchOperations.class));
+		context.getBeanFactory().registerSingleton("cacheMetrics", cacheMetrics);
+		context.getBeanFactory().registerSingleton("cacheEvictor", mock(CacheEvictor.class));
+		CustomerIdFilter customerIdFilter = mock(CustomerIdFilter.class);
+		when(customerIdFilter.mightExist(anyLong())).thenReturn(true);
+		context.getBeanFactory().registerSingleton("customerIdFilter", customerIdFilter);
+		context.register(CachingConfig.class, CustomerServiceImpl.class);
+		context.refresh();
+
+		customerService = context.getBean(CustomerService.class);
+		cache = customerCache;
+	}
+
+	CustomerService getCustomerService() {
+		return customerService;
+	}
+
+	Cache getCache() {
+		return cache;
+	}
+
+	@Override
+	public void close() {
+		context.close();
+	}
+}
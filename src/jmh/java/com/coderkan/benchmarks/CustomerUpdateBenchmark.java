@@ -0,0 +1,73 @@
+package com.coderkan.benchmarks;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.coderkan.models.Customer;
+import com.coderkan.services.CustomerService;
+
+/**
+ * Updates per second through the caching proxy: PUT's findById plus save against PATCH's single
+ * UPDATE ... RETURNING, every repository call waiting roundTripMicros like a database round trip.
+ * <p>
+ * The repository is a stub, so this is a round-trip model, not measured update throughput: PUT costing two
+ * round trips and PATCH one is built into the setup, and dirty checking, the full row UPDATE and RETURNING
+ * never run.  What it does measure is the service and cache work around those calls.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(8)
+@Fork(1)
+public class CustomerUpdateBenchmark {
+
+	private static final long ID = 1;
+
+	@Param({ "200", "1000" })
+	private long roundTripMicros;
+
+	private CustomerServiceContext context;
+	private CustomerService customerService;
+	private Customer customer;
+	private Map<String, String> changes;
+
+	@Setup
+	public void setup() {
+		context = new CustomerServiceContext("binary", TimeUnit.MICROSECONDS.toNanos(roundTripMicros));
+		customerService = context.getCustomerService();
+		customer = Customers.customer(ID);
+		customer.setCity("Hamburg");
+		changes = Map.of("city", "Hamburg");
+	}
+
+	@TearDown
+	public void tearDown() {
+		context.close();
+	}
+
+	@Benchmark
+	public Object put() {
+		return customerService.update(customer);
+	}
+
+	@Benchmark
+	public Object patch() {
+		return customerService.patch(ID, changes);
+	}
+}
@@ -0,0 +1,35 @@
+package com.coderkan.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.coderkan.models.Customer;
+
+/**
+ * Fixed benchmark data so results compare across commits.
+ */
+final class Customers {
+
+	private Customers() {
+	}
+
+	static Customer customer(long id) {
+		Customer customer = new Customer();
+		customer.setId(id);
+		customer.setName("Alfreds Futterkiste " + id);
+		customer.setContactName("Maria Anders");
+		customer.setAddress("Obere Str. " + (id % 100));
+		customer.setCity("Berlin");
+		customer.setPostalCode("12209");
+		customer.setCountry("Germany");
+		return customer;
+	}
+
+	static List<Customer> customers(int count) {
+		List<Customer> customers = new ArrayList<>(count);
+		for (long id = 1; id <= count; id++) {
+			customers.add(customer(id));
+		}
+		return customers;
+	}
+}
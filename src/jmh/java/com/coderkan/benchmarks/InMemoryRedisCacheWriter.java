@@ -0,0 +1,80 @@
+package com.coderkan.benchmarks;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.data.redis.cache.CacheStatistics;
+import org.springframework.data.redis.cache.CacheStatisticsCollector;
+import org.springframework.data.redis.cache.RedisCacheWriter;
+
+/**
+ * In-process stand-in for redis below RedisCache.  Keys and values still go through the configured
+ * serializers, only the network round trip is gone.  TTLs are ignored.
+ */
+class InMemoryRedisCacheWriter implements RedisCacheWriter {
+
+	private final Map<ByteBuffer, byte[]> entries = new ConcurrentHashMap<>();
+	private final CacheStatisticsCollector statistics;
+
+	InMemoryRedisCacheWriter() {
+		this(CacheStatisticsCollector.none());
+	}
+
+	private InMemoryRedisCacheWriter(CacheStatisticsCollector statistics) {
+		this.statistics = statistics;
+	}
+
+	@Override
+	public void put(String name, byte[] key, byte[] value, Duration ttl) {
+		this.entries.put(ByteBuffer.wrap(key), value);
+		this.statistics.incPuts(name);
+	}
+
+	@Override
+	public byte[] get(String name, byte[] key) {
+		byte[] value = this.entries.get(ByteBuffer.wrap(key));
+		this.statistics.incGets(name);
+		if (value != null) {
+			this.statistics.incHits(name);
+		} else {
+			this.statistics.incMisses(name);
+		}
+		return value;
+	}
+
+	@Override
+	public byte[] putIfAbsent(String name, byte[] key, byte[] value, Duration ttl) {
+		return this.entries.putIfAbsent(ByteBuffer.wrap(key), value);
+	}
+
+	@Override
+	public void remove(String name, byte[] key) {
+		this.entries.remove(ByteBuffer.wrap(key));
+		this.statistics.incDeletes(name);
+	}
+
+	//  only the "prefix*" patterns RedisCache uses for clear
+	@Override
+	public void clean(String name, byte[] pattern) {
+		String prefix = new String(pattern, StandardCharsets.UTF_8).replace("*", "");
+		this.entries.keySet().removeIf(key -> StandardCharsets.UTF_8.decode(key.duplicate()).toString().startsWith(prefix));
+	}
+
+	@Override
+	public void clearStatistics(String name) {
+		this.statistics.reset(name);
+	}
+
+	@Override
+	public RedisCacheWriter withStatisticsCollector(CacheStatisticsCollector cacheStatisticsCollector) {
+		return new InMemoryRedisCacheWriter(cacheStatisticsCollector);
+	}
+
+	@Override
+	public CacheStatistics getCacheStatistics(String cacheName) {
+		return this.statistics.getCacheStatistics(cacheName);
+	}
+}
@@ -0,0 +1,71 @@
+package com.coderkan.benchmarks;
+
+import java.util.concurrent.Callable;
+
+import org.springframework.cache.Cache;
+import org.springframework.cache.support.AbstractValueAdaptingCache;
+import org.springframework.lang.Nullable;
+
+/**
+ * Stands in for SingleFlightCache, which needs a live redis.  Like it, get(key, loader) is a lookup, a load
+ * and a put without holding a monitor, instead of RedisCache's synchronized get that serializes every miss
+ * of a cache and pins virtual threads.
+ */
+class NonLockingCache extends AbstractValueAdaptingCache {
+
+	private final Cache delegate;
+
+	NonLockingCache(Cache delegate) {
+		super(true);
+		this.delegate = delegate;
+	}
+
+	@Override
+	public String getName() {
+		return this.delegate.getName();
+	}
+
+	@Override
+	public Object getNativeCache() {
+		return this.delegate.getNativeCache();
+	}
+
+	@Override
+	@Nullable
+	protected Object lookup(Object key) {
+		ValueWrapper wrapper = this.delegate.get(key);
+		return wrapper == null ? null : toStoreValue(wrapper.get());
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public <T> T get(Object key, Callable<T> valueLoader) {
+		ValueWrapper wrapper = this.delegate.get(key);
+		if (wrapper != null) {
+			return (T) wrapper.get();
+		}
+		T value;
+		try {
+			value = valueLoader.call();
+		} catch (Exception e) {
+			throw new ValueRetrievalException(key, valueLoader, e);
+		}
+		this.delegate.put(key, value);
+		return value;
+	}
+
+	@Override
+	public void put(Object key, @Nullable Object value) {
+		this.delegate.put(key, value);
+	}
+
+	@Override
+	public void evict(Object key) {
+		this.delegate.evict(key);
+	}
+
+	@Override
+	public void clear() {
+		this.delegate.clear();
+	}
+}
@@ -0,0 +1,75 @@
+package com.coderkan.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import com.coderkan.cache.CustomerCodec;
+import com.coderkan.models.Customer;
+
+/**
+ * Cache value serializers on a single customer and on a list of customers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SerializerBenchmark {
+
+	@Param({ "json", "binary" })
+	private String codec;
+
+	//  1000 customers is above the lz4 threshold of the binary codec
+	@Param({ "10", "1000" })
+	private int listSize;
+
+	private RedisSerializer<Object> serializer;
+	private Customer customer;
+	private List<Customer> customers;
+	private byte[] customerBytes;
+	private byte[] listBytes;
+
+	@Setup
+	public void setup() {
+		serializer = "binary".equals(codec) ? new CustomerCodec(512) : new GenericJackson2JsonRedisSerializer();
+		customer = Customers.customer(42);
+		customers = Customers.customers(listSize);
+		customerBytes = serializer.serialize(customer);
+		listBytes = serializer.serialize(customers);
+	}
+
+	@Benchmark
+	public byte[] serializeCustomer() {
+		return serializer.serialize(customer);
+	}
+
+	@Benchmark
+	public Object deserializeCustomer() {
+		return serializer.deserialize(customerBytes);
+	}
+
+	@Benchmark
+	public byte[] serializeList() {
+		return serializer.serialize(customers);
+	}
+
+	@Benchmark
+	public Object deserializeList() {
+		return serializer.deserialize(listBytes);
+	}
+}
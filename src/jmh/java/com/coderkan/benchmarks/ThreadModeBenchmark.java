@@ -0,0 +1,84 @@
+package com.coderkan.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.cache.Cache;
+
+import com.coderkan.services.CustomerService;
+
+/**
+ * Request throughput of the two execution modes: a burst of concurrent getCustomerById calls for different
+ * customers, one in ten a cache miss that blocks for the simulated 3 ms database call, run on tomcat's
+ * default 200 platform threads or on one virtual thread per call.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ThreadModeBenchmark {
+
+	private static final int REQUESTS = 10_000;
+
+	@Param({ "platform", "virtual" })
+	private String threads;
+
+	private CustomerServiceContext context;
+	private CustomerService customerService;
+	private Cache cache;
+	private ExecutorService executor;
+
+	@Setup
+	public void setup() {
+		context = new CustomerServiceContext("binary");
+		customerService = context.getCustomerService();
+		cache = context.getCache();
+		executor = "virtual".equals(threads)
+				? Executors.newVirtualThreadPerTaskExecutor()
+				: Executors.newFixedThreadPool(200);
+	}
+
+	@TearDown
+	public void tearDown() {
+		executor.shutdownNow();
+		context.close();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(REQUESTS)
+	public int requests() throws InterruptedException, ExecutionException {
+		for (long id = 0; id < REQUESTS; id += 10) {
+			cache.evict(id);
+		}
+		List<Future<Object>> responses = new ArrayList<>(REQUESTS);
+		for (int i = 0; i < REQUESTS; i++) {
+			long id = i;
+			responses.add(executor.submit(() -> customerService.getCustomerById(id)));
+		}
+		int found = 0;
+		for (Future<Object> response : responses) {
+			found += response.get() == null ? 0 : 1;
+		}
+		return found;
+	}
+}
@@ -2,8 +2,16 @@ package com.coderkan;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.context.annotation.FilterType;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+
+import com.coderkan.repositories.ReactiveCustomerRepository;
 
 @SpringBootApplication
+//  the reactive repository maps the same entity, without the filter spring data jpa claims it and fails
+@EnableJpaRepositories(excludeFilters = @ComponentScan.Filter(type = FilterType.ASSIGNABLE_TYPE,
+		classes = ReactiveCustomerRepository.class))
 public class SpringBootRedisCacheApplication {
 
 	public static void main(String[] args) {
@@ -0,0 +1,115 @@
+package com.coderkan.actuator;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.data.redis.cache.CacheStatistics;
+import org.springframework.data.redis.cache.RedisCache;
+import org.springframework.stereotype.Component;
+
+import com.coderkan.cache.SingleFlightCache;
+import com.coderkan.cache.TwoLevelCache;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import io.micrometer.core.instrument.search.Search;
+
+/**
+ * /actuator/cachestats - one summary per cache of how well it is doing: redis hit ratio, near cache hit ratio,
+ * how misses were loaded, and where the time goes (redis, deserialization, database).
+ * The same numbers are available one by one under /actuator/metrics.
+ */
+@Component
+@Endpoint(id = "cachestats")
+public class CacheStatsEndpoint {
+
+	@Autowired
+	private CacheManager cacheManager;
+	@Autowired
+	private MeterRegistry meterRegistry;
+
+	@ReadOperation
+	public Map<String, Object> caches() {
+		Map<String, Object> caches = new LinkedHashMap<>();
+		for (String name : cacheManager.getCacheNames()) {
+			caches.put(name, cache(name));
+		}
+		return caches;
+	}
+
+	@ReadOperation
+	public Map<String, Object> cache(@Selector String name) {
+		Cache cache = cacheManager.getCache(name);
+		if (cache == null) {
+			return null;
+		}
+		Map<String, Object> summary = new LinkedHashMap<>();
+		if (cache instanceof TwoLevelCache twoLevelCache) {
+			CacheStats stats = twoLevelCache.getLocalCache().stats();
+			Map<String, Object> near = new LinkedHashMap<>();
+			near.put("requests", stats.requestCount());
+			near.put("hits", stats.hitCount());
+			near.put("hitRatio", ratio(stats.hitCount(), stats.requestCount()));
+			near.put("evictions", stats.evictionCount());
+			near.put("size", twoLevelCache.getLocalCache().estimatedSize());
+			summary.put("near", near);
+			cache = twoLevelCache.getRedisCache();
+		}
+		if (cache instanceof SingleFlightCache singleFlightCache) {
+			cache = singleFlightCache.getDelegate();
+		}
+		if (cache instanceof RedisCache redisCache) {
+			CacheStatistics stats = redisCache.getStatistics();
+			Map<String, Object> redis = new LinkedHashMap<>();
+			redis.put("gets", stats.getGets());
+			redis.put("hits", stats.getHits());
+			redis.put("misses", stats.getMisses());
+			redis.put("hitRatio", ratio(stats.getHits(), stats.getGets()));
+			redis.put("puts", stats.getPuts());
+			redis.put("deletes", stats.getDeletes());
+			redis.put("since", stats.getSince());
+			summary.put("redis", redis);
+		}
+		Map<String, Object> loads = new LinkedHashMap<>();
+		Search.in(meterRegistry).name("cache.singleflight.loads").tag("cache", name).counters()
+				.forEach(counter -> loads.put(counter.getId().getTag("role"), (long) counter.count()));
+		summary.put("loads", loads);
+		Map<String, Object> latency = new LinkedHashMap<>();
+		Search.in(meterRegistry).name("cache.redis").tag("cache", name).timers()
+				.forEach(timer -> latency.put("redis." + timer.getId().getTag("operation"), timer(timer)));
+		Search.in(meterRegistry).name("cache.deserialize").tag("cache", name).timers()
+				.forEach(timer -> latency.put("deserialize", timer(timer)));
+		Search.in(meterRegistry).name("cache.load").tag("cache", name).timers()
+				.forEach(timer -> latency.put("load", timer(timer)));
+		summary.put("latencyMillis", latency);
+		return summary;
+	}
+
+	private static Map<String, Object> timer(Timer timer) {
+		Map<String, Object> values = new LinkedHashMap<>();
+		values.put("count", timer.count());
+		values.put("mean", round(timer.mean(TimeUnit.MILLISECONDS)));
+		for (ValueAtPercentile percentile : timer.takeSnapshot().percentileValues()) {
+			values.put("p" + Math.round(percentile.percentile() * 100), round(percentile.value(TimeUnit.MILLISECONDS)));
+		}
+		values.put("max", round(timer.max(TimeUnit.MILLISECONDS)));
+		return values;
+	}
+
+	private static double ratio(long part, long total) {
+		return total == 0 ? 0 : round((double) part / total);
+	}
+
+	private static double round(double value) {
+		return Math.round(value * 1000) / 1000.0;
+	}
+}
@@ -0,0 +1,46 @@
+package com.coderkan.actuator;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import com.coderkan.cache.HotKeyTracker;
+
+/**
+ * /actuator/hotkeys - the customer ids getCustomerById is called for most, hottest first, with their decayed
+ * request counts and estimated requests per second.  /actuator/hotkeys/{id} gives the estimate for any id.
+ */
+@Component
+@Endpoint(id = "hotkeys")
+@ConditionalOnProperty(prefix = "cache.hot-keys", name = "enabled", havingValue = "true")
+public class HotKeysEndpoint {
+
+	@Autowired
+	private HotKeyTracker hotKeyTracker;
+
+	@ReadOperation
+	public Map<String, Object> hotKeys() {
+		Map<String, Object> summary = new LinkedHashMap<>();
+		summary.put("requests", hotKeyTracker.getRequests());
+		summary.put("sketch", hotKeyTracker.getDepth() + "x" + hotKeyTracker.getWidth());
+		summary.put("topK", hotKeyTracker.getCapacity());
+		summary.put("keys", hotKeyTracker.top());
+		return summary;
+	}
+
+	@ReadOperation
+	public Map<String, Object> hotKey(@Selector long id) {
+		long count = hotKeyTracker.estimate(id);
+		Map<String, Object> key = new LinkedHashMap<>();
+		key.put("id", id);
+		key.put("count", count);
+		key.put("ratePerSecond", Math.round(hotKeyTracker.rate(count) * 1000) / 1000.0);
+		return key;
+	}
+}
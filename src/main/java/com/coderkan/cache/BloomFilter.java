@@ -0,0 +1,97 @@
+package com.coderkan.cache;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bloom filter of long keys.  {@link #mightContain(long)} false means the key was never put, true means it
+ * probably was: with the expected number of keys in, about falsePositiveRate of the other keys answer true.
+ * Thread safe, puts set bits with a CAS and lookups only read, neither locks or allocates.
+ * Keys can't be removed, a filter that holds too many stale or too many keys is replaced by a new one.
+ */
+public class BloomFilter {
+
+	private final AtomicLongArray words;
+	private final long bits;
+	private final int hashes;
+	private final long capacity;
+	private final LongAdder puts = new LongAdder();
+
+	private BloomFilter(long bits, int hashes, long capacity) {
+		this.words = new AtomicLongArray((int) ((bits + 63) >>> 6));
+		this.bits = this.words.length() * 64L;
+		this.hashes = hashes;
+		this.capacity = capacity;
+	}
+
+	/**
+	 * Sized for the expected number of keys at the false positive rate: -n ln(p) / ln(2)^2 bits and
+	 * bits / n ln(2) hash functions.
+	 */
+	public static BloomFilter create(long expectedKeys, double falsePositiveRate) {
+		long n = Math.max(1, expectedKeys);
+		long bits = Math.max(64, (long) Math.ceil(-n * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2))));
+		int hashes = Math.max(1, (int) Math.round((double) bits / n * Math.log(2)));
+		return new BloomFilter(bits, hashes, n);
+	}
+
+	public void put(long key) {
+		long h1 = mix(key);
+		long h2 = mix(h1);
+		for (int i = 0; i < this.hashes; i++) {
+			long index = ((h1 + i * h2) & Long.MAX_VALUE) % this.bits;
+			int word = (int) (index >>> 6);
+			long mask = 1L << index;
+			long current = this.words.get(word);
+			while ((current & mask) == 0 && !this.words.compareAndSet(word, current, current | mask)) {
+				current = this.words.get(word);
+			}
+		}
+		this.puts.increment();
+	}
+
+	public boolean mightContain(long key) {
+		long h1 = mix(key);
+		long h2 = mix(h1);
+		for (int i = 0; i < this.hashes; i++) {
+			long index = ((h1 + i * h2) & Long.MAX_VALUE) % this.bits;
+			if ((this.words.get((int) (index >>> 6)) & (1L << index)) == 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Keys put so far, a key put twice counts twice.
+	 */
+	public long getPuts() {
+		return this.puts.sum();
+	}
+
+	public long getCapacity() {
+		return this.capacity;
+	}
+
+	public long getBits() {
+		return this.bits;
+	}
+
+	public int getHashes() {
+		return this.hashes;
+	}
+
+	/**
+	 * (1 - e^(-k n / m))^k for the keys put so far.
+	 */
+	public double expectedFalsePositiveRate() {
+		return Math.pow(1 - Math.exp(-(double) this.hashes * getPuts() / this.bits), this.hashes);
+	}
+
+	private static long mix(long key) {
+		long z = key + 0x9e3779b97f4a7c15L;
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+}
@@ -0,0 +1,278 @@
+package com.coderkan.cache;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.UnaryOperator;
+
+import org.springframework.data.redis.cache.RedisCacheConfiguration;
+import org.springframework.data.redis.connection.ClusterSlotHashUtil;
+import org.springframework.data.redis.connection.RedisClusterConnection;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.RedisStringCommands.SetOption;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.connection.jedis.JedisClusterConnection;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.data.redis.util.ByteUtils;
+
+import lombok.extern.slf4j.Slf4j;
+import net.jpountz.xxhash.XXHash64;
+import net.jpountz.xxhash.XXHashFactory;
+
+/**
+ * Multi-key reads and writes against the redis caches in one round trip.
+ * Keys and values are written exactly as RedisCache would write them (same prefix, serializers and TTL)
+ * so entries are interchangeable with the ones the cache annotations create.
+ * Redis time, deserialization time and hit/miss/put counts are reported to {@link CacheMetrics}.
+ */
+@Slf4j
+public class CacheBatchOperations {
+
+	private static final XXHash64 ETAG_HASH = XXHashFactory.fastestInstance().hash64();
+
+	/**
+	 * SET the new value only if the key still holds the value it was made from.  ARGV: expected, new value,
+	 * TTL in ms or 0.  Returns 0 and changes nothing when the key holds something else or is gone.
+	 */
+	public static final String COMPARE_AND_SET = "if redis.call('GET', KEYS[1]) == ARGV[1] then"
+			+ " if ARGV[3] == '0' then redis.call('SET', KEYS[1], ARGV[2])"
+			+ " else redis.call('SET', KEYS[1], ARGV[2], 'PX', ARGV[3]) end"
+			+ " return 1 end"
+			+ " return 0";
+
+	private final RedisConnectionFactory connectionFactory;
+	private final RedisCacheConfiguration defaultConfiguration;
+	private final Map<String, RedisCacheConfiguration> cacheConfigurations;
+	private final int ttlJitterPercent;
+	private final CacheMetrics cacheMetrics;
+
+	public CacheBatchOperations(RedisConnectionFactory connectionFactory, RedisCacheConfiguration defaultConfiguration,
+			Map<String, RedisCacheConfiguration> cacheConfigurations, int ttlJitterPercent, CacheMetrics cacheMetrics) {
+		this.connectionFactory = connectionFactory;
+		this.defaultConfiguration = defaultConfiguration;
+		this.cacheConfigurations = cacheConfigurations;
+		this.ttlJitterPercent = ttlJitterPercent;
+		this.cacheMetrics = cacheMetrics;
+	}
+
+	public RedisCacheConfiguration configurationFor(String cacheName) {
+		return this.cacheConfigurations.getOrDefault(cacheName, this.defaultConfiguration);
+	}
+
+	/**
+	 * One GET, the value exactly as stored.  Only a hit is counted, a miss is counted by the cache the caller
+	 * falls back to.
+	 */
+	public byte[] getRaw(String cacheName, Object key) {
+		byte[] rawKey = cacheKey(cacheName, key);
+		byte[] value = this.cacheMetrics.redisTimer(cacheName, "get").record(() -> {
+			try (RedisConnection connection = this.connectionFactory.getConnection()) {
+				return connection.stringCommands().get(rawKey);
+			}
+		});
+		if (value != null) {
+			this.cacheMetrics.recordGet(cacheName, true);
+		}
+		return value;
+	}
+
+	/**
+	 * A strong ETag for a cache value, the xxhash64 of its bytes.  Serializing the same value again gives the same tag.
+	 */
+	public static String etag(byte[] value) {
+		return "\"" + Long.toHexString(ETAG_HASH.hash(value, 0, value.length, 0)) + "\"";
+	}
+
+	/**
+	 * One MGET for all the keys, one per hash slot on a cluster.  The result only has the keys that were found, in request order.
+	 */
+	public Map<Object, Object> getAll(String cacheName, Collection<?> keys) {
+		Map<Object, Object> found = new LinkedHashMap<>();
+		if (keys.isEmpty()) {
+			return found;
+		}
+		Object[] requested = keys.toArray();
+		byte[][] rawKeys = new byte[requested.length][];
+		for (int i = 0; i < requested.length; i++) {
+			rawKeys[i] = cacheKey(cacheName, requested[i]);
+		}
+		List<byte[]> values = this.cacheMetrics.redisTimer(cacheName, "mget").record(() -> {
+			try (RedisConnection connection = this.connectionFactory.getConnection()) {
+				return mGet(connection, rawKeys);
+			}
+		});
+		for (int i = 0; values != null && i < requested.length; i++) {
+			byte[] value = values.get(i);
+			this.cacheMetrics.recordGet(cacheName, value != null);
+			if (value != null) {
+				found.put(requested[i], deserializeValue(cacheName, value));
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * Pipelined SET with the cache TTL, jittered per entry, for every entry.  Null values are skipped.
+	 * A cluster routes every SET to the node owning its slot, with jedis on a cluster they are not pipelined.
+	 */
+	public void putAll(String cacheName, Map<?, ?> entries) {
+		if (entries.isEmpty()) {
+			return;
+		}
+		Duration ttl = configurationFor(cacheName).getTtl();
+		this.cacheMetrics.redisTimer(cacheName, "pipeline").record(() -> {
+			try (RedisConnection connection = this.connectionFactory.getConnection()) {
+				boolean pipelined = canPipeline(connection);
+				if (pipelined)
+					connection.openPipeline();
+				try {
+					entries.forEach((key, value) -> {
+						if (value != null) {
+							connection.stringCommands().set(cacheKey(cacheName, key), serializeValue(cacheName, value),
+									expiration(ttl), SetOption.upsert());
+							this.cacheMetrics.getStatistics().incPuts(cacheName);
+						}
+					});
+				} finally {
+					if (pipelined)
+						connection.closePipeline();
+				}
+			}
+		});
+		log.debug("pipelined " + entries.size() + " entries into " + cacheName);
+	}
+
+	/**
+	 * Changes a cached entry in place: GET, the function, then a compare-and-set, again from the GET whenever
+	 * another write landed in between, so no concurrent change is overwritten.  Nothing is cached when the key
+	 * is missing, and near caches are left to the caller.
+	 *
+	 * @return the new value, null when the key isn't cached
+	 */
+	public Object replace(String cacheName, Object key, UnaryOperator<Object> function) {
+		byte[] rawKey = cacheKey(cacheName, key);
+		return this.cacheMetrics.redisTimer(cacheName, "replace").record(() -> {
+			try (RedisConnection connection = this.connectionFactory.getConnection()) {
+				while (true) {
+					byte[] current = connection.stringCommands().get(rawKey);
+					if (current == null) {
+						return null;
+					}
+					Object replaced = function.apply(deserializeValue(cacheName, current));
+					byte[] ttl = String.valueOf(ttlFor(cacheName).toMillis()).getBytes();
+					Long applied = connection.scriptingCommands().eval(COMPARE_AND_SET.getBytes(), ReturnType.INTEGER,
+							1, rawKey, current, serializeValue(cacheName, replaced), ttl);
+					if (applied != null && applied == 1) {
+						this.cacheMetrics.getStatistics().incPuts(cacheName);
+						return replaced;
+					}
+				}
+			}
+		});
+	}
+
+	/**
+	 * Pipelined DEL of every key, routed and pipelined like {@link #putAll(String, Map)}.
+	 */
+	public void evictAll(String cacheName, Collection<?> keys) {
+		if (keys.isEmpty()) {
+			return;
+		}
+		this.cacheMetrics.redisTimer(cacheName, "pipeline").record(() -> {
+			try (RedisConnection connection = this.connectionFactory.getConnection()) {
+				boolean pipelined = canPipeline(connection);
+				if (pipelined)
+					connection.openPipeline();
+				try {
+					for (Object key : keys) {
+						connection.keyCommands().del(cacheKey(cacheName, key));
+					}
+				} finally {
+					if (pipelined)
+						connection.closePipeline();
+				}
+			}
+		});
+		this.cacheMetrics.getStatistics().incDeletesBy(cacheName, keys.size());
+		log.debug("pipelined " + keys.size() + " evictions from " + cacheName);
+	}
+
+	private Expiration expiration(Duration ttl) {
+		if (ttl.isZero() || ttl.isNegative()) {
+			return Expiration.persistent();
+		}
+		return Expiration.from(JitteredRedisCacheWriter.jitter(ttl, this.ttlJitterPercent));
+	}
+
+	//  a cluster only runs a multi-key command on keys of one hash slot, so the keys are grouped by slot and
+	//  the MGETs are pipelined to the nodes owning them.  jedis can't pipeline on a cluster, there they run in turn
+	private static List<byte[]> mGet(RedisConnection connection, byte[][] rawKeys) {
+		if (!(connection instanceof RedisClusterConnection)) {
+			return connection.stringCommands().mGet(rawKeys);
+		}
+		Map<Integer, List<Integer>> bySlot = new LinkedHashMap<>();
+		for (int i = 0; i < rawKeys.length; i++) {
+			bySlot.computeIfAbsent(ClusterSlotHashUtil.calculateSlot(rawKeys[i]), slot -> new ArrayList<>()).add(i);
+		}
+		List<Object> replies = new ArrayList<>(bySlot.size());
+		boolean pipelined = canPipeline(connection);
+		if (pipelined)
+			connection.openPipeline();
+		for (List<Integer> indexes : bySlot.values()) {
+			byte[][] slotKeys = new byte[indexes.size()][];
+			for (int j = 0; j < slotKeys.length; j++) {
+				slotKeys[j] = rawKeys[indexes.get(j)];
+			}
+			List<byte[]> reply = connection.stringCommands().mGet(slotKeys);
+			if (!pipelined)
+				replies.add(reply);
+		}
+		if (pipelined)
+			replies = connection.closePipeline();
+		byte[][] values = new byte[rawKeys.length][];
+		int group = 0;
+		for (List<Integer> indexes : bySlot.values()) {
+			List<?> reply = (List<?>) replies.get(group++);
+			for (int j = 0; j < indexes.size(); j++) {
+				values[indexes.get(j)] = (byte[]) reply.get(j);
+			}
+		}
+		return Arrays.asList(values);
+	}
+
+	private static boolean canPipeline(RedisConnection connection) {
+		return !(connection instanceof JedisClusterConnection);
+	}
+
+	/**
+	 * The TTL for one new entry of the cache, jittered like every other write.  Zero means no expiry.
+	 */
+	public Duration ttlFor(String cacheName) {
+		Duration ttl = configurationFor(cacheName).getTtl();
+		if (ttl.isZero() || ttl.isNegative()) {
+			return Duration.ZERO;
+		}
+		return JitteredRedisCacheWriter.jitter(ttl, this.ttlJitterPercent);
+	}
+
+	public byte[] cacheKey(String cacheName, Object key) {
+		RedisCacheConfiguration configuration = configurationFor(cacheName);
+		String redisKey = configuration.getKeyPrefixFor(cacheName) + key;
+		return ByteUtils.getBytes(configuration.getKeySerializationPair().write(redisKey));
+	}
+
+	public byte[] serializeValue(String cacheName, Object value) {
+		return ByteUtils.getBytes(configurationFor(cacheName).getValueSerializationPair().write(value));
+	}
+
+	public Object deserializeValue(String cacheName, byte[] value) {
+		return this.cacheMetrics.deserializeTimer(cacheName)
+				.record(() -> configurationFor(cacheName).getValueSerializationPair().read(ByteBuffer.wrap(value)));
+	}
+}
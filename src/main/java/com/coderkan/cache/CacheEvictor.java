@@ -0,0 +1,294 @@
+package com.coderkan.cache;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.connection.RedisClusterConnection;
+import org.springframework.data.redis.connection.RedisClusterNode;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.ScanOptions;
+
+import com.coderkan.models.EvictionProgress;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Evicts every entry of a cache without blocking redis or the caller.
+ * <ul>
+ * <li>scan - a background job walks the cache's keys with SCAN MATCH, on every primary of a cluster, and
+ * UNLINKs them scan-count at a time, with an optional pause between batches.  Progress is kept per cache
+ * and a second request while a job runs gets the running job</li>
+ * <li>generation - INCR of the cache's generation, which is part of every key prefix (see
+ * {@link CacheGenerations}), so all the old entries become unreachable in one command and age out by TTL.
+ * The new generation is published so the other nodes switch right away, and they re-read it every
+ * refresh interval in case a message was missed</li>
+ * </ul>
+ * Near caches are cleared on every node in both modes.
+ */
+@Slf4j
+public class CacheEvictor implements MessageListener {
+
+	public enum Mode { SCAN, GENERATION }
+
+	private final RedisConnectionFactory connectionFactory;
+	private final CacheManager cacheManager;
+	private final CacheBatchOperations cacheBatchOperations;
+	private final CacheMetrics cacheMetrics;
+	private final CacheGenerations generations;
+	private final Mode mode;
+	private final int scanCount;
+	private final long batchPauseMillis;
+	private final String channel;
+	private final ConcurrentMap<String, Job> jobs = new ConcurrentHashMap<>();
+	private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "cache-evictor");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	public CacheEvictor(RedisConnectionFactory connectionFactory, CacheManager cacheManager,
+			CacheBatchOperations cacheBatchOperations, CacheMetrics cacheMetrics, CacheGenerations generations,
+			int scanCount, long batchPauseMillis, String channel) {
+		this.connectionFactory = connectionFactory;
+		this.cacheManager = cacheManager;
+		this.cacheBatchOperations = cacheBatchOperations;
+		this.cacheMetrics = cacheMetrics;
+		this.generations = generations;
+		this.mode = generations.isEnabled() ? Mode.GENERATION : Mode.SCAN;
+		this.scanCount = scanCount;
+		this.batchPauseMillis = batchPauseMillis;
+		this.channel = channel;
+	}
+
+	/**
+	 * Reads the current generation of the caches now and every refresh interval after, generation mode only.
+	 */
+	public void start(Duration refreshInterval) {
+		if (this.mode != Mode.GENERATION) {
+			return;
+		}
+		for (String cacheName : this.cacheManager.getCacheNames()) {
+			Duration ttl = this.cacheBatchOperations.configurationFor(cacheName).getTtl();
+			if (ttl.isZero() || ttl.isNegative()) {
+				log.warn("cache " + cacheName + " has no TTL, keys of old generations will never expire");
+			}
+		}
+		loadGenerations();
+		long seconds = refreshInterval.toSeconds();
+		if (seconds > 0) {
+			this.executor.scheduleWithFixedDelay(this::loadGenerations, seconds, seconds, TimeUnit.SECONDS);
+		}
+	}
+
+	public void shutdown() {
+		this.executor.shutdownNow();
+	}
+
+	public Mode getMode() {
+		return this.mode;
+	}
+
+	public String getChannel() {
+		return this.channel;
+	}
+
+	/**
+	 * Starts evicting every entry of the cache and returns right away: in scan mode with the job's progress
+	 * so far, in generation mode once the generation has moved on.
+	 */
+	public EvictionProgress evictAll(String cacheName) {
+		if (this.mode == Mode.GENERATION) {
+			return bumpGeneration(cacheName);
+		}
+		Job job = this.jobs.compute(cacheName, (name, running) -> running != null && running.isRunning() ? running : new Job(name));
+		if (job.submitted.compareAndSet(false, true)) {
+			this.executor.execute(() -> scan(job));
+		}
+		return job.progress();
+	}
+
+	/**
+	 * The last eviction of the cache on this node, null if there was none.
+	 */
+	public EvictionProgress progress(String cacheName) {
+		Job job = this.jobs.get(cacheName);
+		return job == null ? null : job.progress();
+	}
+
+	@Override
+	public void onMessage(Message message, byte[] pattern) {
+		String body = new String(message.getBody(), StandardCharsets.UTF_8);
+		int separator = body.lastIndexOf(':');
+		try {
+			String cacheName = body.substring(0, separator);
+			advance(cacheName, Long.parseLong(body.substring(separator + 1)));
+		} catch (RuntimeException e) {
+			log.warn("ignoring malformed generation message " + body + " on " + this.channel);
+		}
+	}
+
+	private EvictionProgress bumpGeneration(String cacheName) {
+		Job job = new Job(cacheName);
+		byte[] key = CacheGenerations.redisKey(cacheName).getBytes(StandardCharsets.UTF_8);
+		Long generation;
+		try (RedisConnection connection = this.connectionFactory.getConnection()) {
+			generation = connection.stringCommands().incr(key);
+			this.generations.advance(cacheName, generation);
+			connection.publish(this.channel.getBytes(StandardCharsets.UTF_8),
+					(cacheName + ":" + generation).getBytes(StandardCharsets.UTF_8));
+		}
+		TwoLevelCache nearCache = nearCache(cacheName);
+		if (nearCache != null) {
+			nearCache.clearNear();
+		}
+		log.info("cache " + cacheName + " moved to generation " + generation);
+		job.generation = generation;
+		job.finish("DONE");
+		this.jobs.put(cacheName, job);
+		return job.progress();
+	}
+
+	private void loadGenerations() {
+		try (RedisConnection connection = this.connectionFactory.getConnection()) {
+			for (String cacheName : this.cacheManager.getCacheNames()) {
+				byte[] value = connection.stringCommands().get(CacheGenerations.redisKey(cacheName).getBytes(StandardCharsets.UTF_8));
+				if (value != null) {
+					advance(cacheName, Long.parseLong(new String(value, StandardCharsets.UTF_8)));
+				}
+			}
+		} catch (RuntimeException e) {
+			//  the generations stay where they are until the next refresh or message
+			log.warn("could not read the cache generations", e);
+		}
+	}
+
+	//  a generation from another node.  L1 entries refilled from the old generation in the meantime are dropped
+	private void advance(String cacheName, long generation) {
+		if (generation > this.generations.get(cacheName)) {
+			this.generations.advance(cacheName, generation);
+			TwoLevelCache nearCache = nearCache(cacheName);
+			if (nearCache != null) {
+				nearCache.clearLocal();
+			}
+		}
+	}
+
+	//  only ever runs on the executor thread, one job at a time
+	private void scan(Job job) {
+		String cacheName = job.cacheName;
+		String pattern = this.cacheBatchOperations.configurationFor(cacheName).getKeyPrefixFor(cacheName) + "*";
+		ScanOptions options = ScanOptions.scanOptions().match(pattern).count(this.scanCount).build();
+		TwoLevelCache nearCache = nearCache(cacheName);
+		log.info("evicting " + pattern + " in batches of " + this.scanCount);
+		try (RedisConnection connection = this.connectionFactory.getConnection()) {
+			if (nearCache != null) {
+				nearCache.clearNear();
+			}
+			if (connection instanceof RedisClusterConnection clusterConnection) {
+				//  SCAN only walks the node it is sent to
+				for (RedisClusterNode node : clusterConnection.clusterGetNodes()) {
+					if (node.isMaster()) {
+						unlinkAll(connection, clusterConnection.scan(node, options), job);
+					}
+				}
+			} else {
+				unlinkAll(connection, connection.keyCommands().scan(options), job);
+			}
+			//  again, entries read back into L1 from keys not yet unlinked would outlive the eviction
+			if (nearCache != null) {
+				nearCache.clearNear();
+			}
+			job.finish("DONE");
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			job.finish("FAILED");
+		} catch (RuntimeException e) {
+			log.warn("evicting " + cacheName + " failed after " + job.deleted.get() + " entries", e);
+			job.finish("FAILED");
+		}
+		log.info("evicted " + job.deleted.get() + " of " + job.scanned.get() + " scanned entries from " + cacheName
+				+ " in " + job.progress().getElapsedMillis() + " ms");
+	}
+
+	private void unlinkAll(RedisConnection connection, Cursor<byte[]> cursor, Job job) throws InterruptedException {
+		try (cursor) {
+			List<byte[]> batch = new ArrayList<>(this.scanCount);
+			while (cursor.hasNext()) {
+				batch.add(cursor.next());
+				if (batch.size() == this.scanCount) {
+					unlink(connection, batch, job);
+				}
+			}
+			unlink(connection, batch, job);
+		}
+	}
+
+	//  UNLINK frees the values on a background thread in redis, DEL would free them inline
+	private void unlink(RedisConnection connection, List<byte[]> batch, Job job) throws InterruptedException {
+		if (batch.isEmpty()) {
+			return;
+		}
+		Long removed = this.cacheMetrics.redisTimer(job.cacheName, "clean")
+				.record(() -> connection.keyCommands().unlink(batch.toArray(new byte[0][])));
+		job.scanned.addAndGet(batch.size());
+		if (removed != null && removed > 0) {
+			job.deleted.addAndGet(removed);
+			this.cacheMetrics.getStatistics().incDeletesBy(job.cacheName, removed.intValue());
+		}
+		batch.clear();
+		if (this.batchPauseMillis > 0) {
+			Thread.sleep(this.batchPauseMillis);
+		}
+	}
+
+	private TwoLevelCache nearCache(String cacheName) {
+		Cache cache = this.cacheManager.getCache(cacheName);
+		return cache instanceof TwoLevelCache twoLevelCache ? twoLevelCache : null;
+	}
+
+	private class Job {
+
+		private final String cacheName;
+		private final AtomicBoolean submitted = new AtomicBoolean();
+		private final AtomicLong scanned = new AtomicLong();
+		private final AtomicLong deleted = new AtomicLong();
+		private volatile String state = "RUNNING";
+		private final long startNanos = System.nanoTime();
+		private volatile long elapsedMillis;
+		private volatile long generation;
+
+		private Job(String cacheName) {
+			this.cacheName = cacheName;
+		}
+
+		private boolean isRunning() {
+			return "RUNNING".equals(this.state);
+		}
+
+		private void finish(String state) {
+			this.elapsedMillis = (System.nanoTime() - this.startNanos) / 1_000_000;
+			this.state = state;
+		}
+
+		private EvictionProgress progress() {
+			long elapsed = isRunning() ? (System.nanoTime() - this.startNanos) / 1_000_000 : this.elapsedMillis;
+			return new EvictionProgress(this.cacheName, mode.name().toLowerCase(), this.state, this.scanned.get(),
+					this.deleted.get(), this.generation, elapsed);
+		}
+	}
+}
@@ -0,0 +1,53 @@
+package com.coderkan.cache;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.springframework.data.redis.cache.CacheKeyPrefix;
+
+/**
+ * Key prefix with a generation number per cache, customers::g3::42, when generation flush is on and the
+ * usual customers::42 otherwise.  Bumping the generation makes every key of the older generations unreachable
+ * at once, they expire by their TTL.  The prefix has no hash tag braces: those would put every key of a cache
+ * in one cluster slot.
+ */
+public class CacheGenerations implements CacheKeyPrefix {
+
+	private final boolean enabled;
+	private final ConcurrentMap<String, Long> generations = new ConcurrentHashMap<>();
+
+	public CacheGenerations(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	public boolean isEnabled() {
+		return this.enabled;
+	}
+
+	public long get(String cacheName) {
+		return this.generations.getOrDefault(cacheName, 0L);
+	}
+
+	/**
+	 * Moves the cache to the generation unless it is already there or later, a late or repeated
+	 * message can't undo a newer flush.
+	 */
+	public void advance(String cacheName, long generation) {
+		this.generations.merge(cacheName, generation, Math::max);
+	}
+
+	@Override
+	public String compute(String cacheName) {
+		if (!this.enabled) {
+			return cacheName + SEPARATOR;
+		}
+		return cacheName + SEPARATOR + "g" + get(cacheName) + SEPARATOR;
+	}
+
+	/**
+	 * The redis counter holding the current generation of the cache.
+	 */
+	public static String redisKey(String cacheName) {
+		return "cache:generation:" + cacheName;
+	}
+}
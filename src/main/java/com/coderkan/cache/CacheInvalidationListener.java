@@ -0,0 +1,47 @@
+package com.coderkan.cache;
+
+import java.nio.charset.StandardCharsets;
+
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Receives invalidations published by {@link CacheInvalidationPublisher} and drops the
+ * matching L1 entries.  Messages sent by this node are skipped since the local
+ * tier was already updated by the write.
+ */
+@Slf4j
+public class CacheInvalidationListener implements MessageListener {
+
+	private final TwoLevelCacheManager cacheManager;
+	private final String nodeId;
+
+	public CacheInvalidationListener(TwoLevelCacheManager cacheManager, String nodeId) {
+		this.cacheManager = cacheManager;
+		this.nodeId = nodeId;
+	}
+
+	@Override
+	public void onMessage(Message message, byte[] pattern) {
+		String body = new String(message.getBody(), StandardCharsets.UTF_8);
+		String[] parts = body.split("\\" + CacheInvalidationPublisher.SEPARATOR, 3);
+		if (parts.length != 3) {
+			log.warn("ignoring malformed near cache invalidation " + body);
+			return;
+		}
+		if (this.nodeId.equals(parts[0])) {
+			return;
+		}
+		TwoLevelCache cache = this.cacheManager.getLoadedCache(parts[1]);
+		if (cache == null) {
+			return;
+		}
+		if (parts[2].isEmpty()) {
+			cache.clearLocal();
+		} else {
+			cache.evictLocal(parts[2]);
+		}
+	}
+}
@@ -0,0 +1,57 @@
+package com.coderkan.cache;
+
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Publishes near cache invalidations on a redis pub/sub channel.
+ * Message format is nodeId|cacheName|key, an empty key means clear the whole cache.
+ */
+@Slf4j
+public class CacheInvalidationPublisher {
+
+	static final String SEPARATOR = "|";
+
+	private final StringRedisTemplate stringRedisTemplate;
+	private final String channel;
+	private final String nodeId;
+
+	public CacheInvalidationPublisher(StringRedisTemplate stringRedisTemplate, String channel, String nodeId) {
+		this.stringRedisTemplate = stringRedisTemplate;
+		this.channel = channel;
+		this.nodeId = nodeId;
+	}
+
+	public String getChannel() {
+		return this.channel;
+	}
+
+	public String getNodeId() {
+		return this.nodeId;
+	}
+
+	public void publishEvict(String cacheName, String key) {
+		publish(cacheName, key);
+	}
+
+	public void publishClear(String cacheName) {
+		publish(cacheName, "");
+	}
+
+	/**
+	 * The message publishEvict sends, an empty key for publishClear.  For publishing on another client.
+	 */
+	public String message(String cacheName, String key) {
+		return this.nodeId + SEPARATOR + cacheName + SEPARATOR + key;
+	}
+
+	private void publish(String cacheName, String key) {
+		try {
+			this.stringRedisTemplate.convertAndSend(this.channel, message(cacheName, key));
+		} catch (RuntimeException e) {
+			//  L1 entries still expire by TTL so a lost message only means a short stale window
+			log.warn("could not publish near cache invalidation for " + cacheName + " " + key, e);
+		}
+	}
+}
@@ -0,0 +1,76 @@
+package com.coderkan.cache;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.springframework.data.redis.cache.CacheStatisticsCollector;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Shared cache instrumentation.  Hit/miss/put/delete counts go to one {@link CacheStatisticsCollector}, the same
+ * one the redis cache writer reports to, so paths that talk to redis directly (single flight scripts, MGET,
+ * pipelines) are counted together with RedisCache's own reads and writes.
+ * Latency is split into three timers per cache, all with percentiles:
+ * <ul>
+ * <li>cache.redis - time spent in redis calls, tagged with the operation</li>
+ * <li>cache.deserialize - time to turn a cached value back into objects</li>
+ * <li>cache.load - time to load a missed value from the database</li>
+ * </ul>
+ */
+public class CacheMetrics {
+
+	private final MeterRegistry meterRegistry;
+	private final CacheStatisticsCollector statistics;
+	private final ConcurrentMap<String, Timer> timers = new ConcurrentHashMap<>();
+
+	public CacheMetrics(MeterRegistry meterRegistry, CacheStatisticsCollector statistics) {
+		this.meterRegistry = meterRegistry;
+		this.statistics = statistics;
+	}
+
+	public MeterRegistry getMeterRegistry() {
+		return this.meterRegistry;
+	}
+
+	public CacheStatisticsCollector getStatistics() {
+		return this.statistics;
+	}
+
+	public Timer redisTimer(String cacheName, String operation) {
+		return this.timers.computeIfAbsent("redis|" + cacheName + "|" + operation,
+				k -> timer("cache.redis", "time spent in redis calls for the cache", cacheName)
+						.tag("operation", operation)
+						.register(this.meterRegistry));
+	}
+
+	public Timer deserializeTimer(String cacheName) {
+		return this.timers.computeIfAbsent("deserialize|" + cacheName,
+				k -> timer("cache.deserialize", "time to deserialize cached values", cacheName)
+						.register(this.meterRegistry));
+	}
+
+	public Timer loadTimer(String cacheName) {
+		return this.timers.computeIfAbsent("load|" + cacheName,
+				k -> timer("cache.load", "time to load missed values from the database", cacheName)
+						.register(this.meterRegistry));
+	}
+
+	//  a read that went to redis, counted the way RedisCache counts its own reads
+	public void recordGet(String cacheName, boolean hit) {
+		this.statistics.incGets(cacheName);
+		if (hit) {
+			this.statistics.incHits(cacheName);
+		} else {
+			this.statistics.incMisses(cacheName);
+		}
+	}
+
+	private static Timer.Builder timer(String name, String description, String cacheName) {
+		return Timer.builder(name)
+				.description(description)
+				.tag("cache", cacheName)
+				.publishPercentiles(0.5, 0.95, 0.99);
+	}
+}
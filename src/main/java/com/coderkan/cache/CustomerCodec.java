@@ -0,0 +1,327 @@
+package com.coderkan.cache;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import com.coderkan.models.Customer;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4FastDecompressor;
+
+/**
+ * Binary cache value format for {@link Customer} and {@code List<Customer>}.
+ * <pre>
+ * byte     format version (1)
+ * byte     type, 1 customer or 2 list of customers, 0x80 bit set when the rest is lz4 compressed
+ * [varint  uncompressed length, only when compressed]
+ * customer zigzag varint id, then name, contactName, address, city, postalCode, country each as
+ *          varint (utf-8 length + 1, 0 for null) followed by the utf-8 bytes
+ * list     varint count followed by that many customers
+ * </pre>
+ * No class names and no field names, so values are a fraction of the JSON size and decode without reflection.
+ * Anything else, and JSON values written before this codec was switched on, go through the JSON serializer -
+ * JSON never starts with the version byte.
+ */
+public class CustomerCodec implements RedisSerializer<Object> {
+
+	static final byte VERSION_1 = 1;
+	static final byte TYPE_CUSTOMER = 1;
+	static final byte TYPE_LIST = 2;
+	static final byte FLAG_LZ4 = (byte) 0x80;
+
+	private static final LZ4Factory LZ4 = LZ4Factory.fastestInstance();
+	private static final JsonFactory JSON = new JsonFactory();
+	private static final String TYPE_PROPERTY = "@class";
+
+	private final GenericJackson2JsonRedisSerializer fallback = new GenericJackson2JsonRedisSerializer();
+	private final LZ4Compressor compressor = LZ4.fastCompressor();
+	private final LZ4FastDecompressor decompressor = LZ4.fastDecompressor();
+	private final int compressionThreshold;
+
+	/**
+	 * @param compressionThreshold list values whose encoded size is at least this many bytes are lz4 compressed,
+	 *                             0 or less turns compression off
+	 */
+	public CustomerCodec(int compressionThreshold) {
+		this.compressionThreshold = compressionThreshold;
+	}
+
+	@Override
+	public byte[] serialize(Object value) throws SerializationException {
+		if (value instanceof Customer customer) {
+			Output out = new Output(64);
+			out.writeByte(VERSION_1);
+			out.writeByte(TYPE_CUSTOMER);
+			writeCustomer(out, customer);
+			return out.toByteArray();
+		}
+		if (value instanceof List<?> list && isCustomerList(list)) {
+			Output body = new Output(16 + list.size() * 64);
+			body.writeVarLong(list.size());
+			for (Object customer : list) {
+				writeCustomer(body, (Customer) customer);
+			}
+			return withListHeader(body);
+		}
+		return this.fallback.serialize(value);
+	}
+
+	@Override
+	public Object deserialize(byte[] bytes) throws SerializationException {
+		if (bytes == null || bytes.length == 0) {
+			return null;
+		}
+		if (bytes[0] != VERSION_1) {
+			return this.fallback.deserialize(bytes);
+		}
+		if (bytes.length < 2) {
+			throw new SerializationException("truncated customer value");
+		}
+		byte type = bytes[1];
+		Input in = new Input(bytes, 2, bytes.length);
+		if ((type & FLAG_LZ4) != 0) {
+			int length = (int) in.readVarLong();
+			byte[] raw = new byte[length];
+			this.decompressor.decompress(bytes, in.position, raw, 0, length);
+			in = new Input(raw, 0, length);
+			type &= ~FLAG_LZ4;
+		}
+		switch (type) {
+		case TYPE_CUSTOMER:
+			return readCustomer(in);
+		case TYPE_LIST:
+			int count = (int) in.readVarLong();
+			List<Customer> customers = new ArrayList<>(count);
+			for (int i = 0; i < count; i++) {
+				customers.add(readCustomer(in));
+			}
+			return customers;
+		default:
+			throw new SerializationException("unknown customer value type " + type);
+		}
+	}
+
+	/**
+	 * True when the bytes are a single customer in this format, not a list and not JSON.
+	 */
+	public static boolean isCustomer(byte[] bytes) {
+		return bytes != null && bytes.length >= 2 && bytes[0] == VERSION_1 && bytes[1] == TYPE_CUSTOMER;
+	}
+
+	/**
+	 * Writes a cached customer as the JSON Jackson renders for {@link Customer}, straight from the cached bytes:
+	 * no Customer is built and no field becomes a String, the utf-8 bytes are copied into the generator's buffer.
+	 * JSON values written before the codec was switched on are copied token by token without their type property.
+	 *
+	 * @return false, with nothing written, when the value isn't a single customer
+	 */
+	public static boolean writeJson(byte[] bytes, JsonGenerator generator) throws IOException {
+		if (bytes == null || bytes.length == 0) {
+			return false;
+		}
+		if (bytes[0] != VERSION_1) {
+			return copyJson(bytes, generator);
+		}
+		if (bytes.length < 2 || bytes[1] != TYPE_CUSTOMER) {
+			return false;
+		}
+		Input in = new Input(bytes, 2, bytes.length);
+		long zigzag = in.readVarLong();
+		generator.writeStartObject();
+		generator.writeNumberField("id", (zigzag >>> 1) ^ -(zigzag & 1));
+		writeStringField(in, "name", generator);
+		writeStringField(in, "contactName", generator);
+		writeStringField(in, "address", generator);
+		writeStringField(in, "city", generator);
+		writeStringField(in, "postalCode", generator);
+		writeStringField(in, "country", generator);
+		generator.writeEndObject();
+		return true;
+	}
+
+	private static void writeStringField(Input in, String field, JsonGenerator generator) throws IOException {
+		generator.writeFieldName(field);
+		long length = in.readVarLong();
+		if (length == 0) {
+			generator.writeNull();
+			return;
+		}
+		int byteLength = (int) (length - 1);
+		if (byteLength < 0 || in.position + byteLength > in.limit) {
+			throw new SerializationException("truncated customer value");
+		}
+		generator.writeUTF8String(in.bytes, in.position, byteLength);
+		in.position += byteLength;
+	}
+
+	//  GenericJackson2JsonRedisSerializer puts the type property first
+	private static boolean copyJson(byte[] bytes, JsonGenerator generator) throws IOException {
+		try (JsonParser parser = JSON.createParser(bytes)) {
+			if (parser.nextToken() != JsonToken.START_OBJECT || parser.nextToken() != JsonToken.FIELD_NAME
+					|| !TYPE_PROPERTY.equals(parser.currentName()) || parser.nextToken() != JsonToken.VALUE_STRING
+					|| !Customer.class.getName().equals(parser.getText())) {
+				return false;
+			}
+			generator.writeStartObject();
+			while (parser.nextToken() == JsonToken.FIELD_NAME) {
+				generator.copyCurrentStructure(parser);
+			}
+			generator.writeEndObject();
+			return true;
+		}
+	}
+
+	private byte[] withListHeader(Output body) {
+		if (this.compressionThreshold > 0 && body.size >= this.compressionThreshold) {
+			int maxLength = this.compressor.maxCompressedLength(body.size);
+			Output out = new Output(2 + 5 + maxLength);
+			out.writeByte(VERSION_1);
+			out.writeByte((byte) (TYPE_LIST | FLAG_LZ4));
+			out.writeVarLong(body.size);
+			out.ensure(maxLength);
+			out.size += this.compressor.compress(body.bytes, 0, body.size, out.bytes, out.size, maxLength);
+			return out.toByteArray();
+		}
+		Output out = new Output(2 + body.size);
+		out.writeByte(VERSION_1);
+		out.writeByte(TYPE_LIST);
+		out.writeBytes(body.bytes, 0, body.size);
+		return out.toByteArray();
+	}
+
+	private static boolean isCustomerList(List<?> list) {
+		for (Object item : list) {
+			if (!(item instanceof Customer)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static void writeCustomer(Output out, Customer customer) {
+		out.writeVarLong((customer.getId() << 1) ^ (customer.getId() >> 63));
+		out.writeString(customer.getName());
+		out.writeString(customer.getContactName());
+		out.writeString(customer.getAddress());
+		out.writeString(customer.getCity());
+		out.writeString(customer.getPostalCode());
+		out.writeString(customer.getCountry());
+	}
+
+	private static Customer readCustomer(Input in) {
+		long zigzag = in.readVarLong();
+		Customer customer = new Customer();
+		customer.setId((zigzag >>> 1) ^ -(zigzag & 1));
+		customer.setName(in.readString());
+		customer.setContactName(in.readString());
+		customer.setAddress(in.readString());
+		customer.setCity(in.readString());
+		customer.setPostalCode(in.readString());
+		customer.setCountry(in.readString());
+		return customer;
+	}
+
+	private static final class Output {
+
+		private byte[] bytes;
+		private int size;
+
+		Output(int capacity) {
+			this.bytes = new byte[capacity];
+		}
+
+		void ensure(int extra) {
+			if (this.size + extra > this.bytes.length) {
+				this.bytes = Arrays.copyOf(this.bytes, Math.max(this.bytes.length * 2, this.size + extra));
+			}
+		}
+
+		void writeByte(byte b) {
+			ensure(1);
+			this.bytes[this.size++] = b;
+		}
+
+		void writeBytes(byte[] src, int offset, int length) {
+			ensure(length);
+			System.arraycopy(src, offset, this.bytes, this.size, length);
+			this.size += length;
+		}
+
+		void writeVarLong(long value) {
+			ensure(10);
+			while ((value & ~0x7FL) != 0) {
+				this.bytes[this.size++] = (byte) ((value & 0x7F) | 0x80);
+				value >>>= 7;
+			}
+			this.bytes[this.size++] = (byte) value;
+		}
+
+		void writeString(String value) {
+			if (value == null) {
+				writeVarLong(0);
+				return;
+			}
+			byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+			writeVarLong(utf8.length + 1L);
+			writeBytes(utf8, 0, utf8.length);
+		}
+
+		byte[] toByteArray() {
+			return this.size == this.bytes.length ? this.bytes : Arrays.copyOf(this.bytes, this.size);
+		}
+	}
+
+	private static final class Input {
+
+		private final byte[] bytes;
+		private final int limit;
+		private int position;
+
+		Input(byte[] bytes, int position, int limit) {
+			this.bytes = bytes;
+			this.position = position;
+			this.limit = limit;
+		}
+
+		long readVarLong() {
+			long value = 0;
+			for (int shift = 0; shift < 64; shift += 7) {
+				if (this.position >= this.limit) {
+					throw new SerializationException("truncated customer value");
+				}
+				byte b = this.bytes[this.position++];
+				value |= (long) (b & 0x7F) << shift;
+				if ((b & 0x80) == 0) {
+					return value;
+				}
+			}
+			throw new SerializationException("malformed varint in customer value");
+		}
+
+		String readString() {
+			long length = readVarLong();
+			if (length == 0) {
+				return null;
+			}
+			int byteLength = (int) (length - 1);
+			if (byteLength < 0 || this.position + byteLength > this.limit) {
+				throw new SerializationException("truncated customer value");
+			}
+			String value = new String(this.bytes, this.position, byteLength, StandardCharsets.UTF_8);
+			this.position += byteLength;
+			return value;
+		}
+	}
+}
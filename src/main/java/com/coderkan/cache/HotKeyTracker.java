@@ -0,0 +1,245 @@
+package com.coderkan.cache;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * Heavy hitter tracker for long keys in fixed memory: a count-min sketch of depth x width counters gives every
+ * key an estimated count, and a min-heap keeps the top-K keys by that estimate.
+ * <p>
+ * {@link #record(long)} is lock free and allocates nothing: one hash, depth atomic increments and, only when
+ * the estimate beats the smallest count in the heap, a tryLock on the heap.  When another thread holds the
+ * heap the update is skipped, a key that is really hot comes back soon enough.
+ * <p>
+ * Counts decay by halving every counter on each {@link #decay()}, so old traffic fades out.  A key seen r times
+ * a second settles at r * (interval + time since the last decay), which is what the rates are computed from.
+ */
+public class HotKeyTracker {
+
+	private final int width;
+	private final int depth;
+	private final int mask;
+	private final AtomicLongArray counters;
+	private final LongAdder requests = new LongAdder();
+	private final long decayIntervalNanos;
+	private volatile long lastDecayNanos = System.nanoTime();
+
+	private final int capacity;
+	private final long[] heapKeys;
+	private final long[] heapCounts;
+	private int size;
+	private final ReentrantLock heapLock = new ReentrantLock();
+	//  smallest count in the heap once it is full, 0 before
+	private volatile long admission;
+
+	/**
+	 * @param width counters per row, rounded up to a power of two
+	 * @param depth rows, each row hashes the key to a different counter
+	 * @param topK number of keys to keep
+	 */
+	public HotKeyTracker(int width, int depth, int topK, long decayInterval, TimeUnit unit) {
+		this.width = Integer.highestOneBit(Math.max(2, width - 1)) << 1;
+		this.depth = depth;
+		this.mask = this.width - 1;
+		this.counters = new AtomicLongArray(this.width * depth);
+		this.capacity = topK;
+		this.heapKeys = new long[topK];
+		this.heapCounts = new long[topK];
+		this.decayIntervalNanos = unit.toNanos(decayInterval);
+	}
+
+	public void record(long key) {
+		this.requests.increment();
+		long hash = mix(key);
+		int h1 = (int) hash;
+		int h2 = (int) (hash >>> 32);
+		long estimate = Long.MAX_VALUE;
+		for (int row = 0; row < this.depth; row++) {
+			int index = row * this.width + ((h1 + row * h2) & this.mask);
+			estimate = Math.min(estimate, this.counters.incrementAndGet(index));
+		}
+		if (estimate > this.admission && this.heapLock.tryLock()) {
+			try {
+				offer(key, estimate);
+			} finally {
+				this.heapLock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * The smallest of the key's counters, never lower than the real decayed count.
+	 */
+	public long estimate(long key) {
+		long hash = mix(key);
+		int h1 = (int) hash;
+		int h2 = (int) (hash >>> 32);
+		long estimate = Long.MAX_VALUE;
+		for (int row = 0; row < this.depth; row++) {
+			estimate = Math.min(estimate, this.counters.get(row * this.width + ((h1 + row * h2) & this.mask)));
+		}
+		return estimate;
+	}
+
+	/**
+	 * Estimated requests per second for a decayed count.
+	 */
+	public double rate(long count) {
+		double seconds = (this.decayIntervalNanos + System.nanoTime() - this.lastDecayNanos) / 1e9;
+		return seconds <= 0 ? 0 : count / seconds;
+	}
+
+	/**
+	 * Halves every counter.  Increments that land in between are halved on the next decay or not at all,
+	 * either way the estimates stay close.
+	 */
+	public void decay() {
+		for (int i = 0; i < this.counters.length(); i++) {
+			long count;
+			do {
+				count = this.counters.get(i);
+			} while (count != 0 && !this.counters.compareAndSet(i, count, count >>> 1));
+		}
+		this.heapLock.lock();
+		try {
+			//  halving keeps the heap order
+			for (int i = 0; i < this.size; i++) {
+				this.heapCounts[i] >>>= 1;
+			}
+			this.admission = this.size < this.capacity ? 0 : this.heapCounts[0];
+		} finally {
+			this.heapLock.unlock();
+		}
+		this.lastDecayNanos = System.nanoTime();
+	}
+
+	/**
+	 * The tracked keys, hottest first, with their current estimates.  Keys that decayed to nothing are left out.
+	 */
+	public List<HotKey> top() {
+		long[] keys;
+		this.heapLock.lock();
+		try {
+			keys = new long[this.size];
+			System.arraycopy(this.heapKeys, 0, keys, 0, this.size);
+		} finally {
+			this.heapLock.unlock();
+		}
+		List<HotKey> top = new ArrayList<>(keys.length);
+		for (long key : keys) {
+			long count = estimate(key);
+			if (count > 0) {
+				top.add(new HotKey(key, count, Math.round(rate(count) * 1000) / 1000.0));
+			}
+		}
+		top.sort(Comparator.comparingLong(HotKey::getCount).reversed());
+		return top;
+	}
+
+	public long getRequests() {
+		return this.requests.sum();
+	}
+
+	public int getWidth() {
+		return this.width;
+	}
+
+	public int getDepth() {
+		return this.depth;
+	}
+
+	public int getCapacity() {
+		return this.capacity;
+	}
+
+	//  called with the heap lock held
+	private void offer(long key, long count) {
+		for (int i = 0; i < this.size; i++) {
+			if (this.heapKeys[i] == key) {
+				if (count > this.heapCounts[i]) {
+					this.heapCounts[i] = count;
+					siftDown(i);
+				}
+				updateAdmission();
+				return;
+			}
+		}
+		if (this.size < this.capacity) {
+			this.heapKeys[this.size] = key;
+			this.heapCounts[this.size] = count;
+			siftUp(this.size++);
+		} else if (count > this.heapCounts[0]) {
+			this.heapKeys[0] = key;
+			this.heapCounts[0] = count;
+			siftDown(0);
+		}
+		updateAdmission();
+	}
+
+	private void updateAdmission() {
+		this.admission = this.size < this.capacity ? 0 : this.heapCounts[0];
+	}
+
+	private void siftUp(int i) {
+		while (i > 0) {
+			int parent = (i - 1) >>> 1;
+			if (this.heapCounts[parent] <= this.heapCounts[i])
+				return;
+			swap(i, parent);
+			i = parent;
+		}
+	}
+
+	private void siftDown(int i) {
+		while (true) {
+			int smallest = i;
+			int left = 2 * i + 1;
+			int right = left + 1;
+			if (left < this.size && this.heapCounts[left] < this.heapCounts[smallest])
+				smallest = left;
+			if (right < this.size && this.heapCounts[right] < this.heapCounts[smallest])
+				smallest = right;
+			if (smallest == i)
+				return;
+			swap(i, smallest);
+			i = smallest;
+		}
+	}
+
+	private void swap(int i, int j) {
+		long key = this.heapKeys[i];
+		long count = this.heapCounts[i];
+		this.heapKeys[i] = this.heapKeys[j];
+		this.heapCounts[i] = this.heapCounts[j];
+		this.heapKeys[j] = key;
+		this.heapCounts[j] = count;
+	}
+
+	//  splitmix64 finalizer, the two halves give the row hashes h1 + row * h2
+	private static long mix(long key) {
+		long z = key + 0x9e3779b97f4a7c15L;
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+
+	@Data
+	@AllArgsConstructor
+	public static class HotKey {
+
+		private long id;
+
+		private long count;
+
+		private double ratePerSecond;
+
+	}
+}
@@ -0,0 +1,73 @@
+package com.coderkan.cache;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.springframework.data.redis.cache.CacheStatistics;
+import org.springframework.data.redis.cache.CacheStatisticsCollector;
+import org.springframework.data.redis.cache.RedisCacheWriter;
+
+/**
+ * Spreads entry TTLs by +/- a percentage so entries written together (bulk loads, warm-up, a burst of
+ * misses) don't all expire in the same second and send the same burst of misses to the database.
+ */
+public class JitteredRedisCacheWriter implements RedisCacheWriter {
+
+	private final RedisCacheWriter delegate;
+	private final int jitterPercent;
+
+	public JitteredRedisCacheWriter(RedisCacheWriter delegate, int jitterPercent) {
+		this.delegate = delegate;
+		this.jitterPercent = jitterPercent;
+	}
+
+	public static Duration jitter(Duration ttl, int jitterPercent) {
+		if (jitterPercent <= 0 || ttl == null || ttl.isZero() || ttl.isNegative()) {
+			return ttl;
+		}
+		long millis = ttl.toMillis();
+		long spread = millis * jitterPercent / 100;
+		return Duration.ofMillis(Math.max(1, millis + ThreadLocalRandom.current().nextLong(-spread, spread + 1)));
+	}
+
+	@Override
+	public void put(String name, byte[] key, byte[] value, Duration ttl) {
+		this.delegate.put(name, key, value, jitter(ttl, this.jitterPercent));
+	}
+
+	@Override
+	public byte[] get(String name, byte[] key) {
+		return this.delegate.get(name, key);
+	}
+
+	@Override
+	public byte[] putIfAbsent(String name, byte[] key, byte[] value, Duration ttl) {
+		return this.delegate.putIfAbsent(name, key, value, jitter(ttl, this.jitterPercent));
+	}
+
+	@Override
+	public void remove(String name, byte[] key) {
+		this.delegate.remove(name, key);
+	}
+
+	@Override
+	public void clean(String name, byte[] pattern) {
+		this.delegate.clean(name, pattern);
+	}
+
+	@Override
+	public void clearStatistics(String name) {
+		this.delegate.clearStatistics(name);
+	}
+
+	@Override
+	public RedisCacheWriter withStatisticsCollector(CacheStatisticsCollector cacheStatisticsCollector) {
+		return new JitteredRedisCacheWriter(this.delegate.withStatisticsCollector(cacheStatisticsCollector),
+				this.jitterPercent);
+	}
+
+	@Override
+	public CacheStatistics getCacheStatistics(String cacheName) {
+		return this.delegate.getCacheStatistics(cacheName);
+	}
+}
@@ -0,0 +1,197 @@
+package com.coderkan.cache;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.springframework.cache.CacheManager;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Cache-aside on a {@link ReactiveRedisTemplate} for the reactive service.  Keys, values and TTLs come from
+ * {@link CacheBatchOperations} so entries are interchangeable with the ones RedisCache writes for the servlet
+ * service, and the same hit, miss, redis and load meters are reported to {@link CacheMetrics}.
+ * A miss on a key is loaded once per node, concurrent callers subscribe to the running load.
+ * With the near cache on, reads check L1 first and writes invalidate it on every node like {@link TwoLevelCache}.
+ */
+@Slf4j
+public class ReactiveCacheOperations {
+
+	private final ReactiveRedisTemplate<byte[], byte[]> redisTemplate;
+	private final CacheBatchOperations cacheBatchOperations;
+	private final CacheMetrics cacheMetrics;
+	private final CacheManager cacheManager;
+	private final ConcurrentMap<String, Mono<Object>> inFlight = new ConcurrentHashMap<>();
+
+	public ReactiveCacheOperations(ReactiveRedisTemplate<byte[], byte[]> redisTemplate,
+			CacheBatchOperations cacheBatchOperations, CacheMetrics cacheMetrics, CacheManager cacheManager) {
+		this.redisTemplate = redisTemplate;
+		this.cacheBatchOperations = cacheBatchOperations;
+		this.cacheMetrics = cacheMetrics;
+		this.cacheManager = cacheManager;
+	}
+
+	/**
+	 * The cached value, otherwise the loader's value which is cached on the way out.
+	 * An empty loader is not cached, same as {@code unless = "#result == null"}.
+	 */
+	public <T> Mono<T> get(String cacheName, Object key, Class<T> type, Supplier<Mono<T>> loader) {
+		TwoLevelCache nearCache = nearCache(cacheName);
+		if (nearCache != null) {
+			Object local = nearCache.getLocalCache().getIfPresent(TwoLevelCache.toLocalKey(key));
+			if (type.isInstance(local)) {
+				return Mono.just(type.cast(local));
+			}
+		}
+		byte[] rawKey = this.cacheBatchOperations.cacheKey(cacheName, key);
+		return timed(this.redisTemplate.opsForValue().get(rawKey), this.cacheMetrics.redisTimer(cacheName, "get"))
+				.map(value -> this.cacheBatchOperations.deserializeValue(cacheName, value))
+				.filter(type::isInstance)
+				.map(type::cast)
+				.doOnNext(value -> {
+					this.cacheMetrics.recordGet(cacheName, true);
+					if (nearCache != null) {
+						nearCache.getLocalCache().put(TwoLevelCache.toLocalKey(key), value);
+					}
+				})
+				.switchIfEmpty(Mono.defer(() -> {
+					this.cacheMetrics.recordGet(cacheName, false);
+					return load(cacheName, key, type, loader);
+				}));
+	}
+
+	private <T> Mono<T> load(String cacheName, Object key, Class<T> type, Supplier<Mono<T>> loader) {
+		String flightKey = cacheName + "::" + key;
+		Mono<Object> load = this.inFlight.computeIfAbsent(flightKey,
+				k -> timed(Mono.defer(loader).cast(Object.class), this.cacheMetrics.loadTimer(cacheName))
+						.flatMap(value -> put(cacheName, key, value).thenReturn(value))
+						.doFinally(signal -> this.inFlight.remove(k))
+						.cache());
+		return load.filter(type::isInstance).map(type::cast);
+	}
+
+	/**
+	 * Near cache first when it is on, then one MGET for the rest.  The result only has the keys that
+	 * were found, in request order.
+	 */
+	public <T> Mono<Map<Object, T>> getAll(String cacheName, Collection<?> keys, Class<T> type) {
+		Map<Object, T> found = new LinkedHashMap<>();
+		List<Object> remaining = new ArrayList<>(keys.size());
+		TwoLevelCache nearCache = nearCache(cacheName);
+		for (Object key : keys) {
+			Object local = nearCache == null ? null : nearCache.getLocalCache().getIfPresent(TwoLevelCache.toLocalKey(key));
+			if (type.isInstance(local))
+				found.put(key, type.cast(local));
+			else
+				remaining.add(key);
+		}
+		if (remaining.isEmpty()) {
+			return Mono.just(found);
+		}
+		List<byte[]> rawKeys = new ArrayList<>(remaining.size());
+		remaining.forEach(key -> rawKeys.add(this.cacheBatchOperations.cacheKey(cacheName, key)));
+		return timed(this.redisTemplate.opsForValue().multiGet(rawKeys), this.cacheMetrics.redisTimer(cacheName, "mget"))
+				.map(values -> {
+					for (int i = 0; i < remaining.size(); i++) {
+						byte[] value = values.get(i);
+						this.cacheMetrics.recordGet(cacheName, value != null);
+						Object cached = value == null ? null : this.cacheBatchOperations.deserializeValue(cacheName, value);
+						if (type.isInstance(cached))
+							found.put(remaining.get(i), type.cast(cached));
+					}
+					return found;
+				});
+	}
+
+	public Mono<Void> put(String cacheName, Object key, Object value) {
+		return set(cacheName, key, value).then(Mono.defer(() -> invalidateNearCache(cacheName, key, value)));
+	}
+
+	/**
+	 * SET with the cache TTL, jittered per entry, for every entry.  The commands go out back to back on the
+	 * shared lettuce connection without waiting for each reply, which is what a pipeline does.
+	 */
+	public Mono<Void> putAll(String cacheName, Map<?, ?> entries) {
+		if (entries.isEmpty()) {
+			return Mono.empty();
+		}
+		return timed(Flux.fromIterable(entries.entrySet())
+				.flatMap(entry -> set(cacheName, entry.getKey(), entry.getValue())
+						.then(Mono.defer(() -> invalidateNearCache(cacheName, entry.getKey(), entry.getValue()))))
+				.then(), this.cacheMetrics.redisTimer(cacheName, "pipeline"))
+				.doOnSuccess(done -> log.debug("wrote " + entries.size() + " entries into " + cacheName));
+	}
+
+	private Mono<Boolean> set(String cacheName, Object key, Object value) {
+		if (value == null) {
+			return Mono.just(false);
+		}
+		byte[] rawKey = this.cacheBatchOperations.cacheKey(cacheName, key);
+		byte[] rawValue = this.cacheBatchOperations.serializeValue(cacheName, value);
+		Duration ttl = this.cacheBatchOperations.ttlFor(cacheName);
+		Mono<Boolean> set = ttl.isZero()
+				? this.redisTemplate.opsForValue().set(rawKey, rawValue)
+				: this.redisTemplate.opsForValue().set(rawKey, rawValue, ttl);
+		return timed(set, this.cacheMetrics.redisTimer(cacheName, "put"))
+				.doOnSuccess(done -> this.cacheMetrics.getStatistics().incPuts(cacheName));
+	}
+
+	public Mono<Void> evict(String cacheName, Object key) {
+		byte[] rawKey = this.cacheBatchOperations.cacheKey(cacheName, key);
+		return timed(this.redisTemplate.delete(rawKey), this.cacheMetrics.redisTimer(cacheName, "remove"))
+				.doOnSuccess(deleted -> this.cacheMetrics.getStatistics().incDeletes(cacheName))
+				.then(Mono.defer(() -> invalidateNearCache(cacheName, key, null)));
+	}
+
+	//  same as TwoLevelCache: update this node's L1 and tell the others to drop theirs
+	private Mono<Void> invalidateNearCache(String cacheName, Object key, Object value) {
+		TwoLevelCache nearCache = nearCache(cacheName);
+		if (nearCache == null) {
+			return Mono.empty();
+		}
+		String localKey = TwoLevelCache.toLocalKey(key);
+		if (value != null) {
+			nearCache.getLocalCache().put(localKey, value);
+		} else {
+			nearCache.getLocalCache().invalidate(localKey);
+		}
+		return publish(nearCache, cacheName, localKey);
+	}
+
+	private Mono<Void> publish(TwoLevelCache nearCache, String cacheName, String localKey) {
+		CacheInvalidationPublisher publisher = nearCache.getPublisher();
+		byte[] message = publisher.message(cacheName, localKey).getBytes(StandardCharsets.UTF_8);
+		return this.redisTemplate.convertAndSend(publisher.getChannel(), message)
+				//  L1 entries still expire by TTL so a lost message only means a short stale window
+				.doOnError(e -> log.warn("could not publish near cache invalidation for " + cacheName + " " + localKey, e))
+				.onErrorResume(e -> Mono.empty())
+				.then();
+	}
+
+	private TwoLevelCache nearCache(String cacheName) {
+		return this.cacheManager.getCache(cacheName) instanceof TwoLevelCache twoLevelCache ? twoLevelCache : null;
+	}
+
+	/**
+	 * Records the time from subscription to completion, error or cancel of the mono on the timer.
+	 */
+	public static <T> Mono<T> timed(Mono<T> mono, Timer timer) {
+		return Mono.defer(() -> {
+			long start = System.nanoTime();
+			return mono.doFinally(signal -> timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS));
+		});
+	}
+}
@@ -0,0 +1,52 @@
+package com.coderkan.cache;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Decides on a cache hit whether the entry should be reloaded in the background before it expires.
+ * <ul>
+ * <li>xfetch - probabilistic early expiration (Vattani et al.), refresh when
+ * {@code -loadTime * beta * ln(random) >= remainingTtl}.  The closer to expiry and the slower the load,
+ * the more likely, and with many readers one of them refreshes shortly before the entry would expire</li>
+ * <li>window - refresh whenever less than window-percent of the TTL is left</li>
+ * <li>off - never</li>
+ * </ul>
+ */
+public class RefreshAheadPolicy {
+
+	public enum Mode { OFF, XFETCH, WINDOW }
+
+	private final Mode mode;
+	private final double beta;
+	private final long windowMillis;
+
+	public RefreshAheadPolicy(Mode mode, double beta, Duration ttl, int windowPercent) {
+		this.mode = mode;
+		this.beta = beta;
+		this.windowMillis = ttl.toMillis() * windowPercent / 100;
+	}
+
+	public boolean isEnabled() {
+		return this.mode != Mode.OFF;
+	}
+
+	/**
+	 * @param remainingTtlMillis PTTL of the entry, negative when it has no TTL
+	 * @param loadMillis typical time to load one entry
+	 */
+	public boolean shouldRefresh(long remainingTtlMillis, double loadMillis) {
+		if (remainingTtlMillis < 0) {
+			return false;
+		}
+		switch (this.mode) {
+		case XFETCH:
+			double random = 1.0 - ThreadLocalRandom.current().nextDouble();
+			return -loadMillis * this.beta * Math.log(random) >= remainingTtlMillis;
+		case WINDOW:
+			return remainingTtlMillis <= this.windowMillis;
+		default:
+			return false;
+		}
+	}
+}
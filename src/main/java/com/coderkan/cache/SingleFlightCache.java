@@ -0,0 +1,398 @@
+package com.coderkan.cache;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.cache.Cache;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.RedisStringCommands.SetOption;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.types.Expiration;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Wraps a redis cache so a miss on a key is loaded once, not once per waiting thread.
+ * Used through {@code @Cacheable(sync = true)}, which calls {@link #get(Object, Callable)}.
+ * Threads on this node wait for the first thread's load.  In distributed mode that first thread also takes a
+ * short redis lease on the key, and the other nodes poll for the value instead of loading it themselves.
+ * Null results are returned but never cached, same as {@code unless = "#result == null"}.
+ * Hits also report the remaining TTL so {@link RefreshAheadPolicy} can reload hot entries before they expire.
+ * The scripts bypass RedisCache, so hits, misses, redis and load times are reported to {@link CacheMetrics} here.
+ * Never hand {@link #get(Object, Callable)} to the delegate: RedisCache loads misses inside a synchronized method,
+ * which serializes every miss of the cache and pins virtual threads to their carrier for the whole load.
+ */
+@Slf4j
+public class SingleFlightCache implements Cache {
+
+	private static final String NULL_MARKER = "__null__";
+
+	//  returns {1, value, pttl} on a hit, {2} when this caller got the lease and must load, {3} when someone else
+	//  holds it and {4} when the last load found nothing
+	private static final byte[] ACQUIRE_SCRIPT = (
+			"local v = redis.call('GET', KEYS[1]) "
+			+ "if v then return {1, v, redis.call('PTTL', KEYS[1])} end "
+			+ "local lease = redis.call('GET', KEYS[2]) "
+			+ "if lease == '" + NULL_MARKER + "' then return {4} end "
+			+ "if lease then return {3} end "
+			+ "redis.call('SET', KEYS[2], ARGV[1], 'PX', ARGV[2]) "
+			+ "return {2}").getBytes(StandardCharsets.UTF_8);
+
+	//  {1, value, pttl} on a hit, {0} on a miss
+	private static final byte[] READ_SCRIPT = (
+			"local v = redis.call('GET', KEYS[1]) "
+			+ "if v then return {1, v, redis.call('PTTL', KEYS[1])} end "
+			+ "return {0}").getBytes(StandardCharsets.UTF_8);
+
+	//  only the lease owner may release it, an expired lease may already belong to another node.
+	//  a null result leaves a short lived marker so waiters stop polling for a value that won't come
+	private static final byte[] RELEASE_SCRIPT = (
+			"if redis.call('GET', KEYS[1]) ~= ARGV[1] then return 0 end "
+			+ "if ARGV[2] == '0' then return redis.call('DEL', KEYS[1]) end "
+			+ "redis.call('SET', KEYS[1], '" + NULL_MARKER + "', 'PX', ARGV[2]) "
+			+ "return 1").getBytes(StandardCharsets.UTF_8);
+
+	private static final long HIT = 1;
+	private static final long LEADER = 2;
+	private static final long NOT_FOUND = 4;
+
+	private final Cache delegate;
+	private final RedisConnectionFactory connectionFactory;
+	private final CacheBatchOperations cacheBatchOperations;
+	private final CacheMetrics cacheMetrics;
+	private final boolean distributed;
+	private final long leaseMillis;
+	private final long pollMillis;
+	private final long waitTimeoutMillis;
+	private final ConcurrentMap<String, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+	private final Counter leaderLoads;
+	private final Counter localCoalesced;
+	private final Counter remoteCoalesced;
+	private final Counter timeoutLoads;
+	private final RefreshAheadPolicy refreshPolicy;
+	private final Executor refreshExecutor;
+	private final Set<String> refreshing = ConcurrentHashMap.newKeySet();
+	private final Counter refreshesScheduled;
+	private final Counter refreshesDropped;
+	//  moving average of the load time, the delta in xfetch
+	private volatile double loadMillis = 1;
+
+	public SingleFlightCache(Cache delegate, RedisConnectionFactory connectionFactory,
+			CacheBatchOperations cacheBatchOperations, CacheMetrics cacheMetrics, boolean distributed,
+			long leaseMillis, long pollMillis, long waitTimeoutMillis, RefreshAheadPolicy refreshPolicy,
+			Executor refreshExecutor) {
+		this.delegate = delegate;
+		this.connectionFactory = connectionFactory;
+		this.cacheBatchOperations = cacheBatchOperations;
+		this.cacheMetrics = cacheMetrics;
+		MeterRegistry meterRegistry = cacheMetrics.getMeterRegistry();
+		this.distributed = distributed;
+		this.leaseMillis = leaseMillis;
+		this.pollMillis = pollMillis;
+		this.waitTimeoutMillis = waitTimeoutMillis;
+		this.leaderLoads = loads(meterRegistry, "leader");
+		this.localCoalesced = loads(meterRegistry, "coalesced-local");
+		this.remoteCoalesced = loads(meterRegistry, "coalesced-remote");
+		this.timeoutLoads = loads(meterRegistry, "wait-timeout");
+		this.refreshPolicy = refreshPolicy;
+		this.refreshExecutor = refreshExecutor;
+		this.refreshesScheduled = refreshes(meterRegistry, "scheduled");
+		this.refreshesDropped = refreshes(meterRegistry, "dropped");
+	}
+
+	private Counter refreshes(MeterRegistry meterRegistry, String result) {
+		return Counter.builder("cache.refreshahead")
+				.description("background refreshes of entries close to expiry")
+				.tag("cache", this.delegate.getName())
+				.tag("result", result)
+				.register(meterRegistry);
+	}
+
+	private Counter loads(MeterRegistry meterRegistry, String role) {
+		return Counter.builder("cache.singleflight.loads")
+				.description("cache misses by who ended up loading the value")
+				.tag("cache", this.delegate.getName())
+				.tag("role", role)
+				.register(meterRegistry);
+	}
+
+	@Override
+	public String getName() {
+		return this.delegate.getName();
+	}
+
+	@Override
+	public Object getNativeCache() {
+		return this.delegate.getNativeCache();
+	}
+
+	public Cache getDelegate() {
+		return this.delegate;
+	}
+
+	@Override
+	public ValueWrapper get(Object key) {
+		return this.delegate.get(key);
+	}
+
+	@Override
+	public <T> T get(Object key, Class<T> type) {
+		return this.delegate.get(key, type);
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public <T> T get(Object key, Callable<T> valueLoader) {
+		String flightKey = String.valueOf(key);
+		CompletableFuture<Object> flight = new CompletableFuture<>();
+		CompletableFuture<Object> existing = this.inFlight.putIfAbsent(flightKey, flight);
+		if (existing != null) {
+			this.localCoalesced.increment();
+			try {
+				return (T) existing.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new ValueRetrievalException(key, valueLoader, e);
+			} catch (ExecutionException e) {
+				throw new ValueRetrievalException(key, valueLoader, e.getCause());
+			}
+		}
+		try {
+			Object value = this.distributed ? loadDistributed(key, valueLoader) : loadLocal(key, valueLoader);
+			flight.complete(value);
+			return (T) value;
+		} catch (RuntimeException e) {
+			flight.completeExceptionally(e);
+			throw e;
+		} finally {
+			this.inFlight.remove(flightKey, flight);
+		}
+	}
+
+	private Object loadLocal(Object key, Callable<?> valueLoader) {
+		byte[] cacheKey = this.cacheBatchOperations.cacheKey(getName(), key);
+		List<Object> result = eval(READ_SCRIPT, cacheKey);
+		if ((Long) result.get(0) == HIT) {
+			this.cacheMetrics.recordGet(getName(), true);
+			return hit(key, valueLoader, result);
+		}
+		this.cacheMetrics.recordGet(getName(), false);
+		this.leaderLoads.increment();
+		return loadAndPut(key, valueLoader);
+	}
+
+	private Object loadDistributed(Object key, Callable<?> valueLoader) {
+		byte[] cacheKey = this.cacheBatchOperations.cacheKey(getName(), key);
+		byte[] leaseKey = leaseKey(cacheKey);
+		byte[] token = UUID.randomUUID().toString().getBytes(StandardCharsets.UTF_8);
+		long deadline = System.currentTimeMillis() + this.waitTimeoutMillis;
+		boolean waited = false;
+		while (true) {
+			List<Object> result = acquire(cacheKey, leaseKey, token);
+			long status = (Long) result.get(0);
+			if (status == HIT) {
+				this.cacheMetrics.recordGet(getName(), true);
+				if (waited) {
+					this.remoteCoalesced.increment();
+				}
+				return hit(key, valueLoader, result);
+			}
+			if (status == NOT_FOUND) {
+				this.cacheMetrics.recordGet(getName(), false);
+				this.remoteCoalesced.increment();
+				return null;
+			}
+			if (status == LEADER) {
+				this.cacheMetrics.recordGet(getName(), false);
+				this.leaderLoads.increment();
+				Object value = null;
+				boolean loaded = false;
+				try {
+					value = loadAndPut(key, valueLoader);
+					loaded = true;
+					return value;
+				} finally {
+					//  a failed load just drops the lease so the next poller retries it
+					release(leaseKey, token, loaded && value == null ? Math.max(this.pollMillis * 4, 100) : 0);
+				}
+			}
+			if (System.currentTimeMillis() >= deadline) {
+				//  leader is slow, don't keep the caller waiting any longer
+				log.debug("single flight wait timed out for " + getName() + " " + key);
+				this.cacheMetrics.recordGet(getName(), false);
+				this.timeoutLoads.increment();
+				return loadAndPut(key, valueLoader);
+			}
+			waited = true;
+			try {
+				Thread.sleep(this.pollMillis);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new ValueRetrievalException(key, valueLoader, e);
+			}
+		}
+	}
+
+	/**
+	 * A hit as the bytes stored in redis, null on a miss, which the caller loads through
+	 * {@link #get(Object, Callable)}.  The hit gets the same refresh ahead check as any other, with the loader
+	 * that miss would use.  Only a hit is counted, the miss is counted by the load.
+	 */
+	public byte[] getRaw(Object key, Callable<?> valueLoader) {
+		List<Object> result = eval(READ_SCRIPT, this.cacheBatchOperations.cacheKey(getName(), key));
+		if ((Long) result.get(0) != HIT) {
+			return null;
+		}
+		this.cacheMetrics.recordGet(getName(), true);
+		refreshIfDue(key, valueLoader, (Long) result.get(2));
+		return (byte[]) result.get(1);
+	}
+
+	private Object hit(Object key, Callable<?> valueLoader, List<Object> result) {
+		refreshIfDue(key, valueLoader, (Long) result.get(2));
+		return this.cacheBatchOperations.deserializeValue(getName(), (byte[]) result.get(1));
+	}
+
+	private void refreshIfDue(Object key, Callable<?> valueLoader, long remainingTtl) {
+		if (this.refreshPolicy.isEnabled() && this.refreshPolicy.shouldRefresh(remainingTtl, this.loadMillis)) {
+			refresh(key, valueLoader);
+		}
+	}
+
+	//  reload in the background so the entry is replaced before anyone misses it.  one refresh per key per node,
+	//  in distributed mode only the node that gets the lease refreshes.  a full queue just skips the refresh
+	private void refresh(Object key, Callable<?> valueLoader) {
+		String refreshKey = String.valueOf(key);
+		if (!this.refreshing.add(refreshKey)) {
+			return;
+		}
+		try {
+			this.refreshExecutor.execute(() -> {
+				try {
+					refreshNow(key, valueLoader);
+				} catch (RuntimeException e) {
+					log.warn("refresh ahead of " + getName() + " " + key + " failed", e);
+				} finally {
+					this.refreshing.remove(refreshKey);
+				}
+			});
+			this.refreshesScheduled.increment();
+		} catch (RejectedExecutionException e) {
+			this.refreshing.remove(refreshKey);
+			this.refreshesDropped.increment();
+		}
+	}
+
+	private void refreshNow(Object key, Callable<?> valueLoader) {
+		byte[] leaseKey = null;
+		byte[] token = null;
+		if (this.distributed) {
+			leaseKey = leaseKey(this.cacheBatchOperations.cacheKey(getName(), key));
+			token = UUID.randomUUID().toString().getBytes(StandardCharsets.UTF_8);
+			Boolean acquired;
+			try (RedisConnection connection = this.connectionFactory.getConnection()) {
+				acquired = connection.stringCommands().set(leaseKey, token,
+						Expiration.milliseconds(this.leaseMillis), SetOption.ifAbsent());
+			}
+			if (!Boolean.TRUE.equals(acquired)) {
+				return;
+			}
+		}
+		try {
+			log.debug("refresh ahead " + getName() + " " + key);
+			if (loadAndPut(key, valueLoader) == null) {
+				//  gone from the database, don't keep serving it until the TTL runs out
+				this.delegate.evict(key);
+			}
+		} finally {
+			if (leaseKey != null) {
+				release(leaseKey, token, 0);
+			}
+		}
+	}
+
+	private Object loadAndPut(Object key, Callable<?> valueLoader) {
+		Object value;
+		long start = System.nanoTime();
+		try {
+			value = valueLoader.call();
+		} catch (Exception e) {
+			throw new ValueRetrievalException(key, valueLoader, e);
+		}
+		long elapsedNanos = System.nanoTime() - start;
+		this.cacheMetrics.loadTimer(getName()).record(elapsedNanos, TimeUnit.NANOSECONDS);
+		double elapsedMillis = elapsedNanos / 1_000_000.0;
+		this.loadMillis = this.loadMillis * 0.9 + elapsedMillis * 0.1;
+		if (value != null) {
+			this.delegate.put(key, value);
+		}
+		return value;
+	}
+
+	private List<Object> acquire(byte[] cacheKey, byte[] leaseKey, byte[] token) {
+		byte[] lease = String.valueOf(this.leaseMillis).getBytes(StandardCharsets.UTF_8);
+		return eval(ACQUIRE_SCRIPT, cacheKey, leaseKey, token, lease);
+	}
+
+	@SuppressWarnings("unchecked")
+	private List<Object> eval(byte[] script, byte[] cacheKey, byte[]... leaseKeyAndArgs) {
+		byte[][] keysAndArgs = new byte[1 + leaseKeyAndArgs.length][];
+		keysAndArgs[0] = cacheKey;
+		System.arraycopy(leaseKeyAndArgs, 0, keysAndArgs, 1, leaseKeyAndArgs.length);
+		int numKeys = leaseKeyAndArgs.length == 0 ? 1 : 2;
+		return this.cacheMetrics.redisTimer(getName(), "eval").record(() -> {
+			try (RedisConnection connection = this.connectionFactory.getConnection()) {
+				return (List<Object>) connection.scriptingCommands().eval(script, ReturnType.MULTI, numKeys,
+						keysAndArgs);
+			}
+		});
+	}
+
+	private void release(byte[] leaseKey, byte[] token, long nullMarkerMillis) {
+		byte[] marker = String.valueOf(nullMarkerMillis).getBytes(StandardCharsets.UTF_8);
+		try (RedisConnection connection = this.connectionFactory.getConnection()) {
+			connection.scriptingCommands().eval(RELEASE_SCRIPT, ReturnType.INTEGER, 1, leaseKey, token, marker);
+		} catch (RuntimeException e) {
+			//  the lease expires by itself
+			log.warn("could not release single flight lease " + new String(leaseKey, StandardCharsets.UTF_8), e);
+		}
+	}
+
+	//  {cache key} hash tag keeps the lease in the same cluster slot as the entry, the script touches both
+	static byte[] leaseKey(byte[] cacheKey) {
+		return ("{" + new String(cacheKey, StandardCharsets.UTF_8) + "}:lease").getBytes(StandardCharsets.UTF_8);
+	}
+
+	@Override
+	public void put(Object key, Object value) {
+		this.delegate.put(key, value);
+	}
+
+	@Override
+	public ValueWrapper putIfAbsent(Object key, Object value) {
+		return this.delegate.putIfAbsent(key, value);
+	}
+
+	@Override
+	public void evict(Object key) {
+		this.delegate.evict(key);
+	}
+
+	@Override
+	public void clear() {
+		this.delegate.clear();
+	}
+}
@@ -0,0 +1,80 @@
+package com.coderkan.cache;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.boot.actuate.metrics.cache.RedisCacheMetrics;
+import org.springframework.data.redis.cache.RedisCache;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+
+import io.micrometer.core.instrument.Tags;
+
+/**
+ * Decorates every cache of the redis cache manager with a {@link SingleFlightCache}.
+ * Each redis cache's statistics are published as the standard cache.gets/puts/evictions meters.
+ */
+public class SingleFlightCacheManager implements CacheManager {
+
+	private final CacheManager redisCacheManager;
+	private final RedisConnectionFactory connectionFactory;
+	private final CacheBatchOperations cacheBatchOperations;
+	private final CacheMetrics cacheMetrics;
+	private final boolean distributed;
+	private final long leaseMillis;
+	private final long pollMillis;
+	private final long waitTimeoutMillis;
+	private final RefreshAheadPolicy refreshPolicy;
+	private final Executor refreshExecutor;
+	private final ConcurrentMap<String, SingleFlightCache> caches = new ConcurrentHashMap<>();
+
+	public SingleFlightCacheManager(CacheManager redisCacheManager, RedisConnectionFactory connectionFactory,
+			CacheBatchOperations cacheBatchOperations, CacheMetrics cacheMetrics, boolean distributed,
+			long leaseMillis, long pollMillis, long waitTimeoutMillis, RefreshAheadPolicy refreshPolicy,
+			Executor refreshExecutor) {
+		this.redisCacheManager = redisCacheManager;
+		this.connectionFactory = connectionFactory;
+		this.cacheBatchOperations = cacheBatchOperations;
+		this.cacheMetrics = cacheMetrics;
+		this.distributed = distributed;
+		this.leaseMillis = leaseMillis;
+		this.pollMillis = pollMillis;
+		this.waitTimeoutMillis = waitTimeoutMillis;
+		this.refreshPolicy = refreshPolicy;
+		this.refreshExecutor = refreshExecutor;
+	}
+
+	@Override
+	public Cache getCache(String name) {
+		SingleFlightCache cache = this.caches.get(name);
+		if (cache != null) {
+			return cache;
+		}
+		Cache redisCache = this.redisCacheManager.getCache(name);
+		if (redisCache == null) {
+			return null;
+		}
+		return this.caches.computeIfAbsent(name, n -> createCache(redisCache));
+	}
+
+	private SingleFlightCache createCache(Cache redisCache) {
+		if (redisCache instanceof RedisCache cache) {
+			new RedisCacheMetrics(cache, Tags.empty()).bindTo(this.cacheMetrics.getMeterRegistry());
+		}
+		return new SingleFlightCache(redisCache, this.connectionFactory, this.cacheBatchOperations, this.cacheMetrics,
+				this.distributed, this.leaseMillis, this.pollMillis, this.waitTimeoutMillis, this.refreshPolicy,
+				this.refreshExecutor);
+	}
+
+	@Override
+	public Collection<String> getCacheNames() {
+		return this.redisCacheManager.getCacheNames();
+	}
+
+	public CacheManager getRedisCacheManager() {
+		return this.redisCacheManager;
+	}
+}
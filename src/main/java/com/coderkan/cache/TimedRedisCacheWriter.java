@@ -0,0 +1,63 @@
+package com.coderkan.cache;
+
+import java.time.Duration;
+
+import org.springframework.data.redis.cache.CacheStatistics;
+import org.springframework.data.redis.cache.CacheStatisticsCollector;
+import org.springframework.data.redis.cache.RedisCacheWriter;
+
+/**
+ * Records the time of every redis call RedisCache makes in the cache.redis timer of {@link CacheMetrics}.
+ */
+public class TimedRedisCacheWriter implements RedisCacheWriter {
+
+	private final RedisCacheWriter delegate;
+	private final CacheMetrics cacheMetrics;
+
+	public TimedRedisCacheWriter(RedisCacheWriter delegate, CacheMetrics cacheMetrics) {
+		this.delegate = delegate;
+		this.cacheMetrics = cacheMetrics;
+	}
+
+	@Override
+	public void put(String name, byte[] key, byte[] value, Duration ttl) {
+		this.cacheMetrics.redisTimer(name, "put").record(() -> this.delegate.put(name, key, value, ttl));
+	}
+
+	@Override
+	public byte[] get(String name, byte[] key) {
+		return this.cacheMetrics.redisTimer(name, "get").record(() -> this.delegate.get(name, key));
+	}
+
+	@Override
+	public byte[] putIfAbsent(String name, byte[] key, byte[] value, Duration ttl) {
+		return this.cacheMetrics.redisTimer(name, "putIfAbsent")
+				.record(() -> this.delegate.putIfAbsent(name, key, value, ttl));
+	}
+
+	@Override
+	public void remove(String name, byte[] key) {
+		this.cacheMetrics.redisTimer(name, "remove").record(() -> this.delegate.remove(name, key));
+	}
+
+	@Override
+	public void clean(String name, byte[] pattern) {
+		this.cacheMetrics.redisTimer(name, "clean").record(() -> this.delegate.clean(name, pattern));
+	}
+
+	@Override
+	public void clearStatistics(String name) {
+		this.delegate.clearStatistics(name);
+	}
+
+	@Override
+	public RedisCacheWriter withStatisticsCollector(CacheStatisticsCollector cacheStatisticsCollector) {
+		return new TimedRedisCacheWriter(this.delegate.withStatisticsCollector(cacheStatisticsCollector),
+				this.cacheMetrics);
+	}
+
+	@Override
+	public CacheStatistics getCacheStatistics(String cacheName) {
+		return this.delegate.getCacheStatistics(cacheName);
+	}
+}
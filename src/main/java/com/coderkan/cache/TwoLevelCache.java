@@ -0,0 +1,186 @@
+package com.coderkan.cache;
+
+import java.util.concurrent.Callable;
+
+import org.springframework.cache.Cache;
+import org.springframework.cache.support.SimpleValueWrapper;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Cache with an on-heap L1 (caffeine) in front of the redis L2.
+ * Reads are served from L1 when possible, writes go to both tiers and are
+ * published so the L1 of every other node drops its copy of the entry.
+ */
+@Slf4j
+public class TwoLevelCache implements Cache {
+
+	private final String name;
+	private final Cache redisCache;
+	private final com.github.benmanes.caffeine.cache.Cache<String, Object> localCache;
+	private final CacheInvalidationPublisher publisher;
+
+	public TwoLevelCache(String name, Cache redisCache,
+			com.github.benmanes.caffeine.cache.Cache<String, Object> localCache,
+			CacheInvalidationPublisher publisher) {
+		this.name = name;
+		this.redisCache = redisCache;
+		this.localCache = localCache;
+		this.publisher = publisher;
+	}
+
+	@Override
+	public String getName() {
+		return this.name;
+	}
+
+	@Override
+	public Object getNativeCache() {
+		return this.redisCache.getNativeCache();
+	}
+
+	public Cache getRedisCache() {
+		return this.redisCache;
+	}
+
+	public com.github.benmanes.caffeine.cache.Cache<String, Object> getLocalCache() {
+		return this.localCache;
+	}
+
+	public CacheInvalidationPublisher getPublisher() {
+		return this.publisher;
+	}
+
+	@Override
+	public ValueWrapper get(Object key) {
+		String localKey = toLocalKey(key);
+		Object value = this.localCache.getIfPresent(localKey);
+		if (value != null) {
+			return new SimpleValueWrapper(value);
+		}
+		ValueWrapper wrapper = this.redisCache.get(key);
+		if (wrapper != null && wrapper.get() != null) {
+			this.localCache.put(localKey, wrapper.get());
+		}
+		return wrapper;
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public <T> T get(Object key, Class<T> type) {
+		ValueWrapper wrapper = get(key);
+		Object value = wrapper != null ? wrapper.get() : null;
+		if (value != null && type != null && !type.isInstance(value)) {
+			throw new IllegalStateException(
+					"Cached value is not of required type [" + type.getName() + "]: " + value);
+		}
+		return (T) value;
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public <T> T get(Object key, Callable<T> valueLoader) {
+		String localKey = toLocalKey(key);
+		Object value = this.localCache.getIfPresent(localKey);
+		if (value != null) {
+			return (T) value;
+		}
+		T loaded = this.redisCache.get(key, valueLoader);
+		if (loaded != null) {
+			this.localCache.put(localKey, loaded);
+		}
+		return loaded;
+	}
+
+	@Override
+	public void put(Object key, Object value) {
+		this.redisCache.put(key, value);
+		String localKey = toLocalKey(key);
+		if (value != null) {
+			this.localCache.put(localKey, value);
+		} else {
+			this.localCache.invalidate(localKey);
+		}
+		this.publisher.publishEvict(this.name, localKey);
+	}
+
+	@Override
+	public ValueWrapper putIfAbsent(Object key, Object value) {
+		ValueWrapper existing = this.redisCache.putIfAbsent(key, value);
+		String localKey = toLocalKey(key);
+		if (existing == null) {
+			if (value != null) {
+				this.localCache.put(localKey, value);
+			}
+			this.publisher.publishEvict(this.name, localKey);
+		}
+		return existing;
+	}
+
+	@Override
+	public void evict(Object key) {
+		this.redisCache.evict(key);
+		String localKey = toLocalKey(key);
+		this.localCache.invalidate(localKey);
+		this.publisher.publishEvict(this.name, localKey);
+	}
+
+	@Override
+	public void clear() {
+		this.redisCache.clear();
+		this.localCache.invalidateAll();
+		this.publisher.publishClear(this.name);
+	}
+
+	/**
+	 * True when this node's L1 has the key.
+	 */
+	public boolean isNear(Object key) {
+		return this.localCache.getIfPresent(toLocalKey(key)) != null;
+	}
+
+	/**
+	 * Puts a value read from redis past this cache in this node's L1, like a read through {@link #get(Object)}
+	 * the other nodes aren't told.
+	 */
+	public void putNear(Object key, Object value) {
+		if (value != null) {
+			this.localCache.put(toLocalKey(key), value);
+		}
+	}
+
+	/**
+	 * Drops the key's L1 entry on this node and on the others, redis is left alone.
+	 */
+	public void evictNear(Object key) {
+		String localKey = toLocalKey(key);
+		this.localCache.invalidate(localKey);
+		this.publisher.publishEvict(this.name, localKey);
+	}
+
+	/**
+	 * Drops every L1 entry on this node and on the others, redis is left alone.
+	 */
+	public void clearNear() {
+		this.localCache.invalidateAll();
+		this.publisher.publishClear(this.name);
+	}
+
+	/**
+	 * Called for invalidation messages from other nodes - only touches L1.
+	 */
+	void evictLocal(String localKey) {
+		log.debug("near cache {} evict {}", this.name, localKey);
+		this.localCache.invalidate(localKey);
+	}
+
+	void clearLocal() {
+		log.debug("near cache {} cleared", this.name);
+		this.localCache.invalidateAll();
+	}
+
+	//  redis cache keys are strings so use the same conversion for L1 and the invalidation messages
+	static String toLocalKey(Object key) {
+		return String.valueOf(key);
+	}
+}
@@ -0,0 +1,76 @@
+package com.coderkan.cache;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * CacheManager wrapping the redis cache manager with a bounded, TTL limited near cache per cache name.
+ * The L1 hit/miss/eviction counts are published as cache.* meters tagged with cache=&lt;name&gt;.l1
+ */
+@Slf4j
+public class TwoLevelCacheManager implements CacheManager {
+
+	private final CacheManager redisCacheManager;
+	private final CacheInvalidationPublisher publisher;
+	private final MeterRegistry meterRegistry;
+	private final long maximumSize;
+	private final Duration timeToLive;
+	private final ConcurrentMap<String, TwoLevelCache> caches = new ConcurrentHashMap<>();
+
+	public TwoLevelCacheManager(CacheManager redisCacheManager, CacheInvalidationPublisher publisher,
+			MeterRegistry meterRegistry, long maximumSize, Duration timeToLive) {
+		this.redisCacheManager = redisCacheManager;
+		this.publisher = publisher;
+		this.meterRegistry = meterRegistry;
+		this.maximumSize = maximumSize;
+		this.timeToLive = timeToLive;
+	}
+
+	@Override
+	public Cache getCache(String name) {
+		TwoLevelCache cache = this.caches.get(name);
+		if (cache != null) {
+			return cache;
+		}
+		Cache redisCache = this.redisCacheManager.getCache(name);
+		if (redisCache == null) {
+			return null;
+		}
+		return this.caches.computeIfAbsent(name, n -> createCache(n, redisCache));
+	}
+
+	@Override
+	public Collection<String> getCacheNames() {
+		return this.redisCacheManager.getCacheNames();
+	}
+
+	public CacheManager getRedisCacheManager() {
+		return this.redisCacheManager;
+	}
+
+	TwoLevelCache getLoadedCache(String name) {
+		return this.caches.get(name);
+	}
+
+	private TwoLevelCache createCache(String name, Cache redisCache) {
+		log.info("near cache " + name + " maximum size " + maximumSize + " ttl " + timeToLive);
+		com.github.benmanes.caffeine.cache.Cache<String, Object> localCache = Caffeine.newBuilder()
+				.maximumSize(this.maximumSize)
+				.expireAfterWrite(this.timeToLive)
+				.recordStats()
+				.build();
+		CaffeineCacheMetrics.monitor(this.meterRegistry, localCache, name + ".l1");
+		return new TwoLevelCache(name, redisCache, localCache, this.publisher);
+	}
+}
@@ -0,0 +1,199 @@
+package com.coderkan.config;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import com.coderkan.repositories.CustomerRepository;
+import com.coderkan.services.CustomerService;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Loads customers into the cache before the node takes traffic, so a fresh node doesn't send its first
+ * minutes of misses to the database.  Ids are read in batches and each batch goes through
+ * getCustomersByIds - one MGET, one IN query for what is missing and one pipelined write back - with at
+ * most cache.warmup.concurrency batches in flight.
+ * <ul>
+ * <li>all - every customer, in id order</li>
+ * <li>recent - the newest max-keys customers, ids come from a sequence so the highest ids are the newest</li>
+ * <li>hot - the top max-keys ids of the hot key snapshot, a sorted set of id by request rate</li>
+ * </ul>
+ * Also the cacheWarmup health indicator, part of the readiness group: OUT_OF_SERVICE until the warm-up
+ * finishes, fails or times out.
+ */
+@Slf4j
+@Component("cacheWarmup")
+public class CacheWarmup implements HealthIndicator {
+
+	public enum State { PENDING, RUNNING, DONE, TIMED_OUT, FAILED, DISABLED }
+
+	private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+
+	@Autowired
+	private CustomerRepository customerRepository;
+	@Autowired
+	private CustomerService customerService;
+	@Autowired
+	private StringRedisTemplate stringRedisTemplate;
+
+	@Value("${cache.warmup.mode:none}")
+	private String mode;
+
+	@Value("${cache.warmup.max-keys:10000}")
+	private int maxKeys;
+
+	@Value("${cache.warmup.batch-size:500}")
+	private int batchSize;
+
+	@Value("${cache.warmup.concurrency:4}")
+	private int concurrency;
+
+	@Value("${cache.warmup.timeout-seconds:60}")
+	private long timeoutSeconds;
+
+	@Value("${cache.warmup.hot-keys-key:customers:hot}")
+	private String hotKeysKey;
+
+	private volatile State state = State.PENDING;
+	private final AtomicLong requested = new AtomicLong();
+	private final AtomicLong loaded = new AtomicLong();
+	private volatile long startNanos;
+	private volatile long elapsedMillis;
+
+	/**
+	 * Runs the warm-up on its own thread and returns right away.
+	 */
+	public void start() {
+		if ("none".equalsIgnoreCase(mode)) {
+			state = State.DISABLED;
+			return;
+		}
+		Thread thread = new Thread(this::run, "cache-warmup");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	private void run() {
+		state = State.RUNNING;
+		startNanos = System.nanoTime();
+		log.info("cache warm-up " + mode + " started, batches of " + batchSize + " with " + concurrency + " in flight");
+		ExecutorService executor = Executors.newFixedThreadPool(concurrency, runnable -> {
+			Thread thread = new Thread(runnable, "cache-warmup-" + THREAD_COUNT.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+		//  bounds the batches waiting for a worker too, so mode all never holds every id
+		Semaphore inFlight = new Semaphore(concurrency * 2);
+		long deadline = startNanos + TimeUnit.SECONDS.toNanos(timeoutSeconds);
+		try {
+			boolean finished = submitBatches(executor, inFlight, deadline);
+			executor.shutdown();
+			finished = finished && executor.awaitTermination(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+			state = finished ? State.DONE : State.TIMED_OUT;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			state = State.FAILED;
+		} catch (RuntimeException e) {
+			log.warn("cache warm-up failed, taking traffic with a partly warm cache", e);
+			state = State.FAILED;
+		} finally {
+			executor.shutdownNow();
+			elapsedMillis = (System.nanoTime() - startNanos) / 1_000_000;
+		}
+		log.info("cache warm-up " + state.name().toLowerCase() + ": " + loaded.get() + " of " + requested.get()
+				+ " customers cached in " + elapsedMillis + " ms");
+	}
+
+	//  false when the deadline passed before every batch was handed out
+	private boolean submitBatches(ExecutorService executor, Semaphore inFlight, long deadline) throws InterruptedException {
+		switch (mode.toLowerCase()) {
+			case "all" -> {
+				long after = 0;
+				List<Long> ids;
+				do {
+					ids = customerRepository.findIdsAfter(after, PageRequest.of(0, batchSize));
+					if (!ids.isEmpty() && !submit(executor, inFlight, deadline, ids))
+						return false;
+					after = ids.isEmpty() ? after : ids.get(ids.size() - 1);
+				} while (ids.size() == batchSize);
+				return true;
+			}
+			case "recent" -> {
+				return submitAll(executor, inFlight, deadline, customerRepository.findLatestIds(PageRequest.of(0, maxKeys)));
+			}
+			case "hot" -> {
+				Set<String> members = stringRedisTemplate.opsForZSet().reverseRange(hotKeysKey, 0, maxKeys - 1);
+				List<Long> ids = new ArrayList<>();
+				if (members != null) {
+					members.forEach(member -> ids.add(Long.valueOf(member)));
+				}
+				if (ids.isEmpty()) {
+					log.info("no hot key snapshot in " + hotKeysKey + ", nothing to warm");
+				}
+				return submitAll(executor, inFlight, deadline, ids);
+			}
+			default -> throw new IllegalArgumentException("unknown cache.warmup.mode " + mode);
+		}
+	}
+
+	private boolean submitAll(ExecutorService executor, Semaphore inFlight, long deadline, List<Long> ids)
+			throws InterruptedException {
+		for (int from = 0; from < ids.size(); from += batchSize) {
+			if (!submit(executor, inFlight, deadline, ids.subList(from, Math.min(ids.size(), from + batchSize))))
+				return false;
+		}
+		return true;
+	}
+
+	private boolean submit(ExecutorService executor, Semaphore inFlight, long deadline, List<Long> ids)
+			throws InterruptedException {
+		if (!inFlight.tryAcquire(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+			return false;
+		}
+		List<Long> batch = new ArrayList<>(ids);
+		requested.addAndGet(batch.size());
+		executor.execute(() -> {
+			try {
+				loaded.addAndGet(customerService.getCustomersByIds(batch).size());
+			} catch (RuntimeException e) {
+				log.warn("cache warm-up batch of " + batch.size() + " failed", e);
+			} finally {
+				inFlight.release();
+			}
+		});
+		return true;
+	}
+
+	public State getState() {
+		return state;
+	}
+
+	@Override
+	public Health health() {
+		Map<String, Object> details = new LinkedHashMap<>();
+		details.put("mode", mode);
+		details.put("state", state);
+		details.put("requested", requested.get());
+		details.put("loaded", loaded.get());
+		details.put("elapsedMillis", state == State.RUNNING ? (System.nanoTime() - startNanos) / 1_000_000 : elapsedMillis);
+		Health.Builder builder = state == State.PENDING || state == State.RUNNING ? Health.outOfService() : Health.up();
+		return builder.withDetails(details).build();
+	}
+}
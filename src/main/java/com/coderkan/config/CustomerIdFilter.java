@@ -0,0 +1,260 @@
+package com.coderkan.config;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.StringJoiner;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import com.coderkan.cache.BloomFilter;
+import com.coderkan.repositories.CustomerRepository;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Bloom filter of every customer id, so lookups for ids that don't exist are answered 404 without going to
+ * redis or the database.  Built from the database at startup and rebuilt every rebuild-interval-minutes;
+ * until the first build finishes every id is let through.
+ * <p>
+ * New ids are put in as they are added and published on the id-filter channel so every node's filter has
+ * them.  A bloom filter can't drop a key, so deleted ids still pass until the next rebuild - which is brought
+ * forward once deletes reach stale-percent of the ids or the filter fills up.  The filter being replaced is
+ * kept and asked as well until the rebuild after, and ids added while a build scans the table go in the filter
+ * being built too - pooled sequence blocks hand other nodes ids behind the scan's cursor - so none is lost,
+ * the first build included.
+ */
+@Slf4j
+@Component
+public class CustomerIdFilter implements MessageListener {
+
+	private static final int SCAN_BATCH = 10000;
+
+	@Autowired
+	private CustomerRepository customerRepository;
+	@Autowired
+	private StringRedisTemplate stringRedisTemplate;
+	@Autowired
+	private RedisConnectionFactory redisConnectionFactory;
+	@Autowired
+	private MeterRegistry meterRegistry;
+
+	@Value("${cache.id-filter.enabled:false}")
+	private boolean enabled;
+
+	@Value("${cache.id-filter.false-positive-rate:0.01}")
+	private double falsePositiveRate;
+
+	//  the filter is sized for twice the ids in the table, and at least this many
+	@Value("${cache.id-filter.min-capacity:100000}")
+	private long minCapacity;
+
+	@Value("${cache.id-filter.rebuild-interval-minutes:10}")
+	private long rebuildIntervalMinutes;
+
+	@Value("${cache.id-filter.stale-percent:10}")
+	private int stalePercent;
+
+	@Value("${cache.id-filter.channel:customers:ids}")
+	private String channel;
+
+	private volatile BloomFilter current;
+	private volatile BloomFilter previous;
+	private volatile BloomFilter building;
+	private final LongAdder deletes = new LongAdder();
+	private final AtomicBoolean rebuildPending = new AtomicBoolean();
+	private ScheduledExecutorService scheduler;
+	private RedisMessageListenerContainer listenerContainer;
+	private Counter rejected;
+
+	@PostConstruct
+	public void registerMeters() {
+		rejected = Counter.builder("cache.id.filter.rejected")
+				.description("lookups answered not found by the id filter")
+				.register(meterRegistry);
+		Gauge.builder("cache.id.filter.ids", this, filter -> filter.current == null ? 0 : filter.current.getPuts())
+				.description("ids put in the current id filter")
+				.register(meterRegistry);
+	}
+
+	/**
+	 * Starts listening for ids added on other nodes, builds the filter on a background thread and schedules
+	 * the rebuilds.
+	 */
+	public void start() {
+		if (!enabled) {
+			return;
+		}
+		//  listening first, so no id added on another node during the build is missed
+		listenerContainer = new RedisMessageListenerContainer();
+		listenerContainer.setConnectionFactory(redisConnectionFactory);
+		listenerContainer.addMessageListener(this, new ChannelTopic(channel));
+		listenerContainer.afterPropertiesSet();
+		listenerContainer.start();
+		scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "customer-id-filter");
+			thread.setDaemon(true);
+			return thread;
+		});
+		scheduler.execute(this::rebuild);
+		scheduler.scheduleAtFixedRate(this::rebuild, rebuildIntervalMinutes, rebuildIntervalMinutes, TimeUnit.MINUTES);
+	}
+
+	@PreDestroy
+	public void stop() throws Exception {
+		if (scheduler != null) {
+			scheduler.shutdownNow();
+		}
+		if (listenerContainer != null) {
+			listenerContainer.destroy();
+		}
+	}
+
+	/**
+	 * False only when the customer certainly doesn't exist.
+	 */
+	public boolean mightExist(long id) {
+		BloomFilter filter = current;
+		if (filter == null || filter.mightContain(id)) {
+			return true;
+		}
+		BloomFilter replaced = previous;
+		if (replaced != null && replaced.mightContain(id)) {
+			return true;
+		}
+		rejected.increment();
+		return false;
+	}
+
+	/**
+	 * Puts new ids in this node's filter and publishes them to the others.
+	 */
+	public void added(Collection<Long> ids) {
+		if (!enabled || ids.isEmpty()) {
+			return;
+		}
+		addLocal(ids);
+		try {
+			stringRedisTemplate.convertAndSend(channel, message(ids));
+		} catch (RuntimeException e) {
+			//  the other nodes pick the ids up on their next rebuild
+			log.warn("could not publish " + ids.size() + " new customer ids", e);
+		}
+	}
+
+	/**
+	 * Puts new ids in this node's filter only, the caller publishes {@link #message(Collection)} on
+	 * {@link #getChannel()}.
+	 */
+	public void addLocal(Collection<Long> ids) {
+		//  building before current: a build publishes current before it clears building, so one of them has these
+		BloomFilter next = building;
+		BloomFilter filter = current;
+		if (next != null) {
+			ids.forEach(next::put);
+		}
+		if (filter == null) {
+			return;
+		}
+		ids.forEach(filter::put);
+		if (filter.getPuts() > filter.getCapacity()) {
+			scheduleRebuild("filter full");
+		}
+	}
+
+	public void deleted(long id) {
+		if (!enabled) {
+			return;
+		}
+		deletes.increment();
+		BloomFilter filter = current;
+		if (filter != null && deletes.sum() * 100 > filter.getPuts() * stalePercent) {
+			scheduleRebuild("stale ids");
+		}
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	public String getChannel() {
+		return channel;
+	}
+
+	public String message(Collection<Long> ids) {
+		StringJoiner joiner = new StringJoiner(",");
+		ids.forEach(id -> joiner.add(String.valueOf(id)));
+		return joiner.toString();
+	}
+
+	@Override
+	public void onMessage(Message message, byte[] pattern) {
+		List<Long> ids = new ArrayList<>();
+		for (String id : new String(message.getBody(), StandardCharsets.UTF_8).split(",")) {
+			try {
+				ids.add(Long.parseLong(id.trim()));
+			} catch (NumberFormatException e) {
+				log.warn("ignoring malformed customer id " + id + " on " + channel);
+			}
+		}
+		addLocal(ids);
+	}
+
+	private void scheduleRebuild(String reason) {
+		if (scheduler != null && rebuildPending.compareAndSet(false, true)) {
+			log.info("rebuilding the customer id filter early: " + reason);
+			scheduler.execute(this::rebuild);
+		}
+	}
+
+	//  only ever runs on the scheduler thread
+	private void rebuild() {
+		try {
+			long start = System.nanoTime();
+			long deletesBefore = deletes.sum();
+			BloomFilter next = BloomFilter.create(Math.max(minCapacity, customerRepository.count() * 2), falsePositiveRate);
+			building = next;
+			long after = 0;
+			List<Long> ids;
+			do {
+				ids = customerRepository.findIdsAfter(after, PageRequest.of(0, SCAN_BATCH));
+				ids.forEach(next::put);
+				after = ids.isEmpty() ? after : ids.get(ids.size() - 1);
+			} while (ids.size() == SCAN_BATCH);
+			previous = current;
+			current = next;
+			building = null;
+			deletes.add(-deletesBefore);
+			log.info("customer id filter built with " + next.getPuts() + " ids in "
+					+ (System.nanoTime() - start) / 1_000_000 + " ms, " + next.getBits() / 8 / 1024 + " KB, "
+					+ next.getHashes() + " hashes");
+		} catch (RuntimeException e) {
+			//  the current filter keeps answering, a rebuild is tried again on the next interval
+			log.warn("could not rebuild the customer id filter", e);
+		} finally {
+			building = null;
+			//  early rebuilds asked for while this one ran are covered by it
+			rebuildPending.set(false);
+		}
+	}
+}
@@ -0,0 +1,44 @@
+package com.coderkan.config;
+
+import org.aspectj.lang.annotation.AfterReturning;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.annotation.Before;
+import org.springframework.core.Ordered;
+
+import com.coderkan.cache.HotKeyTracker;
+
+/**
+ * Records every getCustomerById call, servlet and reactive, in the {@link HotKeyTracker}.  It runs ahead of the
+ * caching advice so cache hits, which never reach the service method, are counted too.  A redis hit written
+ * straight from its bytes is counted from getCachedCustomerValue; a miss there goes on to getCustomerById.
+ */
+@Aspect
+public class HotKeyAspect implements Ordered {
+
+	private final HotKeyTracker hotKeyTracker;
+
+	public HotKeyAspect(HotKeyTracker hotKeyTracker) {
+		this.hotKeyTracker = hotKeyTracker;
+	}
+
+	@Before("(execution(* com.coderkan.services.CustomerService.getCustomerById(long))"
+			+ " || execution(* com.coderkan.services.ReactiveCustomerService.getCustomerById(long))) && args(id)")
+	public void record(long id) {
+		hotKeyTracker.record(id);
+	}
+
+	@AfterReturning(pointcut = "execution(* com.coderkan.services.CustomerService.getCachedCustomerValue(long)) && args(id)",
+			returning = "value")
+	public void recordPassThrough(long id, byte[] value) {
+		if (value != null) {
+			hotKeyTracker.record(id);
+		}
+	}
+
+	//  the caching advice has the lowest precedence.  not HIGHEST_PRECEDENCE, the id binding needs
+	//  ExposeInvocationInterceptor to run first
+	@Override
+	public int getOrder() {
+		return 0;
+	}
+}
@@ -0,0 +1,119 @@
+package com.coderkan.config;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import com.coderkan.cache.HotKeyTracker;
+import com.coderkan.cache.HotKeyTracker.HotKey;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Hot key detection for getCustomerById.  Every call is recorded in a {@link HotKeyTracker} by
+ * {@link HotKeyAspect}, a background thread decays the counts and, when snapshot-interval-seconds is set,
+ * writes the top keys to the sorted set cache warm-up mode hot reads: member customer id, score requests
+ * per second.  The last node to write wins, the snapshot expires after three intervals without a writer.
+ */
+@Slf4j
+@Configuration
+@ConditionalOnProperty(prefix = "cache.hot-keys", name = "enabled", havingValue = "true")
+public class HotKeyConfig {
+
+	@Autowired
+	private StringRedisTemplate stringRedisTemplate;
+
+	@Value("${cache.hot-keys.width:4096}")
+	private int width;
+
+	@Value("${cache.hot-keys.depth:4}")
+	private int depth;
+
+	@Value("${cache.hot-keys.top-k:100}")
+	private int topK;
+
+	@Value("${cache.hot-keys.decay-interval-seconds:30}")
+	private long decayIntervalSeconds;
+
+	//  0 turns the snapshot off
+	@Value("${cache.hot-keys.snapshot-interval-seconds:0}")
+	private long snapshotIntervalSeconds;
+
+	@Value("${cache.warmup.hot-keys-key:customers:hot}")
+	private String hotKeysKey;
+
+	//  KEYS[1] the snapshot, ARGV[1] its TTL in seconds, then score member pairs
+	private static final RedisScript<Long> REPLACE_SCRIPT = RedisScript.of(
+			"redis.call('DEL', KEYS[1]) "
+			+ "redis.call('ZADD', KEYS[1], unpack(ARGV, 2)) "
+			+ "return redis.call('EXPIRE', KEYS[1], ARGV[1])", Long.class);
+
+	private ScheduledExecutorService scheduler;
+
+	@Bean
+	public HotKeyTracker hotKeyTracker() {
+		return new HotKeyTracker(width, depth, topK, decayIntervalSeconds, TimeUnit.SECONDS);
+	}
+
+	@Bean
+	public HotKeyAspect hotKeyAspect(HotKeyTracker hotKeyTracker) {
+		return new HotKeyAspect(hotKeyTracker);
+	}
+
+	@PostConstruct
+	public void startScheduler() {
+		HotKeyTracker tracker = hotKeyTracker();
+		scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "hot-keys");
+			thread.setDaemon(true);
+			return thread;
+		});
+		scheduler.scheduleAtFixedRate(tracker::decay, decayIntervalSeconds, decayIntervalSeconds, TimeUnit.SECONDS);
+		if (snapshotIntervalSeconds > 0) {
+			scheduler.scheduleAtFixedRate(() -> writeSnapshot(tracker), snapshotIntervalSeconds, snapshotIntervalSeconds,
+					TimeUnit.SECONDS);
+			log.info("hot key snapshot to " + hotKeysKey + " every " + snapshotIntervalSeconds + " s");
+		}
+	}
+
+	@PreDestroy
+	public void stopScheduler() {
+		if (scheduler != null) {
+			scheduler.shutdownNow();
+		}
+	}
+
+	//  replaces the sorted set in one script so readers never see it half written.  a script rather than
+	//  MULTI, which a cluster connection doesn't support
+	private void writeSnapshot(HotKeyTracker tracker) {
+		try {
+			List<HotKey> top = tracker.top();
+			if (top.isEmpty()) {
+				return;
+			}
+			List<String> args = new ArrayList<>(1 + 2 * top.size());
+			args.add(String.valueOf(snapshotIntervalSeconds * 3));
+			for (HotKey hotKey : top) {
+				args.add(String.valueOf(hotKey.getRatePerSecond()));
+				args.add(String.valueOf(hotKey.getId()));
+			}
+			stringRedisTemplate.execute(REPLACE_SCRIPT, List.of(hotKeysKey), args.toArray());
+			log.debug("wrote " + top.size() + " hot keys to " + hotKeysKey);
+		} catch (RuntimeException e) {
+			//  keep the schedule going, the next snapshot may get through
+			log.warn("could not write the hot key snapshot to " + hotKeysKey, e);
+		}
+	}
+}
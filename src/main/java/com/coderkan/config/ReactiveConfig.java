@@ -0,0 +1,49 @@
+package com.coderkan.config;
+
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.redis.connection.ReactiveRedisConnectionFactory;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializationContext;
+
+import com.coderkan.cache.CacheBatchOperations;
+import com.coderkan.cache.CacheMetrics;
+import com.coderkan.cache.ReactiveCacheOperations;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * The reactive profile: WebFlux on netty, R2DBC and the reactive redis client.  JPA and the blocking redis
+ * beans stay up for the write-behind worker and the cache manager.
+ */
+@Slf4j
+@Profile("reactive")
+@Configuration
+public class ReactiveConfig {
+
+	//  tomcat is on the classpath for the servlet mode and would otherwise be picked for webflux too
+	@Bean
+	public NettyReactiveWebServerFactory nettyReactiveWebServerFactory() {
+		return new NettyReactiveWebServerFactory();
+	}
+
+	@Bean
+	public ReactiveRedisTemplate<byte[], byte[]> reactiveCacheTemplate(RedisConnectionFactory redisConnectionFactory) {
+		if (!(redisConnectionFactory instanceof ReactiveRedisConnectionFactory reactiveConnectionFactory)) {
+			throw new IllegalStateException("the reactive profile needs cache.connection.mode lettuce");
+		}
+		log.info("reactive cache client on the shared lettuce connection");
+		return new ReactiveRedisTemplate<>(reactiveConnectionFactory, RedisSerializationContext.byteArray());
+	}
+
+	@Bean
+	public ReactiveCacheOperations reactiveCacheOperations(ReactiveRedisTemplate<byte[], byte[]> reactiveCacheTemplate,
+														   CacheBatchOperations cacheBatchOperations,
+														   CacheMetrics cacheMetrics, CacheManager cacheManager) {
+		return new ReactiveCacheOperations(reactiveCacheTemplate, cacheBatchOperations, cacheMetrics, cacheManager);
+	}
+}
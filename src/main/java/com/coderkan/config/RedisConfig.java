@@ -2,6 +2,26 @@ package com.coderkan.config;
 
 import java.io.Serializable;
 import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import com.coderkan.cache.CacheBatchOperations;
+import com.coderkan.cache.CacheEvictor;
+import com.coderkan.cache.CacheGenerations;
+import com.coderkan.cache.CacheInvalidationListener;
+import com.coderkan.cache.CacheInvalidationPublisher;
+import com.coderkan.cache.CacheMetrics;
+import com.coderkan.cache.CustomerCodec;
+import com.coderkan.cache.JitteredRedisCacheWriter;
+import com.coderkan.cache.RefreshAheadPolicy;
+import com.coderkan.cache.SingleFlightCacheManager;
+import com.coderkan.cache.TimedRedisCacheWriter;
+import com.coderkan.cache.TwoLevelCacheManager;
+import io.micrometer.core.instrument.MeterRegistry;
 
 import io.micrometer.observation.Observation;
 import io.micrometer.observation.ObservationHandler;
@@ -9,28 +29,52 @@ import io.micrometer.observation.ObservationRegistry;
 import io.micrometer.observation.ObservationTextPublisher;
 import io.micrometer.observation.aop.ObservedAspect;
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.AutoConfigureAfter;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.autoconfigure.data.redis.RedisAutoConfiguration;
 import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.EnableCaching;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisClusterConfiguration;
+import org.springframework.data.redis.connection.RedisConfiguration;
 import org.springframework.data.redis.connection.RedisPassword;
+import org.springframework.data.redis.connection.RedisSentinelConfiguration;
 import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
 import org.springframework.data.redis.connection.jedis.JedisClientConfiguration;
 import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.connection.lettuce.LettucePoolingClientConfiguration;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
 import org.springframework.data.redis.serializer.RedisSerializationContext;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
 import lombok.extern.slf4j.Slf4j;
 
+import org.springframework.data.redis.cache.BatchStrategies;
+import org.springframework.data.redis.cache.BatchStrategy;
+import org.springframework.data.redis.cache.CacheStatisticsCollector;
 import org.springframework.data.redis.cache.RedisCacheConfiguration;
 import org.springframework.data.redis.cache.RedisCacheManager;
+import org.springframework.data.redis.cache.RedisCacheWriter;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
+import io.lettuce.core.AbstractRedisClient;
+import io.lettuce.core.ClientOptions;
+import io.lettuce.core.ReadFrom;
+import io.lettuce.core.SocketOptions;
+import io.lettuce.core.cluster.ClusterClientOptions;
+import io.lettuce.core.cluster.ClusterTopologyRefreshOptions;
+import io.lettuce.core.resource.ClientResources;
 import redis.clients.jedis.JedisPoolConfig;
 @Slf4j
 //@Profile("!dev")
@@ -49,45 +93,289 @@ public class RedisConfig {
 	@Value("${spring.redis.password}")
 	private String redisPassword;
 
+	//  jedis: a pool of blocking connections, each command holds one for its round trip.
+	//  lettuce: one shared multiplexed connection with commands pipelined as they are issued
+	@Value("${cache.connection.mode:jedis}")
+	private String connectionMode;
+
+	//  standalone, sentinel or cluster
+	@Value("${cache.connection.topology:standalone}")
+	private String topology;
+
+	//  host:port list of the sentinels, or of some cluster nodes the rest of the cluster is discovered from
+	@Value("${cache.connection.nodes:}")
+	private String[] nodes;
+
+	@Value("${cache.connection.sentinel-master:mymaster}")
+	private String sentinelMaster;
+
+	@Value("${cache.connection.cluster-max-redirects:5}")
+	private int clusterMaxRedirects;
+
+	//  lettuce only: upstream (the primary), upstreamPreferred, replica, replicaPreferred, nearest or any.
+	//  a replica can lag the primary, so a read right after a write may still see the old entry
+	@Value("${cache.connection.read-from:upstream}")
+	private String readFrom;
+
+	@Value("${cache.connection.connect-timeout-ms:2000}")
+	private long connectTimeout;
+
+	@Value("${cache.connection.command-timeout-ms:10000}")
+	private long commandTimeout;
+
+	@Value("${cache.connection.pool.max-total:50}")
+	private int poolMaxTotal;
+
+	@Value("${cache.connection.pool.max-idle:50}")
+	private int poolMaxIdle;
+
+	@Value("${cache.connection.pool.min-idle:0}")
+	private int poolMinIdle;
+
+	//  how long a caller waits for a pooled connection before failing, -1 waits forever
+	@Value("${cache.connection.pool.max-wait-ms:2000}")
+	private long poolMaxWait;
+
 	@Value("${spring.cache.redis.time-to-live}")
 	private int cacheTtl;
 
 	@Value("${spring.cache.redis.cache-null-values}")
 	private boolean cacheNull;
 
+	@Value("${spring.cache.redis.enable-statistics:false}")
+	private boolean cacheStatistics;
+
+	@Value("${cache.near.enabled:false}")
+	private boolean nearCacheEnabled;
+
+	@Value("${cache.near.maximum-size:10000}")
+	private long nearCacheMaximumSize;
+
+	@Value("${cache.near.time-to-live-seconds:60}")
+	private long nearCacheTtl;
+
+	@Value("${cache.near.invalidation-channel:cache:invalidate}")
+	private String nearCacheChannel;
+
+	//  local coalesces concurrent misses per key on this node, distributed also across nodes with a redis lease
+	@Value("${cache.single-flight.mode:local}")
+	private String singleFlightMode;
+
+	@Value("${cache.single-flight.lease-ms:2000}")
+	private long singleFlightLease;
+
+	@Value("${cache.single-flight.poll-ms:20}")
+	private long singleFlightPoll;
+
+	@Value("${cache.single-flight.wait-timeout-ms:3000}")
+	private long singleFlightWaitTimeout;
+
+	//  caches whose values use the binary CustomerCodec instead of json
+	@Value("${cache.codec.binary-caches:customers}")
+	private String[] binaryCaches;
+
+	//  binary list values at least this big are lz4 compressed, 0 turns compression off
+	@Value("${cache.codec.compression-threshold:512}")
+	private int compressionThreshold;
+
+	//  +/- percentage applied to every entry TTL so entries written together don't expire together
+	@Value("${cache.ttl-jitter-percent:10}")
+	private int ttlJitterPercent;
+
+	//  off, xfetch or window
+	@Value("${cache.refresh-ahead.mode:xfetch}")
+	private String refreshAheadMode;
+
+	@Value("${cache.refresh-ahead.beta:1.0}")
+	private double refreshAheadBeta;
+
+	@Value("${cache.refresh-ahead.window-percent:10}")
+	private int refreshAheadWindowPercent;
+
+	@Value("${cache.refresh-ahead.threads:4}")
+	private int refreshAheadThreads;
+
+	@Value("${cache.refresh-ahead.queue-size:1000}")
+	private int refreshAheadQueueSize;
+
+	//  scan: evict-all UNLINKs the keys in the background.  generation: evict-all bumps the generation in the
+	//  key prefix, the old keys age out by TTL
+	@Value("${cache.eviction.mode:scan}")
+	private String evictionMode;
+
+	@Value("${cache.eviction.scan-count:1000}")
+	private int evictionScanCount;
+
+	//  pause between UNLINK batches, to leave redis room for the traffic
+	@Value("${cache.eviction.batch-pause-ms:0}")
+	private long evictionBatchPause;
+
+	@Value("${cache.eviction.generation-channel:cache:generation}")
+	private String generationChannel;
+
+	//  how often the generations are re-read, in case a generation message was missed
+	@Value("${cache.eviction.generation-refresh-seconds:10}")
+	private long generationRefresh;
+
+	@Value("${spring.threads.virtual.enabled:false}")
+	private boolean virtualThreads;
+
+	private ThreadPoolTaskExecutor refreshExecutor;
+
+	//  identifies this node in near cache invalidation messages so it can skip its own
+	private final String nodeId = UUID.randomUUID().toString();
+
+
+	@Bean
+	public RedisConnectionMetrics redisConnectionMetrics() {
+		String mode = connectionMode.toLowerCase();
+		return new RedisConnectionMetrics(mode, "redis-" + mode);
+	}
 
 	@Bean
-	JedisConnectionFactory jedisConnectionFactory() {
-		JedisPoolConfig poolConfig = new JedisPoolConfig();
-		poolConfig.setMaxIdle(50);
-		poolConfig.setMaxTotal(50);
+	public RedisConnectionFactory redisConnectionFactory(RedisConnectionMetrics redisConnectionMetrics,
+														 ObjectProvider<ClientResources> clientResources) {
+		RedisConfiguration redisServerConf = redisServerConfiguration();
+		log.info("redis connection mode " + connectionMode + " topology " + topology + " read from " + readFrom
+				+ " pool max " + poolMaxTotal + " command timeout " + commandTimeout + "ms");
+		if ("lettuce".equalsIgnoreCase(connectionMode)) {
+			return lettuceConnectionFactory(redisServerConf, redisConnectionMetrics, clientResources.getIfAvailable());
+		}
+		return jedisConnectionFactory(redisServerConf, redisConnectionMetrics);
+	}
+
+	private RedisConfiguration redisServerConfiguration() {
+		RedisPassword password = redisPassword == null || redisPassword.isEmpty()
+				? RedisPassword.none() : RedisPassword.of(redisPassword);
+		switch (topology.toLowerCase()) {
+			case "standalone" -> {
+				RedisStandaloneConfiguration redisServerConf = new RedisStandaloneConfiguration();
+				log.info("redis host " + redisHostName);
+				log.info("redis port " + String.valueOf(redisPort));
+				redisServerConf.setHostName(redisHostName);
+				redisServerConf.setPort(redisPort);
+				redisServerConf.setPassword(password);
+				return redisServerConf;
+			}
+			case "sentinel" -> {
+				log.info("redis sentinels " + Arrays.toString(nodes) + " master " + sentinelMaster);
+				RedisSentinelConfiguration sentinelConf = new RedisSentinelConfiguration(sentinelMaster,
+						new HashSet<>(nodeList()));
+				sentinelConf.setPassword(password);
+				return sentinelConf;
+			}
+			case "cluster" -> {
+				log.info("redis cluster nodes " + Arrays.toString(nodes));
+				RedisClusterConfiguration clusterConf = new RedisClusterConfiguration(nodeList());
+				clusterConf.setMaxRedirects(clusterMaxRedirects);
+				clusterConf.setPassword(password);
+				return clusterConf;
+			}
+			default -> throw new IllegalArgumentException("unknown cache.connection.topology " + topology);
+		}
+	}
+
+	private List<String> nodeList() {
+		List<String> nodeList = Arrays.stream(nodes).map(String::trim).filter(node -> !node.isEmpty()).toList();
+		if (nodeList.isEmpty()) {
+			throw new IllegalArgumentException("cache.connection.nodes is required for topology " + topology);
+		}
+		return nodeList;
+	}
+
+	private boolean readsFromUpstream() {
+		return "upstream".equalsIgnoreCase(readFrom) || "master".equalsIgnoreCase(readFrom);
+	}
+
+	private JedisConnectionFactory jedisConnectionFactory(RedisConfiguration redisServerConf,
+														  RedisConnectionMetrics redisConnectionMetrics) {
+		JedisPoolConfig poolConfig = poolConfig(new JedisPoolConfig(), redisConnectionMetrics.getPoolName());
 		JedisClientConfiguration.JedisClientConfigurationBuilder clientConfig = JedisClientConfiguration.builder();
 		clientConfig.usePooling().poolConfig(poolConfig);
-		JedisConnectionFactory jedisConnectionFactory;
-		RedisStandaloneConfiguration redisServerConf = new RedisStandaloneConfiguration();
-		log.info("redis host " + redisHostName);
-		log.info("redis port " + String.valueOf(redisPort));
-		redisServerConf.setHostName(redisHostName);
-		redisServerConf.setPort(redisPort);
-		if(redisPassword != null && !redisPassword.isEmpty()) {
-			log.info("redis password " + redisPassword);
-			redisServerConf.setPassword(RedisPassword.of(redisPassword));
-		}
-		jedisConnectionFactory = new JedisConnectionFactory(redisServerConf, clientConfig.build());
-		return jedisConnectionFactory;
+		clientConfig.connectTimeout(Duration.ofMillis(connectTimeout)).readTimeout(Duration.ofMillis(commandTimeout));
+		if (!readsFromUpstream()) {
+			throw new IllegalStateException("cache.connection.read-from " + readFrom + " needs cache.connection.mode lettuce");
+		}
+		if (redisServerConf instanceof RedisClusterConfiguration clusterConf) {
+			return new JedisConnectionFactory(clusterConf, clientConfig.build());
+		}
+		if (redisServerConf instanceof RedisSentinelConfiguration sentinelConf) {
+			return new JedisConnectionFactory(sentinelConf, clientConfig.build());
+		}
+		return new JedisConnectionFactory((RedisStandaloneConfiguration) redisServerConf, clientConfig.build());
+	}
+
+	//  one shared native connection for all threads.  lettuce writes each command as soon as it is issued and
+	//  matches replies in order, so concurrent callers are pipelined on the socket instead of queueing for a pooled
+	//  connection.  the pool only serves blocking and transactional commands
+	private LettuceConnectionFactory lettuceConnectionFactory(RedisConfiguration redisServerConf,
+															  RedisConnectionMetrics redisConnectionMetrics,
+															  ClientResources clientResources) {
+		LettucePoolingClientConfiguration.LettucePoolingClientConfigurationBuilder clientConfig =
+				LettucePoolingClientConfiguration.builder()
+						.poolConfig(poolConfig(new GenericObjectPoolConfig<>(), redisConnectionMetrics.getPoolName()))
+						.commandTimeout(Duration.ofMillis(commandTimeout))
+						.clientOptions(clientOptions(redisServerConf));
+		if (!readsFromUpstream()) {
+			//  cache reads go to replicas, writes, scripts and leases still go to the primary
+			clientConfig.readFrom(ReadFrom.valueOf(readFrom));
+		}
+		if (clientResources != null) {
+			//  spring boot's client resources carry the lettuce.command.* latency meters
+			clientConfig.clientResources(clientResources);
+		}
+		LettuceConnectionFactory lettuceConnectionFactory = new LettuceConnectionFactory(redisServerConf,
+				clientConfig.build()) {
+			@Override
+			protected AbstractRedisClient createClient() {
+				AbstractRedisClient client = super.createClient();
+				client.addListener(redisConnectionMetrics);
+				return client;
+			}
+		};
+		lettuceConnectionFactory.setShareNativeConnection(true);
+		return lettuceConnectionFactory;
+	}
+
+	//  on a cluster lettuce also follows slot migrations and failovers: MOVED/ASK redirects and
+	//  reconnects trigger a topology refresh, and the topology is reloaded every 30 seconds anyway
+	private ClientOptions clientOptions(RedisConfiguration redisServerConf) {
+		SocketOptions socketOptions = SocketOptions.builder().connectTimeout(Duration.ofMillis(connectTimeout)).build();
+		if (redisServerConf instanceof RedisClusterConfiguration) {
+			return ClusterClientOptions.builder()
+					.socketOptions(socketOptions)
+					.maxRedirects(clusterMaxRedirects)
+					.topologyRefreshOptions(ClusterTopologyRefreshOptions.builder()
+							.enableAllAdaptiveRefreshTriggers()
+							.enablePeriodicRefresh(Duration.ofSeconds(30))
+							.build())
+					.build();
+		}
+		return ClientOptions.builder().socketOptions(socketOptions).build();
+	}
+
+	private <T extends GenericObjectPoolConfig<?>> T poolConfig(T poolConfig, String jmxName) {
+		poolConfig.setMaxTotal(poolMaxTotal);
+		poolConfig.setMaxIdle(poolMaxIdle);
+		poolConfig.setMinIdle(poolMinIdle);
+		poolConfig.setMaxWait(Duration.ofMillis(poolMaxWait));
+		//  the jmx name is what commons.pool2.* meters are tagged with
+		poolConfig.setJmxEnabled(true);
+		poolConfig.setJmxNamePrefix(jmxName);
+		return poolConfig;
 	}
 	@Bean
-	public RedisTemplate<String, Serializable> redisCacheTemplate(JedisConnectionFactory jedisConnectionFactory) {
+	public RedisTemplate<String, Serializable> redisCacheTemplate(RedisConnectionFactory redisConnectionFactory) {
 		RedisTemplate<String, Serializable> template = new RedisTemplate<>();
 		template.setKeySerializer(new StringRedisSerializer());
 		template.setValueSerializer(new GenericJackson2JsonRedisSerializer());
-		template.setConnectionFactory(jedisConnectionFactory);
+		template.setConnectionFactory(redisConnectionFactory);
 
 		return template;
 	}
 
 	@Bean
-	public CacheManager cacheManager(RedisConnectionFactory redisConnectionFactory) {
+	public RedisCacheConfiguration redisCacheConfiguration() {
 		RedisCacheConfiguration config = RedisCacheConfiguration.defaultCacheConfig();
 		RedisCacheConfiguration redisCacheConfiguration = config
 				.entryTtl(Duration.ofMinutes(cacheTtl))
@@ -95,15 +383,122 @@ public class RedisConfig {
 						RedisSerializationContext.SerializationPair.fromSerializer(new StringRedisSerializer()))
 				.serializeValuesWith(RedisSerializationContext.SerializationPair
 						.fromSerializer(new GenericJackson2JsonRedisSerializer()))
+				.computePrefixWith(cacheGenerations())
 				;
 		if (cacheNull) {
 			redisCacheConfiguration.getAllowCacheNullValues();
 		} else {
 			redisCacheConfiguration.disableCachingNullValues();
 		}
-		RedisCacheManager redisCacheManager = RedisCacheManager.builder(redisConnectionFactory).cacheDefaults(redisCacheConfiguration)
+		return redisCacheConfiguration;
+	}
+
+	@Bean
+	public CacheGenerations cacheGenerations() {
+		log.info("cache eviction mode " + evictionMode);
+		return new CacheGenerations(generationEviction());
+	}
+
+	private boolean generationEviction() {
+		return switch (evictionMode.toLowerCase()) {
+			case "scan" -> false;
+			case "generation" -> true;
+			default -> throw new IllegalArgumentException("unknown cache.eviction.mode " + evictionMode);
+		};
+	}
+
+	//  per cache overrides of the defaults, currently only the value codec
+	private Map<String, RedisCacheConfiguration> cacheConfigurations(RedisCacheConfiguration defaults) {
+		Map<String, RedisCacheConfiguration> configurations = new HashMap<>();
+		RedisCacheConfiguration binary = defaults.serializeValuesWith(RedisSerializationContext.SerializationPair
+				.fromSerializer(new CustomerCodec(compressionThreshold)));
+		for (String cacheName : binaryCaches) {
+			if (!cacheName.isBlank()) {
+				log.info("cache " + cacheName + " uses the binary customer codec");
+				configurations.put(cacheName.trim(), binary);
+			}
+		}
+		return configurations;
+	}
+
+	//  one statistics collector for the cache writer and for the paths that bypass RedisCache
+	@Bean
+	public CacheMetrics cacheMetrics(MeterRegistry meterRegistry) {
+		log.info("cache statistics " + (cacheStatistics ? "enabled" : "disabled"));
+		return new CacheMetrics(meterRegistry,
+				cacheStatistics ? CacheStatisticsCollector.create() : CacheStatisticsCollector.none());
+	}
+
+	@Bean
+	public CacheBatchOperations cacheBatchOperations(RedisConnectionFactory redisConnectionFactory,
+													 RedisCacheConfiguration redisCacheConfiguration,
+													 CacheMetrics cacheMetrics) {
+		return new CacheBatchOperations(redisConnectionFactory, redisCacheConfiguration,
+				cacheConfigurations(redisCacheConfiguration), ttlJitterPercent, cacheMetrics);
+	}
+
+	@Bean
+	public CacheManager cacheManager(RedisConnectionFactory redisConnectionFactory, RedisCacheConfiguration redisCacheConfiguration,
+									 StringRedisTemplate stringRedisTemplate, MeterRegistry meterRegistry,
+									 CacheBatchOperations cacheBatchOperations, CacheMetrics cacheMetrics) {
+		//  statistics are wired into the writer here rather than with enableStatistics() so CacheMetrics shares the collector
+		RedisCacheWriter cacheWriter = new JitteredRedisCacheWriter(new TimedRedisCacheWriter(
+				RedisCacheWriter.nonLockingRedisCacheWriter(redisConnectionFactory, clearStrategy())
+						.withStatisticsCollector(cacheMetrics.getStatistics()), cacheMetrics), ttlJitterPercent);
+		RedisCacheManager redisCacheManager = RedisCacheManager.builder(cacheWriter).cacheDefaults(redisCacheConfiguration)
+				.withInitialCacheConfigurations(cacheConfigurations(redisCacheConfiguration))
 				.build();
-		return redisCacheManager;
+		log.info("single flight mode " + singleFlightMode + " refresh ahead " + refreshAheadMode);
+		RefreshAheadPolicy refreshPolicy = new RefreshAheadPolicy(
+				RefreshAheadPolicy.Mode.valueOf(refreshAheadMode.toUpperCase()), refreshAheadBeta,
+				redisCacheConfiguration.getTtl(), refreshAheadWindowPercent);
+		CacheManager singleFlightCacheManager = new SingleFlightCacheManager(redisCacheManager, redisConnectionFactory,
+				cacheBatchOperations, cacheMetrics, "distributed".equalsIgnoreCase(singleFlightMode),
+				singleFlightLease, singleFlightPoll, singleFlightWaitTimeout, refreshPolicy, refreshExecutor());
+		if (!nearCacheEnabled) {
+			return singleFlightCacheManager;
+		}
+		log.info("near cache enabled on channel " + nearCacheChannel + " node " + nodeId);
+		CacheInvalidationPublisher publisher = new CacheInvalidationPublisher(stringRedisTemplate, nearCacheChannel, nodeId);
+		return new TwoLevelCacheManager(singleFlightCacheManager, publisher, meterRegistry,
+				nearCacheMaximumSize, Duration.ofSeconds(nearCacheTtl));
+	}
+
+	//  for whatever still calls RedisCache.clear: SCAN instead of KEYS, except on a cluster where the writer's
+	//  SCAN would only see one node
+	private BatchStrategy clearStrategy() {
+		return "cluster".equalsIgnoreCase(topology) ? BatchStrategies.keys() : BatchStrategies.scan(evictionScanCount);
+	}
+
+	@Bean(destroyMethod = "shutdown")
+	public CacheEvictor cacheEvictor(RedisConnectionFactory redisConnectionFactory, CacheManager cacheManager,
+									 CacheBatchOperations cacheBatchOperations, CacheMetrics cacheMetrics,
+									 CacheGenerations cacheGenerations) {
+		CacheEvictor cacheEvictor = new CacheEvictor(redisConnectionFactory, cacheManager, cacheBatchOperations,
+				cacheMetrics, cacheGenerations, evictionScanCount, evictionBatchPause, generationChannel);
+		cacheEvictor.start(Duration.ofSeconds(generationRefresh));
+		return cacheEvictor;
+	}
+
+	@Bean
+	@ConditionalOnProperty(prefix = "cache.eviction", name = "mode", havingValue = "generation")
+	public RedisMessageListenerContainer generationListenerContainer(RedisConnectionFactory redisConnectionFactory,
+																	  CacheEvictor cacheEvictor) {
+		RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+		container.setConnectionFactory(redisConnectionFactory);
+		container.addMessageListener(cacheEvictor, new ChannelTopic(generationChannel));
+		return container;
+	}
+
+	@Bean
+	@ConditionalOnProperty(prefix = "cache.near", name = "enabled", havingValue = "true")
+	public RedisMessageListenerContainer nearCacheListenerContainer(RedisConnectionFactory redisConnectionFactory,
+																	 CacheManager cacheManager) {
+		RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+		container.setConnectionFactory(redisConnectionFactory);
+		container.addMessageListener(new CacheInvalidationListener((TwoLevelCacheManager) cacheManager, nodeId),
+				new ChannelTopic(nearCacheChannel));
+		return container;
 	}
 	@Configuration
 	public class ObservationTextPublisherConfiguration {
@@ -125,6 +520,31 @@ public class RedisConfig {
 
 	}
 
+	//  bounded so a burst of hot keys near expiry can't pile up refresh work, overflow is dropped.
+	//  not a bean, an Executor bean would replace spring boot's applicationTaskExecutor
+	private ThreadPoolTaskExecutor refreshExecutor() {
+		if (refreshExecutor == null) {
+			refreshExecutor = new ThreadPoolTaskExecutor();
+			refreshExecutor.setCorePoolSize(refreshAheadThreads);
+			refreshExecutor.setMaxPoolSize(refreshAheadThreads);
+			refreshExecutor.setQueueCapacity(refreshAheadQueueSize);
+			refreshExecutor.setThreadNamePrefix("cache-refresh-");
+			if (virtualThreads) {
+				//  same bounded pool and queue, a refresh waiting on the database just doesn't hold a platform thread
+				refreshExecutor.setThreadFactory(Thread.ofVirtual().name("cache-refresh-", 0).factory());
+			}
+			refreshExecutor.initialize();
+		}
+		return refreshExecutor;
+	}
+
+	@PreDestroy
+	public void shutdownRefreshExecutor() {
+		if (refreshExecutor != null) {
+			refreshExecutor.shutdown();
+		}
+	}
+
 	@PostConstruct
 	public void clearCache() {
 		System.out.println("In Clear Cache");
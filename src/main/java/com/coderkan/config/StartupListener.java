@@ -1,24 +1,32 @@
 package com.coderkan.config;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
 import org.springframework.cache.CacheManager;
 import org.springframework.context.ApplicationListener;
-import org.springframework.context.event.ContextRefreshedEvent;
 import org.springframework.stereotype.Component;
 
+//  ApplicationReadyEvent rather than ContextRefreshedEvent: fires once, after the web server is up, so
+//  liveness answers while the cache warms and readiness is held by the cacheWarmup health indicator
 @Component
-public class StartupListener implements ApplicationListener<ContextRefreshedEvent> {
+public class StartupListener implements ApplicationListener<ApplicationReadyEvent> {
 
 	@Autowired
 	private CacheManager cacheManager;
+	@Autowired
+	private CacheWarmup cacheWarmup;
+	@Autowired
+	private CustomerIdFilter customerIdFilter;
 	
 	@Override
-	public final void onApplicationEvent(ContextRefreshedEvent event) {
+	public final void onApplicationEvent(ApplicationReadyEvent event) {
 		System.out.println("On Application Event is OK");
 		cacheManager.getCacheNames().parallelStream().forEach(n -> {
 			// cacheManager.getCache(n).clear()	
 			System.out.println(n);
 		});
+		customerIdFilter.start();
+		cacheWarmup.start();
 	}
 
-}
\ No newline at end of file
+}
@@ -1,44 +1,173 @@
 package com.coderkan.controllers;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.RuntimeJsonMappingException;
 import io.micrometer.observation.annotation.Observed;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
 
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import com.coderkan.cache.CacheBatchOperations;
+import com.coderkan.cache.CustomerCodec;
+import com.coderkan.models.BulkLoadResult;
 import com.coderkan.models.Customer;
+import com.coderkan.models.CustomerPage;
+import com.coderkan.models.EvictionProgress;
+import com.coderkan.config.CustomerIdFilter;
 import com.coderkan.services.CustomerService;
 
 
 
+@Profile("!reactive")
 @RestController
 @RequestMapping("/api")
 public class CustomerController {
 	@Autowired
 	private CustomerService customerService;
+	@Autowired
+	private ObjectMapper objectMapper;
+	@Autowired
+	private CustomerIdFilter customerIdFilter;
 
+	private static final int MAX_PAGE_SIZE = 1000;
+
+	//  with after and/or limit returns one keyset page, without them the whole table
 	@GetMapping(value = "/customers", produces = MediaType.APPLICATION_JSON_VALUE)
 	@ResponseBody
-	public ResponseEntity<Object> getAllCustomers() {
+	public ResponseEntity<Object> getAllCustomers(@RequestParam(value = "after", required = false) Long after,
+												  @RequestParam(value = "limit", required = false) Integer limit,
+												  @RequestParam(value = "ids", required = false) List<Long> ids) {
+		if (ids != null) {
+			return getCustomersByIds(ids);
+		}
+		if (after != null || limit != null) {
+			int pageSize = limit == null ? 100 : limit;
+			if (pageSize < 1 || pageSize > MAX_PAGE_SIZE) {
+				return ResponseEntity.badRequest().body("limit must be between 1 and " + MAX_PAGE_SIZE);
+			}
+			CustomerPage page = this.customerService.getPage(after == null ? 0 : after, pageSize);
+			return ResponseEntity.ok(page);
+		}
 		List<Customer> customers = this.customerService.getAll();
 		return ResponseEntity.ok(customers);
 	}
 
+	//  Accept: application/x-ndjson streams every customer, one per line, as it is read from the database
+	@GetMapping(value = "/customers", produces = MediaType.APPLICATION_NDJSON_VALUE)
+	public ResponseEntity<StreamingResponseBody> exportCustomers() {
+		//  let the generator and servlet buffers decide when to send a chunk instead of flushing every row
+		ObjectWriter writer = objectMapper.writerFor(Customer.class).without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+		StreamingResponseBody body = out -> {
+			try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+				generator.setRootValueSeparator(new SerializedString("\n"));
+				this.customerService.exportAll(customer -> {
+					try {
+						writer.writeValue(generator, customer);
+					} catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+				});
+				generator.writeRaw('\n');
+			}
+		};
+		return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
+	}
+
+	//  same as ?ids= for lists too long for a query string
+	@PostMapping(value = "/customers/multi-get", consumes = MediaType.APPLICATION_JSON_VALUE,
+			produces = MediaType.APPLICATION_JSON_VALUE)
+	public ResponseEntity<Object> getCustomersByIds(@RequestBody List<Long> ids) {
+		Set<Long> uniqueIds = new LinkedHashSet<>(ids);
+		if (uniqueIds.size() > MAX_PAGE_SIZE) {
+			return ResponseEntity.badRequest().body("at most " + MAX_PAGE_SIZE + " ids per request");
+		}
+		List<Customer> customers = this.customerService.getCustomersByIds(uniqueIds);
+		return ResponseEntity.ok(customers);
+	}
+
 	@GetMapping(value = "/customers/{id}", produces = MediaType.APPLICATION_JSON_VALUE)
 	@ResponseBody
-	public ResponseEntity<Object> getCustomerById(@PathVariable("id") String id) {
+	public ResponseEntity<Object> getCustomerById(@PathVariable("id") String id, ServletWebRequest request)
+			throws IOException {
 		Long _id = Long.valueOf(id);
+		//  an id the filter has never seen is not looked up in redis or the database
+		if (!customerIdFilter.mightExist(_id)) {
+			return ResponseEntity.notFound().build();
+		}
+		//  a redis hit goes out straight from the cached bytes, no Customer is built only to be rendered again.
+		//  null returns tell spring the response is already written
+		byte[] cached = this.customerService.getCachedCustomerValue(_id);
+		if (cached != null) {
+			String etag = CacheBatchOperations.etag(cached);
+			if (request.checkNotModified(etag)) {
+				return null;
+			}
+			if (writeCached(cached, etag, request.getResponse())) {
+				return null;
+			}
+		}
 		Customer customer = this.customerService.getCustomerById(_id);
-		return ResponseEntity.ok(customer);
+		if (customer == null) {
+			return ResponseEntity.notFound().build();
+		}
+		//  spring answers 304 itself when If-None-Match has this ETag
+		return ResponseEntity.ok().eTag(this.customerService.getCustomerETag(customer)).body(customer);
 	}
+
+	//  rendered into a buffer from jackson's recycler first, the response is only touched once the whole body is
+	//  there: a value that isn't a customer leaves it to the fallback, and a codec error is a 500 with no half
+	//  written object in front of it
+	private boolean writeCached(byte[] cached, String etag, HttpServletResponse response) throws IOException {
+		ByteArrayBuilder json = new ByteArrayBuilder(objectMapper.getFactory()._getBufferRecycler());
+		try {
+			try (JsonGenerator generator = objectMapper.getFactory().createGenerator(json)) {
+				if (!CustomerCodec.writeJson(cached, generator)) {
+					return false;
+				}
+			}
+			byte[] body = json.toByteArray();
+			response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+			response.setHeader(HttpHeaders.ETAG, etag);
+			response.setContentLength(body.length);
+			response.getOutputStream().write(body);
+			return true;
+		} finally {
+			json.release();
+		}
+	}
+	//  202 with the progress so far, the eviction carries on in the background
 	@GetMapping(value = "/customers/evict-all")
-	public void evictCache() {
-		this.customerService.evictCache();
+	public ResponseEntity<Object> evictCache() {
+		return ResponseEntity.accepted().body(this.customerService.evictCache());
+	}
+
+	@GetMapping(value = "/customers/evict-all/status", produces = MediaType.APPLICATION_JSON_VALUE)
+	public ResponseEntity<Object> getEvictionProgress() {
+		EvictionProgress progress = this.customerService.getEvictionProgress();
+		return progress == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(progress);
 	}
 
 	@PostMapping(value = "/customers")
@@ -48,12 +177,41 @@ public class CustomerController {
 		return ResponseEntity.status(HttpStatus.CREATED).body(created);
 	}
 
+	//  accepts a json array or newline delimited json, customers are parsed one at a time off the
+	//  request stream so the body is never held in memory.  cache=false skips loading redis.
+	//  a malformed customer is a 400 whose body has the count of customers before it, those are loaded
+	@PostMapping(value = "/customers/bulk", consumes = { MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE })
+	public ResponseEntity<Object> addCustomers(HttpServletRequest request,
+											   @RequestParam(value = "cache", defaultValue = "true") boolean cache) throws IOException {
+		try (MappingIterator<Customer> customers = objectMapper.readerFor(Customer.class).readValues(request.getInputStream())) {
+			BulkLoadResult result = this.customerService.addAll(customers, cache);
+			if (result.getError() != null) {
+				return ResponseEntity.badRequest().body(result);
+			}
+			return ResponseEntity.status(HttpStatus.CREATED).body(result);
+		} catch (RuntimeJsonMappingException e) {
+			return ResponseEntity.badRequest().body(e.getMessage());
+		}
+	}
+
 	@PutMapping(value = "/customers")
 	public ResponseEntity<Object> updateCustomer(@RequestBody Customer customer) {
 		Customer updated = this.customerService.update(customer);
 		return ResponseEntity.ok(updated);
 	}
 
+	//  only the fields sent are changed, a field sent as null is cleared
+	@PatchMapping(value = "/customers/{id}", consumes = MediaType.APPLICATION_JSON_VALUE)
+	public ResponseEntity<Object> patchCustomer(@PathVariable("id") long id, @RequestBody Map<String, String> changes) {
+		Customer patched;
+		try {
+			patched = this.customerService.patch(id, changes);
+		} catch (IllegalArgumentException e) {
+			return ResponseEntity.badRequest().body(e.getMessage());
+		}
+		return patched == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(patched);
+	}
+
 	@DeleteMapping(value = "/customers/{id}")
 	public ResponseEntity<Object> deleteCustomerById(@PathVariable("id") String id) {
 		Long _id = Long.valueOf(id);
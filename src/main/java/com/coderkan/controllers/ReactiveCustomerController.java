@@ -0,0 +1,134 @@
+package com.coderkan.controllers;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import com.coderkan.config.CustomerIdFilter;
+import com.coderkan.models.Customer;
+import com.coderkan.services.ReactiveCustomerService;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * WebFlux version of {@link CustomerController} for the reactive profile, same endpoints and responses.
+ */
+@Profile("reactive")
+@RestController
+@RequestMapping("/api")
+public class ReactiveCustomerController {
+	@Autowired
+	private ReactiveCustomerService customerService;
+	@Autowired
+	private CustomerIdFilter customerIdFilter;
+
+	private static final int MAX_PAGE_SIZE = 1000;
+
+	//  with after and/or limit returns one keyset page, without them the whole table
+	@GetMapping(value = "/customers", produces = MediaType.APPLICATION_JSON_VALUE)
+	public Mono<ResponseEntity<Object>> getAllCustomers(@RequestParam(value = "after", required = false) Long after,
+														@RequestParam(value = "limit", required = false) Integer limit,
+														@RequestParam(value = "ids", required = false) List<Long> ids) {
+		if (ids != null) {
+			return getCustomersByIds(ids);
+		}
+		if (after != null || limit != null) {
+			int pageSize = limit == null ? 100 : limit;
+			if (pageSize < 1 || pageSize > MAX_PAGE_SIZE) {
+				return Mono.just(ResponseEntity.badRequest().body("limit must be between 1 and " + MAX_PAGE_SIZE));
+			}
+			return this.customerService.getPage(after == null ? 0 : after, pageSize).map(ResponseEntity::ok);
+		}
+		return this.customerService.getAll().collectList().map(ResponseEntity::ok);
+	}
+
+	//  Accept: application/x-ndjson streams every customer, one per line, as fast as the client reads them
+	@GetMapping(value = "/customers", produces = MediaType.APPLICATION_NDJSON_VALUE)
+	public Flux<Customer> exportCustomers() {
+		return this.customerService.exportAll();
+	}
+
+	//  same as ?ids= for lists too long for a query string
+	@PostMapping(value = "/customers/multi-get", consumes = MediaType.APPLICATION_JSON_VALUE,
+			produces = MediaType.APPLICATION_JSON_VALUE)
+	public Mono<ResponseEntity<Object>> getCustomersByIds(@RequestBody List<Long> ids) {
+		Set<Long> uniqueIds = new LinkedHashSet<>(ids);
+		if (uniqueIds.size() > MAX_PAGE_SIZE) {
+			return Mono.just(ResponseEntity.badRequest().body("at most " + MAX_PAGE_SIZE + " ids per request"));
+		}
+		return this.customerService.getCustomersByIds(uniqueIds).collectList().map(ResponseEntity::ok);
+	}
+
+	@GetMapping(value = "/customers/{id}", produces = MediaType.APPLICATION_JSON_VALUE)
+	public Mono<ResponseEntity<Object>> getCustomerById(@PathVariable("id") String id) {
+		Long _id = Long.valueOf(id);
+		if (!customerIdFilter.mightExist(_id)) {
+			return Mono.just(ResponseEntity.notFound().build());
+		}
+		return this.customerService.getCustomerById(_id)
+				.map(customer -> ResponseEntity.ok((Object) customer))
+				.defaultIfEmpty(ResponseEntity.notFound().build());
+	}
+
+	@GetMapping(value = "/customers/evict-all")
+	public Mono<ResponseEntity<Object>> evictCache() {
+		return this.customerService.evictCache().map(progress -> ResponseEntity.accepted().body((Object) progress));
+	}
+
+	@GetMapping(value = "/customers/evict-all/status", produces = MediaType.APPLICATION_JSON_VALUE)
+	public Mono<ResponseEntity<Object>> getEvictionProgress() {
+		return this.customerService.getEvictionProgress()
+				.map(progress -> ResponseEntity.ok((Object) progress))
+				.defaultIfEmpty(ResponseEntity.notFound().build());
+	}
+
+	@PostMapping(value = "/customers")
+	public Mono<ResponseEntity<Object>> addCustomer(@RequestBody Customer customer) {
+		return this.customerService.add(customer)
+				.map(created -> ResponseEntity.status(HttpStatus.CREATED).body(created));
+	}
+
+	//  accepts a json array or newline delimited json, customers are decoded one at a time as the
+	//  request body arrives so it is never held in memory.  cache=false skips loading redis
+	@PostMapping(value = "/customers/bulk", consumes = { MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE })
+	public Mono<ResponseEntity<Object>> addCustomers(@RequestBody Flux<Customer> customers,
+													 @RequestParam(value = "cache", defaultValue = "true") boolean cache) {
+		return this.customerService.addAll(customers, cache)
+				.map(result -> result.getError() != null
+						? ResponseEntity.badRequest().body((Object) result)
+						: ResponseEntity.status(HttpStatus.CREATED).body((Object) result));
+	}
+
+	@PutMapping(value = "/customers")
+	public Mono<ResponseEntity<Object>> updateCustomer(@RequestBody Customer customer) {
+		return this.customerService.update(customer)
+				.map(updated -> ResponseEntity.ok((Object) updated))
+				.defaultIfEmpty(ResponseEntity.ok().build());
+	}
+
+	//  only the fields sent are changed, a field sent as null is cleared
+	@PatchMapping(value = "/customers/{id}", consumes = MediaType.APPLICATION_JSON_VALUE)
+	public Mono<ResponseEntity<Object>> patchCustomer(@PathVariable("id") long id,
+													  @RequestBody Map<String, String> changes) {
+		return this.customerService.patch(id, changes)
+				.map(patched -> ResponseEntity.ok((Object) patched))
+				.defaultIfEmpty(ResponseEntity.notFound().build())
+				.onErrorResume(IllegalArgumentException.class,
+						e -> Mono.just(ResponseEntity.badRequest().body(e.getMessage())));
+	}
+
+	@DeleteMapping(value = "/customers/{id}")
+	public Mono<ResponseEntity<Object>> deleteCustomerById(@PathVariable("id") String id) {
+		Long _id = Long.valueOf(id);
+		return this.customerService.delete(_id).thenReturn(ResponseEntity.ok().build());
+	}
+}
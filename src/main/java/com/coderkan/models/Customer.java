@@ -12,9 +12,16 @@ import lombok.NoArgsConstructor;
 @Table(name = "customer", schema = "public")
 public class Customer {
 
+	//  ids per nextval of customer_id_seq, the r2dbc inserts hand them out in the same blocks
+	public static final int ID_ALLOCATION_SIZE = 50;
+
+	//  a pooled sequence rather than IDENTITY so hibernate can batch inserts
 	@Id
-	@GeneratedValue(strategy = GenerationType.IDENTITY)
+	@GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "customer_seq")
+	@SequenceGenerator(name = "customer_seq", sequenceName = "customer_id_seq", allocationSize = ID_ALLOCATION_SIZE)
 	@Column(name = "id", unique = true)
+	//  the jpa annotations above are invisible to spring data r2dbc
+	@org.springframework.data.annotation.Id
 
 	private long id;
 
@@ -0,0 +1,19 @@
+package com.coderkan.models;
+
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@AllArgsConstructor
+@NoArgsConstructor
+@Data
+public class CustomerPage {
+
+	private List<Customer> customers;
+
+	//  pass as after= to get the next page, null on the last page
+	private Long next;
+
+}
@@ -0,0 +1,29 @@
+package com.coderkan.models;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@AllArgsConstructor
+@NoArgsConstructor
+@Data
+public class EvictionProgress {
+
+	private String cache;
+
+	//  scan or generation
+	private String mode;
+
+	//  RUNNING, DONE or FAILED
+	private String state;
+
+	private long scanned;
+
+	private long deleted;
+
+	//  the cache's key generation once the eviction is done, 0 in scan mode
+	private long generation;
+
+	private long elapsedMillis;
+
+}
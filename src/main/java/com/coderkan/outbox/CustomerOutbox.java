@@ -0,0 +1,173 @@
+package com.coderkan.outbox;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.util.List;
+import java.util.function.Consumer;
+
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * The customer_outbox table, filled by a trigger on public.customer for every insert, update and delete
+ * whoever makes it, and the durable checkpoint of the consumer draining it.
+ * <p>
+ * {@link #poll(int, Consumer)} runs in one transaction: it locks the consumer's checkpoint row, hands the
+ * oldest rows to the handler, deletes them and moves the checkpoint to the highest id.  A handler that throws
+ * rolls all of it back, so the rows are handed out again on the next poll.  The checkpoint is locked with
+ * SKIP LOCKED, so with several nodes only one drains the outbox at a time and the others skip their turn.
+ * Rows are deleted rather than only passed by the checkpoint: ids come from a sequence, and a transaction
+ * that took a lower id can commit after a higher id was already read.
+ * <p>
+ * The trigger records the writer's {@value #ORIGIN_SETTING} setting with each row, the application's own
+ * connections set it to {@value OutboxEvent#SERVICE} so the poller can tell writes that already kept the
+ * cache right from those that bypassed it.
+ * <p>
+ * The tables are plain SQL that postgres and the embedded test database both run, the trigger is postgres only.
+ */
+@Slf4j
+public class CustomerOutbox {
+
+	public static final String ORIGIN_SETTING = "customer_cache.origin";
+
+	private static final List<String> TABLES = List.of(
+			"create table if not exists customer_outbox ("
+					+ " id bigint generated by default as identity primary key,"
+					+ " customer_id bigint not null,"
+					+ " op char(1) not null,"
+					+ " origin varchar(64),"
+					+ " created_at timestamp with time zone default current_timestamp not null)",
+			//  tables created before origin was recorded
+			"alter table customer_outbox add column if not exists origin varchar(64)",
+			"create table if not exists customer_outbox_checkpoint ("
+					+ " consumer varchar(64) primary key,"
+					+ " last_id bigint not null,"
+					+ " updated_at timestamp with time zone not null)");
+
+	private static final List<String> POSTGRES_TRIGGER = List.of(
+			"create or replace function customer_outbox_capture() returns trigger as $$\n"
+					+ "declare\n"
+					+ "  origin varchar(64) := current_setting('" + ORIGIN_SETTING + "', true);\n"
+					+ "begin\n"
+					+ "  if tg_op = 'DELETE' then\n"
+					+ "    insert into customer_outbox (customer_id, op, origin) values (old.id, 'D', origin);\n"
+					+ "    return old;\n"
+					+ "  end if;\n"
+					+ "  insert into customer_outbox (customer_id, op, origin) values (new.id, substr(tg_op, 1, 1), origin);\n"
+					+ "  return new;\n"
+					+ "end\n"
+					+ "$$ language plpgsql",
+			"drop trigger if exists customer_outbox_capture on public.customer",
+			"create trigger customer_outbox_capture after insert or update or delete on public.customer"
+					+ " for each row execute function customer_outbox_capture()");
+
+	private static final RowMapper<OutboxEvent> EVENT_MAPPER = (rs, row) -> new OutboxEvent(rs.getLong(1),
+			rs.getLong(2), rs.getString(3), rs.getString(4), rs.getTimestamp(5).toInstant());
+
+	private final JdbcTemplate jdbcTemplate;
+	private final TransactionTemplate transactionTemplate;
+	private final String consumer;
+	//  the test database has no SKIP LOCKED, there a second poller waits for the lock instead
+	private String lockClause = "for update";
+
+	public CustomerOutbox(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate, String consumer) {
+		this.jdbcTemplate = jdbcTemplate;
+		this.transactionTemplate = transactionTemplate;
+		this.consumer = consumer;
+	}
+
+	/**
+	 * Creates the tables and the consumer's checkpoint if they are missing, and on postgres (re)creates the
+	 * trigger.  Safe to run on every node at every start.
+	 */
+	public void createSchema() {
+		this.transactionTemplate.executeWithoutResult(status -> {
+			TABLES.forEach(this.jdbcTemplate::execute);
+			if (isPostgres()) {
+				POSTGRES_TRIGGER.forEach(this.jdbcTemplate::execute);
+				this.lockClause = "for update skip locked";
+			} else {
+				log.info("not postgres, customer_outbox is only filled by whoever inserts into it");
+			}
+		});
+		try {
+			this.jdbcTemplate.update("insert into customer_outbox_checkpoint (consumer, last_id, updated_at)"
+					+ " select ?, 0, current_timestamp where not exists"
+					+ " (select 1 from customer_outbox_checkpoint where consumer = ?)", this.consumer, this.consumer);
+		} catch (DuplicateKeyException e) {
+			//  another node created it first
+		}
+	}
+
+	/**
+	 * Hands at most batchSize of the oldest rows to the handler and removes them once it returns.
+	 *
+	 * @return the rows handled, -1 when another node holds the checkpoint
+	 */
+	public int poll(int batchSize, Consumer<List<OutboxEvent>> handler) {
+		Integer handled = this.transactionTemplate.execute(status -> {
+			List<Long> checkpoint = this.jdbcTemplate.queryForList("select last_id from customer_outbox_checkpoint"
+					+ " where consumer = ? " + this.lockClause, Long.class, this.consumer);
+			if (checkpoint.isEmpty()) {
+				return -1;
+			}
+			List<OutboxEvent> events = this.jdbcTemplate.query("select id, customer_id, op, origin, created_at"
+					+ " from customer_outbox order by id fetch first ? rows only", EVENT_MAPPER, batchSize);
+			if (events.isEmpty()) {
+				return 0;
+			}
+			handler.accept(events);
+			this.jdbcTemplate.batchUpdate("delete from customer_outbox where id = ?", events, events.size(),
+					(statement, event) -> statement.setLong(1, event.getId()));
+			long lastId = Math.max(checkpoint.get(0), events.get(events.size() - 1).getId());
+			this.jdbcTemplate.update("update customer_outbox_checkpoint set last_id = ?, updated_at = current_timestamp"
+					+ " where consumer = ?", lastId, this.consumer);
+			return events.size();
+		});
+		return handled == null ? 0 : handled;
+	}
+
+	/**
+	 * Rows waiting and the age of the oldest, both clocks are the database's.
+	 */
+	public Lag lag() {
+		return this.jdbcTemplate.queryForObject("select count(*), min(created_at), current_timestamp from customer_outbox",
+				(rs, row) -> {
+					Timestamp oldest = rs.getTimestamp(2);
+					Timestamp now = rs.getTimestamp(3);
+					Duration age = oldest == null ? Duration.ZERO : Duration.between(oldest.toInstant(), now.toInstant());
+					return new Lag(rs.getLong(1), Math.max(0, age.toMillis()) / 1000.0);
+				});
+	}
+
+	/**
+	 * The highest outbox id the consumer has handled.
+	 */
+	public long checkpoint() {
+		List<Long> lastId = this.jdbcTemplate.queryForList("select last_id from customer_outbox_checkpoint where consumer = ?",
+				Long.class, this.consumer);
+		return lastId.isEmpty() ? 0 : lastId.get(0);
+	}
+
+	private boolean isPostgres() {
+		return Boolean.TRUE.equals(this.jdbcTemplate.execute((ConnectionCallback<Boolean>) connection ->
+				"PostgreSQL".equalsIgnoreCase(connection.getMetaData().getDatabaseProductName())));
+	}
+
+	@Data
+	@AllArgsConstructor
+	public static class Lag {
+
+		private long pending;
+
+		private double oldestSeconds;
+
+	}
+}
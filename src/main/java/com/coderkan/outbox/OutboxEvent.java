@@ -0,0 +1,35 @@
+package com.coderkan.outbox;
+
+import java.time.Instant;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * One row of the customer outbox: a customer row was inserted, updated or deleted.
+ */
+@AllArgsConstructor
+@NoArgsConstructor
+@Data
+public class OutboxEvent {
+
+	public static final String INSERT = "I";
+	public static final String UPDATE = "U";
+	public static final String DELETE = "D";
+	//  the origin of writes made through the customer service
+	public static final String SERVICE = "service";
+
+	private long id;
+
+	private long customerId;
+
+	//  I, U or D
+	private String op;
+
+	//  the writer's customer_cache.origin setting, null when it didn't set one
+	private String origin;
+
+	private Instant createdAt;
+
+}
@@ -0,0 +1,198 @@
+package com.coderkan.outbox;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.coderkan.cache.CacheBatchOperations;
+import com.coderkan.cache.TwoLevelCache;
+import com.coderkan.config.CustomerIdFilter;
+import com.coderkan.models.Customer;
+import com.coderkan.repositories.CustomerRepository;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Tails the customer outbox so writes that bypass the service - batch jobs, other services, psql - reach the
+ * customers cache within a poll interval instead of after the 30 minute TTL.
+ * Each batch is collapsed to the last change per customer and applied with one pipeline:
+ * <ul>
+ * <li>evict - DEL of every changed customer, the next read loads it</li>
+ * <li>refresh - the changed customers are read back in one query and SET, deleted ones are DELeted</li>
+ * </ul>
+ * Near cache entries are dropped on every node and inserted ids go into the customer id filter.
+ * Writes made through the service go through the trigger as well, but the service already put, evicted and
+ * filtered them - applying them again would evict every entry right after it was written - so customers whose
+ * last change has the {@link OutboxEvent#SERVICE} origin are skipped.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "cache.outbox", name = "enabled", havingValue = "true")
+public class OutboxPoller implements SmartLifecycle, Runnable {
+
+	private static final String CACHE = "customers";
+
+	@Autowired
+	private CacheBatchOperations cacheBatchOperations;
+	@Autowired
+	private CacheManager cacheManager;
+	@Autowired
+	private CustomerRepository customerRepository;
+	@Autowired
+	private CustomerIdFilter customerIdFilter;
+
+	@Value("${cache.outbox.mode:evict}")
+	private String mode;
+
+	@Value("${cache.outbox.batch-size:500}")
+	private int batchSize;
+
+	@Value("${cache.outbox.poll-interval-ms:500}")
+	private long pollInterval;
+
+	@Value("${cache.outbox.retry-backoff-ms:1000}")
+	private long retryBackoff;
+
+	private final CustomerOutbox outbox;
+	private final Counter appliedCounter;
+	private final Timer applyTimer;
+	private volatile CustomerOutbox.Lag lag = new CustomerOutbox.Lag(0, 0);
+	private volatile boolean running;
+	private Thread thread;
+
+	public OutboxPoller(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+						MeterRegistry meterRegistry, @Value("${cache.outbox.consumer:customers-cache}") String consumer) {
+		this.outbox = new CustomerOutbox(jdbcTemplate, new TransactionTemplate(transactionManager), consumer);
+		this.appliedCounter = Counter.builder("cache.outbox.applied")
+				.description("outbox rows applied to the customers cache")
+				.register(meterRegistry);
+		this.applyTimer = Timer.builder("cache.outbox.apply")
+				.description("time to apply one outbox batch to the cache")
+				.publishPercentiles(0.5, 0.95, 0.99)
+				.register(meterRegistry);
+		Gauge.builder("cache.outbox.lag", this, poller -> poller.lag.getPending())
+				.description("outbox rows not yet applied to the cache")
+				.register(meterRegistry);
+		Gauge.builder("cache.outbox.lag.seconds", this, poller -> poller.lag.getOldestSeconds())
+				.description("age of the oldest outbox row not yet applied")
+				.register(meterRegistry);
+		Gauge.builder("cache.outbox.checkpoint", outbox, CustomerOutbox::checkpoint)
+				.description("highest outbox id applied to the cache")
+				.register(meterRegistry);
+	}
+
+	@Override
+	public void start() {
+		if (!"evict".equalsIgnoreCase(mode) && !"refresh".equalsIgnoreCase(mode)) {
+			throw new IllegalArgumentException("unknown cache.outbox.mode " + mode);
+		}
+		outbox.createSchema();
+		this.running = true;
+		this.thread = new Thread(this, "outbox-poller");
+		this.thread.setDaemon(true);
+		this.thread.start();
+		log.info("outbox poller started, " + mode + " in batches of " + batchSize + " every " + pollInterval + " ms");
+	}
+
+	@Override
+	public void stop() {
+		this.running = false;
+		if (this.thread != null) {
+			try {
+				this.thread.join(pollInterval * 2);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		log.info("outbox poller stopped");
+	}
+
+	@Override
+	public boolean isRunning() {
+		return this.running;
+	}
+
+	@Override
+	public void run() {
+		while (running) {
+			try {
+				int handled = outbox.poll(batchSize, this::apply);
+				lag = outbox.lag();
+				//  a full batch means more are waiting, poll again straight away
+				if (handled < batchSize) {
+					Thread.sleep(pollInterval);
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			} catch (RuntimeException e) {
+				log.error("outbox poll failed, retrying in " + retryBackoff + " ms", e);
+				sleep(retryBackoff);
+			}
+		}
+	}
+
+	void apply(List<OutboxEvent> events) {
+		applyTimer.record(() -> {
+			//  last change per customer: the row lock orders writes to one customer, so their outbox ids do too
+			Map<Long, String> changes = new LinkedHashMap<>();
+			List<Long> inserted = new ArrayList<>();
+			events.forEach(event -> {
+				if (OutboxEvent.SERVICE.equals(event.getOrigin())) {
+					//  the service set the cache after this write, which covers earlier ones from elsewhere too
+					changes.remove(event.getCustomerId());
+					return;
+				}
+				changes.put(event.getCustomerId(), event.getOp());
+				if (OutboxEvent.INSERT.equals(event.getOp()))
+					inserted.add(event.getCustomerId());
+			});
+			List<Long> evicted = new ArrayList<>();
+			List<Long> refreshed = new ArrayList<>();
+			changes.forEach((id, op) -> {
+				if (OutboxEvent.DELETE.equals(op) || "evict".equalsIgnoreCase(mode))
+					evicted.add(id);
+				else
+					refreshed.add(id);
+			});
+			if (!refreshed.isEmpty()) {
+				Map<Long, Customer> found = new LinkedHashMap<>();
+				customerRepository.findAllById(refreshed).forEach(customer -> found.put(customer.getId(), customer));
+				//  gone again by the time it was read, a later outbox row deletes it anyway
+				refreshed.stream().filter(id -> !found.containsKey(id)).forEach(evicted::add);
+				cacheBatchOperations.putAll(CACHE, found);
+			}
+			cacheBatchOperations.evictAll(CACHE, evicted);
+			if (cacheManager.getCache(CACHE) instanceof TwoLevelCache nearCache) {
+				changes.keySet().forEach(nearCache::evictNear);
+			}
+			customerIdFilter.added(inserted);
+		});
+		appliedCounter.increment(events.size());
+		log.debug("applied " + events.size() + " outbox rows, " + events.get(events.size() - 1).getId() + " last");
+	}
+
+	private void sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			running = false;
+		}
+	}
+}
@@ -0,0 +1,74 @@
+package com.coderkan.repositories;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.coderkan.models.Customer;
+
+/**
+ * The customer fields a PATCH may change, by their JSON name, and the columns they are stored in.
+ * A field sent as null is set to null, a field left out is left alone.
+ */
+public final class CustomerPatch {
+
+	private static final Map<String, String> COLUMNS = new LinkedHashMap<>();
+
+	static {
+		COLUMNS.put("name", "name");
+		COLUMNS.put("contactName", "contact_name");
+		COLUMNS.put("address", "address");
+		COLUMNS.put("city", "city");
+		COLUMNS.put("postalCode", "postal_code");
+		COLUMNS.put("country", "country");
+	}
+
+	//  the whole row, so the statement that changes it also returns what is cached
+	static final String RETURNING = " returning id, name, contact_name, address, city, postal_code, country";
+
+	private CustomerPatch() {
+	}
+
+	/**
+	 * Column to new value for every changed field, always in table order so the same fields give the
+	 * same statement.
+	 *
+	 * @throws IllegalArgumentException for no fields or a field that isn't patchable
+	 */
+	public static Map<String, String> columns(Map<String, String> changes) {
+		if (changes.isEmpty()) {
+			throw new IllegalArgumentException("nothing to change, patchable fields are " + COLUMNS.keySet());
+		}
+		for (String field : changes.keySet()) {
+			if (!COLUMNS.containsKey(field)) {
+				throw new IllegalArgumentException("can't patch " + field + ", patchable fields are " + COLUMNS.keySet());
+			}
+		}
+		Map<String, String> columns = new LinkedHashMap<>();
+		COLUMNS.forEach((field, column) -> {
+			if (changes.containsKey(field)) {
+				columns.put(column, changes.get(field));
+			}
+		});
+		return columns;
+	}
+
+	/**
+	 * A copy of the customer with the changed fields, the customer itself may be shared by a near cache.
+	 */
+	public static Customer apply(Customer current, Map<String, String> changes) {
+		Customer customer = new Customer(current.getId(), current.getName(), current.getContactName(),
+				current.getAddress(), current.getCity(), current.getPostalCode(), current.getCountry());
+		changes.forEach((field, value) -> {
+			switch (field) {
+				case "name" -> customer.setName(value);
+				case "contactName" -> customer.setContactName(value);
+				case "address" -> customer.setAddress(value);
+				case "city" -> customer.setCity(value);
+				case "postalCode" -> customer.setPostalCode(value);
+				case "country" -> customer.setCountry(value);
+				default -> throw new IllegalArgumentException("can't patch " + field + ", patchable fields are " + COLUMNS.keySet());
+			}
+		});
+		return customer;
+	}
+}
@@ -1,10 +1,22 @@
 package com.coderkan.repositories;
 
+import java.util.List;
+
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 import com.coderkan.models.Customer;
 
-public interface CustomerRepository extends JpaRepository<Customer, Long>{
+public interface CustomerRepository extends JpaRepository<Customer, Long>, CustomerRepositoryCustom {
 
-}
+	//  keyset page of ids only, answered from the primary key index
+	@Query("select c.id from Customer c where c.id > :after order by c.id")
+	List<Long> findIdsAfter(@Param("after") long after, Pageable pageable);
 
+	//  ids come from a sequence, so the highest ids are the newest customers
+	@Query("select c.id from Customer c order by c.id desc")
+	List<Long> findLatestIds(Pageable pageable);
+
+}
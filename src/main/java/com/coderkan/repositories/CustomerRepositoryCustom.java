@@ -0,0 +1,43 @@
+package com.coderkan.repositories;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import com.coderkan.models.Customer;
+
+/**
+ * Plain JDBC operations used where JPA's one entity at a time save is too slow.
+ */
+public interface CustomerRepositoryCustom {
+
+	/**
+	 * Reserve the next customer id from the entity's id generator without inserting a row.
+	 */
+	long nextId();
+
+	/**
+	 * Persist new customers in one transaction, flushed as JDBC batches and cleared from the
+	 * persistence context afterwards so memory doesn't grow with the load.
+	 */
+	void insertBatch(List<Customer> customers);
+
+	/**
+	 * Hand every customer to the consumer as it is read from the cursor, detaching each one so
+	 * memory stays flat however big the table is.
+	 */
+	void forEachCustomer(Consumer<Customer> consumer);
+
+	/**
+	 * Insert or update the customers, change only the given fields of the patched ids and delete the ids,
+	 * in one transaction using JDBC batches.
+	 */
+	void writeBatch(Collection<Customer> upserts, Map<Long, Map<String, String>> patches, Collection<Long> deletes);
+
+	/**
+	 * Change only the given fields, see {@link CustomerPatch}, with one UPDATE ... RETURNING.
+	 * Returns the updated customer, null if there is none with the id.
+	 */
+	Customer patch(long id, Map<String, String> changes);
+}
@@ -0,0 +1,140 @@
+package com.coderkan.repositories;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.id.IdentifierGenerator;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.coderkan.models.Customer;
+
+import org.hibernate.jpa.HibernateHints;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import lombok.extern.slf4j.Slf4j;
+
+@Slf4j
+public class CustomerRepositoryImpl implements CustomerRepositoryCustom {
+
+	private static final String UPSERT_SQL = "insert into public.customer "
+			+ "(id, name, contact_name, address, city, postal_code, country) values (?, ?, ?, ?, ?, ?, ?) "
+			+ "on conflict (id) do update set name = excluded.name, contact_name = excluded.contact_name, "
+			+ "address = excluded.address, city = excluded.city, postal_code = excluded.postal_code, "
+			+ "country = excluded.country";
+
+	private static final String DELETE_SQL = "delete from public.customer where id = ?";
+
+	private static final RowMapper<Customer> CUSTOMER_MAPPER = (rs, row) -> new Customer(rs.getLong("id"),
+			rs.getString("name"), rs.getString("contact_name"), rs.getString("address"), rs.getString("city"),
+			rs.getString("postal_code"), rs.getString("country"));
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+	@PersistenceContext
+	private EntityManager entityManager;
+
+	@Value("${spring.jpa.properties.hibernate.jdbc.batch_size:500}")
+	private int batchSize;
+
+	@Value("${spring.jpa.properties.hibernate.jdbc.fetch_size:500}")
+	private int streamFetchSize;
+
+	//  same generator as persist() so ids handed out here never collide with pooled ones
+	@Transactional
+	@Override
+	public long nextId() {
+		SharedSessionContractImplementor session = this.entityManager.unwrap(SharedSessionContractImplementor.class);
+		IdentifierGenerator generator = (IdentifierGenerator) session.getFactory().getMappingMetamodel()
+				.getEntityDescriptor(Customer.class).getGenerator();
+		return (Long) generator.generate(session, null);
+	}
+
+	@Transactional
+	@Override
+	public void insertBatch(List<Customer> customers) {
+		for (Customer customer : customers) {
+			this.entityManager.persist(customer);
+		}
+		this.entityManager.flush();
+		this.entityManager.clear();
+	}
+
+	@Transactional(readOnly = true)
+	@Override
+	public void forEachCustomer(Consumer<Customer> consumer) {
+		//  postgres only uses a cursor with a fetch size inside a transaction, otherwise it reads the whole result
+		try (Stream<Customer> customers = this.entityManager
+				.createQuery("select c from Customer c order by c.id", Customer.class)
+				.setHint(HibernateHints.HINT_FETCH_SIZE, streamFetchSize)
+				.setHint(HibernateHints.HINT_READ_ONLY, true)
+				.getResultStream()) {
+			customers.forEach(customer -> {
+				this.entityManager.detach(customer);
+				consumer.accept(customer);
+			});
+		}
+	}
+
+	@Transactional
+	@Override
+	public void writeBatch(Collection<Customer> upserts, Map<Long, Map<String, String>> patches, Collection<Long> deletes) {
+		if (!upserts.isEmpty()) {
+			this.jdbcTemplate.batchUpdate(UPSERT_SQL, upserts, batchSize, (ps, customer) -> {
+				ps.setLong(1, customer.getId());
+				ps.setString(2, customer.getName());
+				ps.setString(3, customer.getContactName());
+				ps.setString(4, customer.getAddress());
+				ps.setString(5, customer.getCity());
+				ps.setString(6, customer.getPostalCode());
+				ps.setString(7, customer.getCountry());
+			});
+		}
+		//  one JDBC batch per set of changed columns, each set is its own statement
+		Map<String, List<Object[]>> updates = new LinkedHashMap<>();
+		patches.forEach((id, changes) -> {
+			Map<String, String> columns = CustomerPatch.columns(changes);
+			List<Object> args = new ArrayList<>(columns.values());
+			args.add(id);
+			updates.computeIfAbsent(updateSql(columns.keySet()), sql -> new ArrayList<>()).add(args.toArray());
+		});
+		updates.forEach((sql, args) -> this.jdbcTemplate.batchUpdate(sql, args));
+		if (!deletes.isEmpty()) {
+			List<Object[]> args = new ArrayList<>(deletes.size());
+			deletes.forEach(id -> args.add(new Object[] { id }));
+			this.jdbcTemplate.batchUpdate(DELETE_SQL, args);
+		}
+		log.debug("wrote batch of " + upserts.size() + " upserts, " + patches.size() + " patches and "
+				+ deletes.size() + " deletes");
+	}
+
+	//  one round trip instead of findById plus save, and no dirty checking
+	@Transactional
+	@Override
+	public Customer patch(long id, Map<String, String> changes) {
+		Map<String, String> columns = CustomerPatch.columns(changes);
+		List<Object> args = new ArrayList<>(columns.values());
+		args.add(id);
+		List<Customer> updated = this.jdbcTemplate.query(updateSql(columns.keySet()) + CustomerPatch.RETURNING,
+				CUSTOMER_MAPPER, args.toArray());
+		return updated.isEmpty() ? null : updated.get(0);
+	}
+
+	private static String updateSql(Set<String> columns) {
+		StringJoiner set = new StringJoiner(", ");
+		columns.forEach(column -> set.add(column + " = ?"));
+		return "update public.customer set " + set + " where id = ?";
+	}
+}
@@ -0,0 +1,20 @@
+package com.coderkan.repositories;
+
+import org.springframework.data.r2dbc.repository.Query;
+import org.springframework.data.r2dbc.repository.R2dbcRepository;
+import org.springframework.data.repository.query.Param;
+
+import com.coderkan.models.Customer;
+
+import reactor.core.publisher.Flux;
+
+/**
+ * R2DBC view of the customer table for the reactive profile.  Same table and mapping as {@link CustomerRepository}.
+ */
+public interface ReactiveCustomerRepository extends R2dbcRepository<Customer, Long>, ReactiveCustomerRepositoryCustom {
+
+	//  keyset page of ids only, answered from the primary key index
+	@Query("select id from public.customer where id > :after order by id limit :limit")
+	Flux<Long> findIdsAfter(@Param("after") long after, @Param("limit") int limit);
+
+}
@@ -0,0 +1,28 @@
+package com.coderkan.repositories;
+
+import java.util.List;
+import java.util.Map;
+
+import com.coderkan.models.Customer;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Statement level R2DBC operations the generated repository methods can't express.
+ */
+public interface ReactiveCustomerRepositoryCustom {
+
+	/**
+	 * Insert new customers in one transaction as one batched statement.  Ids come from the entity's sequence in
+	 * the same pooled blocks hibernate uses, so they never collide with the servlet service's.
+	 * Emits the customers with their ids set, in order.
+	 */
+	Flux<Customer> insertAll(List<Customer> customers);
+
+	/**
+	 * Change only the given fields, see {@link CustomerPatch}, with one UPDATE ... RETURNING.
+	 * Emits the updated customer, empty if there is none with the id.
+	 */
+	Mono<Customer> patch(long id, Map<String, String> changes);
+}
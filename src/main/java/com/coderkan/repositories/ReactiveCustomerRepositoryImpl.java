@@ -0,0 +1,156 @@
+package com.coderkan.repositories;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.StringJoiner;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.r2dbc.core.DatabaseClient;
+
+import com.coderkan.models.Customer;
+
+import io.r2dbc.spi.Connection;
+import io.r2dbc.spi.Result;
+import io.r2dbc.spi.Statement;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+public class ReactiveCustomerRepositoryImpl implements ReactiveCustomerRepositoryCustom {
+
+	//  ids are allocated up front, see nextIds
+	private static final String INSERT_SQL = "insert into public.customer "
+			+ "(id, name, contact_name, address, city, postal_code, country) "
+			+ "values ($1, $2, $3, $4, $5, $6, $7)";
+
+	private static final String NEXTVAL_SQL = "select nextval('public.customer_id_seq') as id "
+			+ "from generate_series(1, $1)";
+
+	@Autowired
+	private DatabaseClient databaseClient;
+
+	//  the current block, used up when next > hi
+	private final Object blockLock = new Object();
+	private long blockNext = 1;
+	private long blockHi = 0;
+
+	@Override
+	public Flux<Customer> insertAll(List<Customer> customers) {
+		if (customers.isEmpty()) {
+			return Flux.empty();
+		}
+		return nextIds(customers.size())
+				.flatMap(ids -> {
+					for (int i = 0; i < customers.size(); i++) {
+						customers.get(i).setId(ids.get(i));
+					}
+					return this.databaseClient.inConnection(connection -> insert(connection, customers));
+				})
+				.thenMany(Flux.fromIterable(customers));
+	}
+
+	//  the blocks hibernate's pooled optimizer hands out on the servlet side: a nextval of v is the top of the
+	//  block v - ID_ALLOCATION_SIZE + 1 .. v, the top included.  one nextval per block rather than per row, and
+	//  the rest of a block is kept for the next insert.  a block never reaches below 1, the first value of a new
+	//  sequence is a block of just that id
+	private Mono<List<Long>> nextIds(int count) {
+		List<Long> ids = new ArrayList<>(count);
+		synchronized (this.blockLock) {
+			while (ids.size() < count && this.blockNext <= this.blockHi) {
+				ids.add(this.blockNext++);
+			}
+		}
+		if (ids.size() == count) {
+			return Mono.just(ids);
+		}
+		int blocks = (count - ids.size() + Customer.ID_ALLOCATION_SIZE - 1) / Customer.ID_ALLOCATION_SIZE;
+		return this.databaseClient.sql(NEXTVAL_SQL).bind(0, blocks)
+				.map((row, metadata) -> row.get("id", Long.class))
+				.all()
+				.collectList()
+				.flatMap(tops -> {
+					long next = 1;
+					long hi = 0;
+					for (long top : tops) {
+						next = Math.max(1, top - Customer.ID_ALLOCATION_SIZE + 1);
+						hi = top;
+						while (ids.size() < count && next <= hi) {
+							ids.add(next++);
+						}
+					}
+					if (next <= hi) {
+						synchronized (this.blockLock) {
+							//  another insert may have taken a block meanwhile, the rest of this one is then skipped
+							if (this.blockNext > this.blockHi) {
+								this.blockNext = next;
+								this.blockHi = hi;
+							}
+						}
+					}
+					if (ids.size() == count) {
+						return Mono.just(ids);
+					}
+					return nextIds(count - ids.size()).map(more -> {
+						ids.addAll(more);
+						return ids;
+					});
+				});
+	}
+
+	private Mono<Void> insert(Connection connection, List<Customer> customers) {
+		Statement statement = connection.createStatement(INSERT_SQL);
+		for (int i = 0; i < customers.size(); i++) {
+			if (i > 0) {
+				statement.add();
+			}
+			Customer customer = customers.get(i);
+			statement.bind(0, customer.getId());
+			bind(statement, 1, customer.getName());
+			bind(statement, 2, customer.getContactName());
+			bind(statement, 3, customer.getAddress());
+			bind(statement, 4, customer.getCity());
+			bind(statement, 5, customer.getPostalCode());
+			bind(statement, 6, customer.getCountry());
+		}
+		return Flux.from(connection.beginTransaction())
+				.thenMany(statement.execute())
+				.concatMap(Result::getRowsUpdated)
+				.then(Mono.from(connection.commitTransaction()))
+				.onErrorResume(e -> Mono.from(connection.rollbackTransaction()).then(Mono.error(e)));
+	}
+
+	@Override
+	public Mono<Customer> patch(long id, Map<String, String> changes) {
+		Map<String, String> columns;
+		try {
+			columns = CustomerPatch.columns(changes);
+		} catch (IllegalArgumentException e) {
+			return Mono.error(e);
+		}
+		StringJoiner set = new StringJoiner(", ");
+		int index = 1;
+		for (String column : columns.keySet()) {
+			set.add(column + " = $" + index++);
+		}
+		DatabaseClient.GenericExecuteSpec spec = this.databaseClient.sql("update public.customer set " + set
+				+ " where id = $" + index + CustomerPatch.RETURNING);
+		index = 0;
+		for (String value : columns.values()) {
+			spec = value == null ? spec.bindNull(index++, String.class) : spec.bind(index++, value);
+		}
+		return spec.bind(index, id)
+				.map((row, metadata) -> new Customer(row.get("id", Long.class), row.get("name", String.class),
+						row.get("contact_name", String.class), row.get("address", String.class),
+						row.get("city", String.class), row.get("postal_code", String.class),
+						row.get("country", String.class)))
+				.one();
+	}
+
+	private static void bind(Statement statement, int index, String value) {
+		if (value == null) {
+			statement.bindNull(index, String.class);
+		} else {
+			statement.bind(index, value);
+		}
+	}
+}
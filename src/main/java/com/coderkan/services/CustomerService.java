@@ -1,21 +1,51 @@
 package com.coderkan.services;
 
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
 
+import com.coderkan.models.BulkLoadResult;
 import com.coderkan.models.Customer;
+import com.coderkan.models.CustomerPage;
+import com.coderkan.models.EvictionProgress;
 import org.springframework.cache.annotation.CacheEvict;
 
 public interface CustomerService {
 
 	public List<Customer> getAll();
 
+	public CustomerPage getPage(long after, int limit);
+
+	public void exportAll(Consumer<Customer> consumer);
+
 	public Customer add(Customer customer);
 
+	public BulkLoadResult addAll(Iterator<Customer> customers, boolean useCache);
+
 	public Customer update(Customer customer);
 
-	void evictCache();
+	public Customer patch(long id, Map<String, String> changes);
+
+	EvictionProgress evictCache();
+
+	EvictionProgress getEvictionProgress();
 
 	public void delete(long id);
 
 	public Customer getCustomerById(long id);
+
+	/**
+	 * The customer's entry exactly as redis stores it, null when it isn't cached there or this node's near
+	 * cache has it - a near hit is cheaper than any redis read, use {@link #getCustomerById(long)} then.
+	 */
+	public byte[] getCachedCustomerValue(long id);
+
+	/**
+	 * The ETag of the customer's cache entry, the same whether it is read back from redis or serialized again.
+	 */
+	public String getCustomerETag(Customer customer);
+
+	public List<Customer> getCustomersByIds(Collection<Long> ids);
 }
@@ -0,0 +1,42 @@
+package com.coderkan.services;
+
+import java.util.Collection;
+import java.util.Map;
+
+import com.coderkan.models.BulkLoadResult;
+import com.coderkan.models.Customer;
+import com.coderkan.models.CustomerPage;
+import com.coderkan.models.EvictionProgress;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Non-blocking counterpart of {@link CustomerService} for the reactive profile, same cache entries and semantics.
+ */
+public interface ReactiveCustomerService {
+
+	public Flux<Customer> getAll();
+
+	public Mono<CustomerPage> getPage(long after, int limit);
+
+	public Flux<Customer> exportAll();
+
+	public Mono<Customer> add(Customer customer);
+
+	public Mono<BulkLoadResult> addAll(Flux<Customer> customers, boolean useCache);
+
+	public Mono<Customer> update(Customer customer);
+
+	public Mono<Customer> patch(long id, Map<String, String> changes);
+
+	public Mono<EvictionProgress> evictCache();
+
+	public Mono<EvictionProgress> getEvictionProgress();
+
+	public Mono<Void> delete(long id);
+
+	public Mono<Customer> getCustomerById(long id);
+
+	public Flux<Customer> getCustomersByIds(Collection<Long> ids);
+}
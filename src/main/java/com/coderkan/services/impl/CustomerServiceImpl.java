@@ -1,19 +1,41 @@
 package com.coderkan.services.impl;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Consumer;
 
 import io.micrometer.observation.Observation;
 import io.micrometer.observation.ObservationRegistry;
 import io.micrometer.observation.annotation.Observed;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.*;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 
+import com.coderkan.cache.CacheBatchOperations;
+import com.coderkan.cache.CacheEvictor;
+import com.coderkan.cache.CacheMetrics;
+import com.coderkan.cache.CustomerCodec;
+import com.coderkan.cache.SingleFlightCache;
+import com.coderkan.cache.TwoLevelCache;
+import com.coderkan.config.CustomerIdFilter;
+import com.coderkan.models.BulkLoadResult;
 import com.coderkan.models.Customer;
+import com.coderkan.models.CustomerPage;
+import com.coderkan.models.EvictionProgress;
+import com.coderkan.repositories.CustomerPatch;
 import com.coderkan.repositories.CustomerRepository;
 import com.coderkan.services.CustomerService;
+import com.coderkan.writebehind.WriteBehindQueue;
 
 @Slf4j
 @Observed(name="CusterServiceImpl")
@@ -25,6 +47,24 @@ public class CustomerServiceImpl implements CustomerService {
 	private CustomerRepository customerRepository;
 	@Autowired
 	private ObservationRegistry observationRegistry;
+	@Autowired
+	private WriteBehindQueue writeBehindQueue;
+	@Autowired
+	private CacheManager cacheManager;
+	@Autowired
+	private CacheBatchOperations cacheBatchOperations;
+	@Autowired
+	private CacheMetrics cacheMetrics;
+	@Autowired
+	private CustomerIdFilter customerIdFilter;
+	@Autowired
+	private CacheEvictor cacheEvictor;
+
+	@Value("${spring.jpa.properties.hibernate.jdbc.batch_size:500}")
+	private int bulkBatchSize;
+
+	@Value("${cache.pass-through.enabled:true}")
+	private boolean passThrough;
 
 	public String sayHello() {
 		return Observation
@@ -35,20 +75,151 @@ public class CustomerServiceImpl implements CustomerService {
 	private String sayHelloNoObserver() {
 		return "Hello World!";
 	}
-	@Cacheable
+	//  no longer @Cacheable - the whole table as one value was never invalidated and grew without bound.
+	//  use getPage, which is assembled from the per customer entries
 	@Override
 	public List<Customer> getAll() {
 		waitSomeTime();
 		return this.customerRepository.findAll();
 	}
 
+	//  straight from the database cursor, the cache is not involved
+	@Override
+	public void exportAll(Consumer<Customer> consumer) {
+		this.customerRepository.forEachCustomer(consumer);
+	}
+
+	@Override
+	public CustomerPage getPage(long after, int limit) {
+		List<Long> ids = this.customerRepository.findIdsAfter(after, PageRequest.of(0, limit));
+		List<Customer> customers = getCustomersByIds(ids);
+		Long next = ids.size() == limit ? ids.get(ids.size() - 1) : null;
+		return new CustomerPage(customers, next);
+	}
+
+	//  cache first for all ids in one round trip, then one IN query for the misses which are
+	//  written back in one pipeline.  ids that don't exist are left out, the ones the id filter
+	//  knows don't exist aren't even looked up
+	@Override
+	public List<Customer> getCustomersByIds(Collection<Long> ids) {
+		List<Long> candidates = new ArrayList<>(ids.size());
+		for (Long id : ids) {
+			if (customerIdFilter.mightExist(id))
+				candidates.add(id);
+		}
+		Map<Long, Customer> found = getCached(candidates);
+		List<Long> misses = new ArrayList<>();
+		for (Long id : candidates) {
+			if (!found.containsKey(id))
+				misses.add(id);
+		}
+		if (!misses.isEmpty()) {
+			log.info("loading " + misses.size() + " of " + ids.size() + " customers from database");
+			Map<Long, Customer> loaded = new LinkedHashMap<>();
+			cacheMetrics.loadTimer("customers").record(() -> {
+				waitSomeTime();
+				this.customerRepository.findAllById(misses).forEach(c -> loaded.put(c.getId(), c));
+			});
+			cacheBatchOperations.putAll("customers", loaded);
+			found.putAll(loaded);
+		}
+		List<Customer> customers = new ArrayList<>(ids.size());
+		for (Long id : ids) {
+			Customer customer = found.get(id);
+			if (customer != null)
+				customers.add(customer);
+		}
+		return customers;
+	}
+
+	//  near cache first when it is on, then one MGET for the rest
+	private Map<Long, Customer> getCached(Collection<Long> ids) {
+		Map<Long, Customer> found = new LinkedHashMap<>();
+		Collection<Long> remaining = ids;
+		if (cacheManager.getCache("customers") instanceof TwoLevelCache twoLevelCache) {
+			remaining = new ArrayList<>();
+			for (Long id : ids) {
+				Object value = twoLevelCache.getLocalCache().getIfPresent(String.valueOf(id));
+				if (value instanceof Customer customer)
+					found.put(id, customer);
+				else
+					remaining.add(id);
+			}
+		}
+		cacheBatchOperations.getAll("customers", remaining).forEach((id, value) -> {
+			if (value instanceof Customer customer)
+				found.put((Long) id, customer);
+		});
+		return found;
+	}
+
 	// @CacheEvict(key = "#id", condition = "#id!=null")
 	//  Switching to a CachePut from a CacheEvict
 	@CachePut(key = "#customer.id")
 	@Override
 	public Customer add(Customer customer) {
+		if (writeBehindQueue.isEnabled()) {
+			//  id comes from the database sequence so the cache key is final before the row exists
+			customer.setId(this.customerRepository.nextId());
+			log.info(" write to stream");
+			writeBehindQueue.upsert(customer);
+			customerIdFilter.added(List.of(customer.getId()));
+			return customer;
+		}
 		log.info(" write to database");
-		return this.customerRepository.save(customer);
+		Customer created = this.customerRepository.save(customer);
+		customerIdFilter.added(List.of(created.getId()));
+		return created;
+	}
+
+	//  bypasses the cache annotations, each batch is one transaction of batched inserts
+	//  followed by one pipelined round trip to redis.  a customer that can't be read ends the load: the ones
+	//  before it are loaded, and the result has their count and the error
+	@Override
+	public BulkLoadResult addAll(Iterator<Customer> customers, boolean useCache) {
+		long start = System.nanoTime();
+		long rows = 0;
+		String error = null;
+		List<Customer> batch = new ArrayList<>(bulkBatchSize);
+		while (true) {
+			Customer customer;
+			try {
+				if (!customers.hasNext())
+					break;
+				customer = customers.next();
+			} catch (RuntimeException e) {
+				error = e.getMessage();
+				break;
+			}
+			customer.setId(0);
+			batch.add(customer);
+			if (batch.size() == bulkBatchSize) {
+				rows += insertBatch(batch, useCache);
+				batch.clear();
+			}
+		}
+		rows += insertBatch(batch, useCache);
+		long elapsedMillis = Math.max(1, (System.nanoTime() - start) / 1_000_000);
+		double rowsPerSecond = rows * 1000.0 / elapsedMillis;
+		if (error != null)
+			log.warn("bulk load stopped after " + rows + " customers: " + error);
+		else
+			log.info("bulk loaded " + rows + " customers in " + elapsedMillis + " ms, " + (long) rowsPerSecond + " rows/s");
+		return new BulkLoadResult(rows, useCache, elapsedMillis, rowsPerSecond, error);
+	}
+
+	private int insertBatch(List<Customer> batch, boolean useCache) {
+		if (batch.isEmpty()) {
+			return 0;
+		}
+		this.customerRepository.insertBatch(batch);
+		Map<Long, Customer> entries = new LinkedHashMap<>();
+		batch.forEach(c -> entries.put(c.getId(), c));
+		customerIdFilter.added(entries.keySet());
+		if (useCache) {
+			cacheBatchOperations.putAll("customers", entries);
+		}
+		return batch.size();
 	}
 
 	//  this causes all the entries to be deleted if any entries are updated
@@ -60,6 +231,14 @@ public class CustomerServiceImpl implements CustomerService {
 	@CachePut(key = "#customer.id")
 	@Override
 	public Customer update(Customer customer) {
+		if (writeBehindQueue.isEnabled()) {
+			//  a customer added moments ago may only exist in the cache and the stream
+			Cache cache = cacheManager.getCache("customers");
+			if (cache.get(customer.getId()) == null && !this.customerRepository.existsById(customer.getId()))
+				return null;
+			writeBehindQueue.upsert(customer);
+			return customer;
+		}
 		Optional<Customer> optCustomer = this.customerRepository.findById(customer.getId());
 		if (!optCustomer.isPresent())
 			return null;
@@ -72,27 +251,102 @@ public class CustomerServiceImpl implements CustomerService {
 		repCustomer.setCountry(customer.getCountry());
 		return this.customerRepository.save(repCustomer);
 	}
-	@CacheEvict(allEntries = true)
+	//  one UPDATE ... RETURNING, and the returned row is cached with one SET - no read of the row or the entry.
+	//  not @CachePut: with write-behind the entry is changed in redis, a SET of the result could undo a
+	//  concurrent patch
+	@Override
+	public Customer patch(long id, Map<String, String> changes) {
+		CustomerPatch.columns(changes);
+		Cache cache = cacheManager.getCache("customers");
+		if (writeBehindQueue.isEnabled()) {
+			//  only the changed fields go through the stream, and the cached copy is merged with a compare-and-set,
+			//  so concurrent patches of different fields all survive.  two patches of one field race like two PUTs
+			Customer patched = (Customer) cacheBatchOperations.replace("customers", id,
+					current -> CustomerPatch.apply((Customer) current, changes));
+			if (patched == null) {
+				Customer stored = this.customerRepository.findById(id).orElse(null);
+				if (stored == null)
+					return null;
+				patched = CustomerPatch.apply(stored, changes);
+			}
+			writeBehindQueue.patch(id, changes);
+			if (cache instanceof TwoLevelCache nearCache)
+				nearCache.evictNear(id);
+			return patched;
+		}
+		Customer patched = this.customerRepository.patch(id, changes);
+		if (patched != null)
+			cache.put(id, patched);
+		return patched;
+	}
+
+	//  runs in the background, or in one INCR with generation eviction
+	@Override
+	public EvictionProgress evictCache() {
+		return cacheEvictor.evictAll("customers");
+	}
+
 	@Override
-	public void evictCache() {
-		log.info("all entries have been evicted");
+	public EvictionProgress getEvictionProgress() {
+		return cacheEvictor.progress("customers");
 	}
 
 	@Caching(evict = { @CacheEvict(key = "#id", condition = "#id!=null")})
 	@Override
 	public void delete(long id) {
+		customerIdFilter.deleted(id);
+		if (writeBehindQueue.isEnabled()) {
+			//  goes through the stream as well so it can't overtake a pending add or update.  a read before the
+			//  flush reloads the row, the worker evicts it again once the row is deleted
+			writeBehindQueue.delete(id);
+			return;
+		}
 		if(this.customerRepository.existsById(id)) {
 			this.customerRepository.deleteById(id);
 		}
 	}
 
-	@Cacheable(key = "#id", unless = "#result == null")
+	//  sync routes misses through SingleFlightCache so concurrent misses on one id run a single load.
+	//  sync can't be combined with unless, SingleFlightCache itself never caches a null result
+	@Cacheable(key = "#id", sync = true)
 	@Override
 	public Customer getCustomerById(long id) {
+		return loadCustomer(id);
+	}
+
+	//  read the way getCustomerById's caching is: an L1 hit is left to getCustomerById, a redis hit is put in L1
+	//  and gets the refresh ahead check, and a miss is loaded by getCustomerById.  a JSON entry from before the
+	//  binary codec is left to getCustomerById as well, so every response for a customer has the same ETag
+	@Override
+	public byte[] getCachedCustomerValue(long id) {
+		if (!passThrough)
+			return null;
+		Cache cache = cacheManager.getCache("customers");
+		TwoLevelCache nearCache = null;
+		if (cache instanceof TwoLevelCache twoLevelCache) {
+			if (twoLevelCache.isNear(id))
+				return null;
+			nearCache = twoLevelCache;
+			cache = twoLevelCache.getRedisCache();
+		}
+		byte[] value = cache instanceof SingleFlightCache singleFlightCache
+				? singleFlightCache.getRaw(id, () -> loadCustomer(id))
+				: cacheBatchOperations.getRaw("customers", id);
+		if (value != null && nearCache != null)
+			nearCache.putNear(id, cacheBatchOperations.deserializeValue("customers", value));
+		return CustomerCodec.isCustomer(value) ? value : null;
+	}
+
+	private Customer loadCustomer(long id) {
 		waitSomeTime();
 		return this.customerRepository.findById(id).orElse(null);
 	}
 
+	@Override
+	public String getCustomerETag(Customer customer) {
+		return CacheBatchOperations.etag(cacheBatchOperations.serializeValue("customers", customer));
+	}
+
 	private void waitSomeTime() {
 		log.info("Long Wait Begin");
 		try {
@@ -0,0 +1,232 @@
+package com.coderkan.services.impl;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ServerWebInputException;
+
+import com.coderkan.cache.CacheEvictor;
+import com.coderkan.cache.CacheMetrics;
+import com.coderkan.cache.ReactiveCacheOperations;
+import com.coderkan.config.CustomerIdFilter;
+import com.coderkan.models.BulkLoadResult;
+import com.coderkan.models.Customer;
+import com.coderkan.models.CustomerPage;
+import com.coderkan.models.EvictionProgress;
+import com.coderkan.repositories.ReactiveCustomerRepository;
+import com.coderkan.services.ReactiveCustomerService;
+
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Cache-aside over R2DBC and the reactive redis client, nothing here blocks a thread.
+ * Writes go straight to the database, the write-behind stream is only used by the servlet service.
+ */
+@Slf4j
+@Profile("reactive")
+@Service
+public class ReactiveCustomerServiceImpl implements ReactiveCustomerService {
+
+	private static final String CACHE = "customers";
+
+	@Autowired
+	private ReactiveCustomerRepository customerRepository;
+	@Autowired
+	private ReactiveCacheOperations cacheOperations;
+	@Autowired
+	private CacheMetrics cacheMetrics;
+	@Autowired
+	private CustomerIdFilter customerIdFilter;
+	@Autowired
+	private CacheEvictor cacheEvictor;
+	@Autowired
+	private ReactiveRedisTemplate<byte[], byte[]> reactiveCacheTemplate;
+
+	@Value("${spring.jpa.properties.hibernate.jdbc.batch_size:500}")
+	private int bulkBatchSize;
+
+	@Override
+	public Flux<Customer> getAll() {
+		return waitSomeTime().thenMany(this.customerRepository.findAll());
+	}
+
+	//  straight from the database, rows are read as the client takes them
+	@Override
+	public Flux<Customer> exportAll() {
+		return this.customerRepository.findAll(Sort.by("id"));
+	}
+
+	@Override
+	public Mono<CustomerPage> getPage(long after, int limit) {
+		return this.customerRepository.findIdsAfter(after, limit).collectList()
+				.flatMap(ids -> getCustomersByIds(ids).collectList().map(customers -> {
+					Long next = ids.size() == limit ? ids.get(ids.size() - 1) : null;
+					return new CustomerPage(customers, next);
+				}));
+	}
+
+	//  cache first for all ids in one round trip, then one IN query for the misses which are
+	//  written back together.  ids that don't exist are left out, the ones the id filter knows don't
+	//  exist aren't even looked up
+	@Override
+	public Flux<Customer> getCustomersByIds(Collection<Long> ids) {
+		List<Long> candidates = new ArrayList<>(ids.size());
+		for (Long id : ids) {
+			if (this.customerIdFilter.mightExist(id))
+				candidates.add(id);
+		}
+		return this.cacheOperations.getAll(CACHE, candidates, Customer.class).flatMapMany(found -> {
+			List<Long> misses = new ArrayList<>();
+			for (Long id : candidates) {
+				if (!found.containsKey(id))
+					misses.add(id);
+			}
+			Mono<Map<Object, Customer>> loaded = Mono.just(Map.of());
+			if (!misses.isEmpty()) {
+				log.info("loading " + misses.size() + " of " + ids.size() + " customers from database");
+				loaded = ReactiveCacheOperations.timed(waitSomeTime()
+						.thenMany(this.customerRepository.findAllById(misses))
+						.<Map<Object, Customer>>collect(LinkedHashMap::new, (map, c) -> map.put(c.getId(), c)),
+						this.cacheMetrics.loadTimer(CACHE))
+						.flatMap(customers -> this.cacheOperations.putAll(CACHE, customers).thenReturn(customers));
+			}
+			return loaded.flatMapIterable(customers -> {
+				found.putAll(customers);
+				List<Customer> ordered = new ArrayList<>(ids.size());
+				for (Long id : ids) {
+					Customer customer = found.get(id);
+					if (customer != null)
+						ordered.add(customer);
+				}
+				return ordered;
+			});
+		});
+	}
+
+	@Override
+	public Mono<Customer> add(Customer customer) {
+		log.info(" write to database");
+		return this.customerRepository.insertAll(List.of(customer)).next()
+				.flatMap(created -> idsAdded(List.of(created.getId()))
+						.then(this.cacheOperations.put(CACHE, created.getId(), created))
+						.thenReturn(created));
+	}
+
+	//  each batch is one batched insert followed by one burst of writes to redis.  a customer that can't be read
+	//  ends the body like the servlet service's iterator: the ones before it are loaded, and the result has their
+	//  count and the error
+	@Override
+	public Mono<BulkLoadResult> addAll(Flux<Customer> customers, boolean useCache) {
+		return Mono.defer(() -> {
+			long start = System.nanoTime();
+			AtomicReference<String> error = new AtomicReference<>();
+			return customers
+					.onErrorResume(ServerWebInputException.class, e -> {
+						error.set(e.getReason());
+						return Mono.empty();
+					})
+					.buffer(bulkBatchSize)
+					.concatMap(batch -> insertBatch(batch, useCache))
+					.reduce(0L, Long::sum)
+					.map(rows -> {
+						long elapsedMillis = Math.max(1, (System.nanoTime() - start) / 1_000_000);
+						double rowsPerSecond = rows * 1000.0 / elapsedMillis;
+						if (error.get() != null)
+							log.warn("bulk load stopped after " + rows + " customers: " + error.get());
+						else
+							log.info("bulk loaded " + rows + " customers in " + elapsedMillis + " ms, " + (long) rowsPerSecond + " rows/s");
+						return new BulkLoadResult(rows, useCache, elapsedMillis, rowsPerSecond, error.get());
+					});
+		});
+	}
+
+	private Mono<Long> insertBatch(List<Customer> batch, boolean useCache) {
+		return this.customerRepository.insertAll(batch)
+				.collect(LinkedHashMap<Object, Customer>::new, (map, c) -> map.put(c.getId(), c))
+				.flatMap(entries -> idsAdded(entries.keySet().stream().map(Long.class::cast).toList())
+						.then(useCache ? this.cacheOperations.putAll(CACHE, entries) : Mono.<Void>empty())
+						.thenReturn((long) entries.size()));
+	}
+
+	//  CustomerIdFilter.added, publishing without blocking
+	private Mono<Void> idsAdded(Collection<Long> ids) {
+		if (!this.customerIdFilter.isEnabled() || ids.isEmpty()) {
+			return Mono.empty();
+		}
+		this.customerIdFilter.addLocal(ids);
+		byte[] message = this.customerIdFilter.message(ids).getBytes(StandardCharsets.UTF_8);
+		return this.reactiveCacheTemplate.convertAndSend(this.customerIdFilter.getChannel(), message)
+				//  the other nodes pick the ids up on their next rebuild
+				.doOnError(e -> log.warn("could not publish " + ids.size() + " new customer ids", e))
+				.onErrorResume(e -> Mono.empty())
+				.then();
+	}
+
+	@Override
+	public Mono<Customer> update(Customer customer) {
+		return this.customerRepository.findById(customer.getId())
+				.flatMap(repCustomer -> {
+					repCustomer.setName(customer.getName());
+					repCustomer.setContactName(customer.getContactName());
+					repCustomer.setAddress(customer.getAddress());
+					repCustomer.setCity(customer.getCity());
+					repCustomer.setPostalCode(customer.getPostalCode());
+					repCustomer.setCountry(customer.getCountry());
+					return this.customerRepository.save(repCustomer);
+				})
+				.flatMap(updated -> this.cacheOperations.put(CACHE, updated.getId(), updated).thenReturn(updated));
+	}
+
+	//  one UPDATE ... RETURNING, the returned row is cached as is
+	@Override
+	public Mono<Customer> patch(long id, Map<String, String> changes) {
+		return this.customerRepository.patch(id, changes)
+				.flatMap(updated -> this.cacheOperations.put(CACHE, updated.getId(), updated).thenReturn(updated));
+	}
+
+	@Override
+	public Mono<EvictionProgress> evictCache() {
+		//  a scan eviction only starts here, a generation bump is one blocking INCR
+		return Mono.fromCallable(() -> this.cacheEvictor.evictAll(CACHE)).subscribeOn(Schedulers.boundedElastic());
+	}
+
+	@Override
+	public Mono<EvictionProgress> getEvictionProgress() {
+		return Mono.justOrEmpty(this.cacheEvictor.progress(CACHE));
+	}
+
+	@Override
+	public Mono<Void> delete(long id) {
+		return this.customerRepository.deleteById(id)
+				.doOnSuccess(done -> this.customerIdFilter.deleted(id))
+				.then(this.cacheOperations.evict(CACHE, id));
+	}
+
+	//  concurrent misses on one id share a single load, an id that doesn't exist is not cached
+	@Override
+	public Mono<Customer> getCustomerById(long id) {
+		return this.cacheOperations.get(CACHE, id, Customer.class,
+				() -> waitSomeTime().then(this.customerRepository.findById(id)));
+	}
+
+	//  same simulated database latency as the servlet service, on a timer instead of a sleeping thread
+	private Mono<Long> waitSomeTime() {
+		return Mono.delay(Duration.ofMillis(3));
+	}
+
+}
@@ -0,0 +1,95 @@
+package com.coderkan.writebehind;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamRecords;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import com.coderkan.models.Customer;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Producer side of write-behind.  Customer writes are appended to a redis stream and
+ * acknowledged right away, the {@link WriteBehindWorker} later flushes them to the database.
+ */
+@Slf4j
+@Component
+public class WriteBehindQueue {
+
+	static final String FIELD_OP = "op";
+	static final String FIELD_ID = "id";
+	static final String FIELD_CUSTOMER = "customer";
+	static final String FIELD_CHANGES = "changes";
+	static final String OP_UPSERT = "upsert";
+	static final String OP_PATCH = "patch";
+	static final String OP_DELETE = "delete";
+
+	@Autowired
+	private StringRedisTemplate stringRedisTemplate;
+	@Autowired
+	private ObjectMapper objectMapper;
+
+	@Value("${cache.write-behind.enabled:false}")
+	private boolean enabled;
+
+	@Value("${cache.write-behind.stream:customers:write-behind}")
+	private String streamKey;
+
+	public boolean isEnabled() {
+		return this.enabled;
+	}
+
+	public String getStreamKey() {
+		return this.streamKey;
+	}
+
+	public RecordId upsert(Customer customer) {
+		Map<String, String> fields = new HashMap<>();
+		fields.put(FIELD_OP, OP_UPSERT);
+		fields.put(FIELD_ID, String.valueOf(customer.getId()));
+		fields.put(FIELD_CUSTOMER, toJson(customer, customer.getId()));
+		return append(fields);
+	}
+
+	/**
+	 * Only the changed fields, see {@link com.coderkan.repositories.CustomerPatch}, the worker applies them to
+	 * the row as it is when the patch is flushed.
+	 */
+	public RecordId patch(long id, Map<String, String> changes) {
+		Map<String, String> fields = new HashMap<>();
+		fields.put(FIELD_OP, OP_PATCH);
+		fields.put(FIELD_ID, String.valueOf(id));
+		fields.put(FIELD_CHANGES, toJson(changes, id));
+		return append(fields);
+	}
+
+	public RecordId delete(long id) {
+		Map<String, String> fields = new HashMap<>();
+		fields.put(FIELD_OP, OP_DELETE);
+		fields.put(FIELD_ID, String.valueOf(id));
+		return append(fields);
+	}
+
+	private RecordId append(Map<String, String> fields) {
+		RecordId recordId = this.stringRedisTemplate.opsForStream()
+				.add(StreamRecords.newRecord().in(this.streamKey).ofMap(fields));
+		log.debug("write-behind queued " + fields.get(FIELD_OP) + " " + fields.get(FIELD_ID) + " as " + recordId);
+		return recordId;
+	}
+
+	private String toJson(Object value, long id) {
+		try {
+			return this.objectMapper.writeValueAsString(value);
+		} catch (JsonProcessingException e) {
+			throw new IllegalArgumentException("could not serialize customer " + id, e);
+		}
+	}
+}
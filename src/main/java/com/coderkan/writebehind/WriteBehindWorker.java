@@ -0,0 +1,392 @@
+package com.coderkan.writebehind;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.RedisSystemException;
+import org.springframework.data.redis.connection.Limit;
+import org.springframework.data.redis.connection.RedisStreamCommands.XClaimOptions;
+import org.springframework.data.redis.connection.stream.Consumer;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.PendingMessage;
+import org.springframework.data.redis.connection.stream.PendingMessages;
+import org.springframework.data.redis.connection.stream.ReadOffset;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamOffset;
+import org.springframework.data.redis.connection.stream.StreamReadOptions;
+import org.springframework.data.redis.connection.stream.StreamRecords;
+import org.springframework.data.redis.core.StreamOperations;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import com.coderkan.cache.CacheBatchOperations;
+import com.coderkan.cache.TwoLevelCache;
+import com.coderkan.models.Customer;
+import com.coderkan.repositories.CustomerPatch;
+import com.coderkan.repositories.CustomerRepository;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Consumer group worker draining the write-behind stream into postgres.
+ * Each read batch is collapsed to the last operation per customer id and written with JDBC batching,
+ * patches carry only the changed fields and are written as UPDATEs of those columns.
+ * A failed batch is retried, then retried record by record, and records that still fail
+ * are moved to the dead letter stream so they never block the ones behind them.
+ * Flushed records are acked and deleted, so the stream length is the write-behind lag.
+ * Deleted customers are evicted once more after their rows are gone - a read between the delete and its
+ * flush loads the row, still there, back into the cache.
+ * <p>
+ * Every claim-min-idle-ms the worker also sweeps the group's pending entries list and takes over entries
+ * that were delivered but not acked for that long - those of a node that crashed, was redeployed or scaled
+ * away, and its own when an ack failed after the database write.  Entries already delivered max-deliveries
+ * times go to the dead letter stream instead of round again.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "cache.write-behind", name = "enabled", havingValue = "true")
+public class WriteBehindWorker implements SmartLifecycle, Runnable {
+
+	@Autowired
+	private WriteBehindQueue writeBehindQueue;
+	@Autowired
+	private StringRedisTemplate stringRedisTemplate;
+	@Autowired
+	private CustomerRepository customerRepository;
+	@Autowired
+	private ObjectMapper objectMapper;
+	@Autowired
+	private CacheBatchOperations cacheBatchOperations;
+	@Autowired
+	private CacheManager cacheManager;
+
+	@Value("${cache.write-behind.group:customers-writer}")
+	private String group;
+
+	@Value("${cache.write-behind.batch-size:500}")
+	private int batchSize;
+
+	@Value("${cache.write-behind.poll-timeout-ms:1000}")
+	private long pollTimeout;
+
+	@Value("${cache.write-behind.max-retries:3}")
+	private int maxRetries;
+
+	@Value("${cache.write-behind.retry-backoff-ms:200}")
+	private long retryBackoff;
+
+	@Value("${cache.write-behind.dead-letter-stream:customers:write-behind:dlq}")
+	private String deadLetterStream;
+
+	@Value("${cache.write-behind.claim-min-idle-ms:60000}")
+	private long claimMinIdle;
+
+	@Value("${cache.write-behind.max-deliveries:5}")
+	private long maxDeliveries;
+
+	@Value("${spring.threads.virtual.enabled:false}")
+	private boolean virtualThreads;
+
+	private final String consumerName = "writer-" + UUID.randomUUID();
+	private final Counter flushedCounter;
+	private final Counter deadLetterCounter;
+	private final Timer flushTimer;
+	private volatile boolean running;
+	private Thread thread;
+
+	public WriteBehindWorker(MeterRegistry meterRegistry) {
+		this.flushedCounter = Counter.builder("writebehind.flushed")
+				.description("customer writes flushed from the stream to the database")
+				.register(meterRegistry);
+		this.deadLetterCounter = Counter.builder("writebehind.dead.letters")
+				.description("customer writes moved to the dead letter stream")
+				.register(meterRegistry);
+		this.flushTimer = Timer.builder("writebehind.flush")
+				.description("time to write one batch to the database")
+				.publishPercentiles(0.5, 0.95, 0.99)
+				.register(meterRegistry);
+		Gauge.builder("writebehind.lag", this, WriteBehindWorker::lag)
+				.description("stream entries not yet flushed to the database")
+				.register(meterRegistry);
+		Gauge.builder("writebehind.lag.seconds", this, WriteBehindWorker::lagSeconds)
+				.description("age of the oldest stream entry not yet flushed")
+				.register(meterRegistry);
+	}
+
+	@Override
+	public void start() {
+		createGroup();
+		this.running = true;
+		if (virtualThreads) {
+			this.thread = Thread.ofVirtual().name("write-behind-worker").unstarted(this);
+		} else {
+			this.thread = new Thread(this, "write-behind-worker");
+			this.thread.setDaemon(true);
+		}
+		this.thread.start();
+		log.info("write-behind worker " + consumerName + " started on " + writeBehindQueue.getStreamKey());
+	}
+
+	@Override
+	public void stop() {
+		this.running = false;
+		if (this.thread != null) {
+			try {
+				this.thread.join(pollTimeout * 2);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		log.info("write-behind worker " + consumerName + " stopped");
+	}
+
+	@Override
+	public boolean isRunning() {
+		return this.running;
+	}
+
+	@Override
+	public void run() {
+		StreamOperations<String, Object, Object> ops = stringRedisTemplate.opsForStream();
+		Consumer consumer = Consumer.from(group, consumerName);
+		StreamReadOptions options = StreamReadOptions.empty().count(batchSize).block(Duration.ofMillis(pollTimeout));
+		//  the first sweep runs straight away, it picks up what a node stopped before us left pending
+		long nextSweep = 0;
+		while (running) {
+			try {
+				if (System.currentTimeMillis() >= nextSweep) {
+					nextSweep = System.currentTimeMillis() + claimMinIdle;
+					reclaim();
+				}
+				List<MapRecord<String, Object, Object>> records = ops.read(consumer, options,
+						StreamOffset.create(writeBehindQueue.getStreamKey(), ReadOffset.lastConsumed()));
+				if (records == null || records.isEmpty()) {
+					continue;
+				}
+				flush(records);
+			} catch (RuntimeException e) {
+				log.error("write-behind worker read failed", e);
+				sleep(retryBackoff);
+			}
+		}
+	}
+
+	void flush(List<MapRecord<String, Object, Object>> records) {
+		if (!write(records, maxRetries)) {
+			if (records.size() > 1) {
+				log.warn("write-behind batch of " + records.size() + " failed, retrying one record at a time");
+				for (MapRecord<String, Object, Object> record : records) {
+					if (!write(Collections.singletonList(record), 1)) {
+						deadLetter(record);
+					}
+				}
+			} else {
+				deadLetter(records.get(0));
+			}
+		}
+		acknowledge(records);
+	}
+
+	/**
+	 * Claims the group's entries that have been pending at least claim-min-idle-ms, whichever consumer has them,
+	 * and flushes them, or dead-letters those delivered max-deliveries times already.
+	 *
+	 * @return the number of entries taken over
+	 */
+	int reclaim() {
+		StreamOperations<String, Object, Object> ops = stringRedisTemplate.opsForStream();
+		String streamKey = writeBehindQueue.getStreamKey();
+		Duration minIdle = Duration.ofMillis(claimMinIdle);
+		int claimed = 0;
+		Range<String> range = Range.unbounded();
+		while (true) {
+			PendingMessages pending = ops.pending(streamKey, group, range, batchSize);
+			if (pending == null || pending.isEmpty()) {
+				return claimed;
+			}
+			List<RecordId> stale = new ArrayList<>();
+			Set<RecordId> exhausted = new LinkedHashSet<>();
+			for (PendingMessage message : pending) {
+				if (message.getElapsedTimeSinceLastDelivery().compareTo(minIdle) >= 0) {
+					stale.add(message.getId());
+					if (message.getTotalDeliveryCount() >= maxDeliveries) {
+						exhausted.add(message.getId());
+					}
+				}
+			}
+			if (!stale.isEmpty()) {
+				//  XCLAIM checks the idle time again, so of two nodes sweeping at once only one gets each entry
+				List<MapRecord<String, Object, Object>> records = ops.claim(streamKey, group, consumerName,
+						XClaimOptions.minIdle(minIdle).ids(stale));
+				if (records != null && !records.isEmpty()) {
+					claimed += records.size();
+					log.warn("write-behind worker " + consumerName + " took over " + records.size() + " stale entries");
+					List<MapRecord<String, Object, Object>> retry = new ArrayList<>(records.size());
+					for (MapRecord<String, Object, Object> record : records) {
+						if (exhausted.contains(record.getId())) {
+							deadLetter(record);
+							acknowledge(Collections.singletonList(record));
+						} else {
+							retry.add(record);
+						}
+					}
+					if (!retry.isEmpty()) {
+						flush(retry);
+					}
+				}
+			}
+			if (pending.size() < batchSize) {
+				return claimed;
+			}
+			RecordId last = pending.get(pending.size() - 1).getId();
+			range = Range.rightUnbounded(
+					Range.Bound.inclusive(RecordId.of(last.getTimestamp(), last.getSequence() + 1).getValue()));
+		}
+	}
+
+	private void acknowledge(List<MapRecord<String, Object, Object>> records) {
+		RecordId[] ids = records.stream().map(MapRecord::getId).toArray(RecordId[]::new);
+		StreamOperations<String, Object, Object> ops = stringRedisTemplate.opsForStream();
+		ops.acknowledge(writeBehindQueue.getStreamKey(), group, ids);
+		ops.delete(writeBehindQueue.getStreamKey(), ids);
+	}
+
+	private boolean write(List<MapRecord<String, Object, Object>> records, int attempts) {
+		//  keep only the last operation per id, the stream is in write order.  a patch is merged onto an upsert
+		//  or an earlier patch of its id, and dropped after a delete
+		Map<Long, Customer> upserts = new LinkedHashMap<>();
+		Map<Long, Map<String, String>> patches = new LinkedHashMap<>();
+		Set<Long> deletes = new LinkedHashSet<>();
+		try {
+			for (MapRecord<String, Object, Object> record : records) {
+				Map<Object, Object> fields = record.getValue();
+				Long id = Long.valueOf((String) fields.get(WriteBehindQueue.FIELD_ID));
+				Object op = fields.get(WriteBehindQueue.FIELD_OP);
+				if (WriteBehindQueue.OP_DELETE.equals(op)) {
+					upserts.remove(id);
+					patches.remove(id);
+					deletes.add(id);
+				} else if (WriteBehindQueue.OP_PATCH.equals(op)) {
+					Map<String, String> changes = toChanges((String) fields.get(WriteBehindQueue.FIELD_CHANGES));
+					CustomerPatch.columns(changes);
+					if (upserts.containsKey(id)) {
+						upserts.put(id, CustomerPatch.apply(upserts.get(id), changes));
+					} else if (!deletes.contains(id)) {
+						patches.computeIfAbsent(id, key -> new LinkedHashMap<>()).putAll(changes);
+					}
+				} else {
+					deletes.remove(id);
+					patches.remove(id);
+					upserts.put(id, toCustomer((String) fields.get(WriteBehindQueue.FIELD_CUSTOMER)));
+				}
+			}
+		} catch (IllegalArgumentException e) {
+			//  retrying can't fix a malformed record
+			log.warn("write-behind record unreadable: " + e.getMessage());
+			return false;
+		}
+		for (int attempt = 1; attempt <= attempts; attempt++) {
+			try {
+				flushTimer.record(() -> customerRepository.writeBatch(upserts.values(), patches, deletes));
+				flushedCounter.increment(records.size());
+			} catch (RuntimeException e) {
+				log.warn("write-behind flush attempt " + attempt + " of " + attempts + " failed: " + e.getMessage());
+				if (attempt < attempts) {
+					sleep(retryBackoff * attempt);
+				}
+				continue;
+			}
+			//  outside the retries: if redis fails here the records stay unacked and a sweep flushes them again
+			evictDeleted(deletes);
+			return true;
+		}
+		return false;
+	}
+
+	private void evictDeleted(Set<Long> deletes) {
+		if (deletes.isEmpty()) {
+			return;
+		}
+		cacheBatchOperations.evictAll("customers", deletes);
+		if (cacheManager.getCache("customers") instanceof TwoLevelCache nearCache) {
+			deletes.forEach(nearCache::evictNear);
+		}
+	}
+
+	private void deadLetter(MapRecord<String, Object, Object> record) {
+		Map<String, String> fields = new HashMap<>();
+		record.getValue().forEach((k, v) -> fields.put(String.valueOf(k), String.valueOf(v)));
+		fields.put("source-id", record.getId().getValue());
+		log.error("write-behind moving " + record.getId() + " to dead letter stream " + deadLetterStream);
+		stringRedisTemplate.opsForStream().add(StreamRecords.newRecord().in(deadLetterStream).ofMap(fields));
+		deadLetterCounter.increment();
+	}
+
+	private Map<String, String> toChanges(String json) {
+		try {
+			return objectMapper.readValue(json, new TypeReference<Map<String, String>>() { });
+		} catch (Exception e) {
+			throw new IllegalArgumentException("unreadable write-behind patch " + json, e);
+		}
+	}
+
+	private Customer toCustomer(String json) {
+		try {
+			return objectMapper.readValue(json, Customer.class);
+		} catch (Exception e) {
+			throw new IllegalArgumentException("unreadable write-behind customer " + json, e);
+		}
+	}
+
+	private void createGroup() {
+		try {
+			stringRedisTemplate.opsForStream().createGroup(writeBehindQueue.getStreamKey(), ReadOffset.from("0"), group);
+		} catch (RedisSystemException e) {
+			//  BUSYGROUP - another node or an earlier run already created it
+			log.debug("write-behind group " + group + " already exists");
+		}
+	}
+
+	private double lag() {
+		Long size = stringRedisTemplate.opsForStream().size(writeBehindQueue.getStreamKey());
+		return size == null ? 0 : size;
+	}
+
+	private double lagSeconds() {
+		List<MapRecord<String, Object, Object>> oldest = stringRedisTemplate.opsForStream()
+				.range(writeBehindQueue.getStreamKey(), Range.unbounded(), Limit.limit().count(1));
+		if (oldest == null || oldest.isEmpty()) {
+			return 0;
+		}
+		return Math.max(0, System.currentTimeMillis() - oldest.get(0).getId().getTimestamp()) / 1000.0;
+	}
+
+	private void sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			running = false;
+		}
+	}
+}
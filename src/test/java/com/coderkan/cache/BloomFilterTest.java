@@ -0,0 +1,36 @@
+package com.coderkan.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class BloomFilterTest {
+
+	@Test
+	void everyKeyPutIsFound() {
+		BloomFilter filter = BloomFilter.create(100_000, 0.01);
+		for (long id = 1; id <= 100_000; id++) {
+			filter.put(id);
+		}
+		for (long id = 1; id <= 100_000; id++) {
+			assertTrue(filter.mightContain(id));
+		}
+		assertEquals(100_000, filter.getPuts());
+	}
+
+	@Test
+	void falsePositiveRateIsNearTheTarget() {
+		BloomFilter filter = BloomFilter.create(100_000, 0.01);
+		for (long id = 1; id <= 100_000; id++) {
+			filter.put(id);
+		}
+		int falsePositives = 0;
+		for (long id = 1_000_000; id < 1_100_000; id++) {
+			if (filter.mightContain(id))
+				falsePositives++;
+		}
+		assertTrue(falsePositives < 1500, falsePositives + " false positives in 100000");
+		assertTrue(filter.expectedFalsePositiveRate() < 0.015);
+	}
+}
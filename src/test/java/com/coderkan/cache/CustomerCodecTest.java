@@ -0,0 +1,94 @@
+package com.coderkan.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.support.NullValue;
+import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+
+import com.coderkan.models.Customer;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+class CustomerCodecTest {
+
+	private final CustomerCodec codec = new CustomerCodec(512);
+
+	@Test
+	void customerRoundTrip() {
+		Customer customer = customer(42L);
+		customer.setCity(null);
+		byte[] bytes = codec.serialize(customer);
+		assertEquals(customer, codec.deserialize(bytes));
+		assertTrue(bytes.length < new GenericJackson2JsonRedisSerializer().serialize(customer).length / 2);
+	}
+
+	@Test
+	void largeListIsCompressed() {
+		List<Customer> customers = new ArrayList<>();
+		for (long id = 1; id <= 200; id++) {
+			customers.add(customer(id));
+		}
+		byte[] bytes = codec.serialize(customers);
+		assertEquals(CustomerCodec.TYPE_LIST | CustomerCodec.FLAG_LZ4, bytes[1]);
+		assertEquals(customers, codec.deserialize(bytes));
+	}
+
+	@Test
+	void jsonValuesStillReadable() {
+		GenericJackson2JsonRedisSerializer json = new GenericJackson2JsonRedisSerializer();
+		Customer customer = customer(7L);
+		assertEquals(customer, codec.deserialize(json.serialize(customer)));
+		assertInstanceOf(NullValue.class, codec.deserialize(codec.serialize(NullValue.INSTANCE)));
+	}
+
+	@Test
+	void cachedBytesRenderAsJacksonWould() throws Exception {
+		ObjectMapper objectMapper = new ObjectMapper();
+		Customer customer = customer(-3L);
+		customer.setName("Zoë \"Q\" \\ Ltd\n");
+		customer.setCity(null);
+		String expected = objectMapper.writeValueAsString(customer);
+		assertEquals(expected, writeJson(objectMapper, codec.serialize(customer)));
+		assertEquals(expected, writeJson(objectMapper, new GenericJackson2JsonRedisSerializer().serialize(customer)));
+		assertEquals("", writeJson(objectMapper, codec.serialize(List.of(customer))));
+		assertEquals("", writeJson(objectMapper, codec.serialize(NullValue.INSTANCE)));
+		assertTrue(CustomerCodec.isCustomer(codec.serialize(customer)));
+		assertFalse(CustomerCodec.isCustomer(new GenericJackson2JsonRedisSerializer().serialize(customer)));
+		assertFalse(CustomerCodec.isCustomer(codec.serialize(List.of(customer))));
+
+		String etag = CacheBatchOperations.etag(codec.serialize(customer));
+		assertEquals(etag, CacheBatchOperations.etag(codec.serialize(codec.deserialize(codec.serialize(customer)))));
+		customer.setCity("Shelbyville");
+		assertFalse(etag.equals(CacheBatchOperations.etag(codec.serialize(customer))));
+	}
+
+	private static String writeJson(ObjectMapper objectMapper, byte[] bytes) throws Exception {
+		//  utf-8 bytes are copied as they are only by a generator on a stream, like the servlet one
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+			CustomerCodec.writeJson(bytes, generator);
+		}
+		return out.toString(StandardCharsets.UTF_8);
+	}
+
+	private static Customer customer(long id) {
+		Customer customer = new Customer();
+		customer.setId(id);
+		customer.setName("Customer " + id);
+		customer.setContactName("Contact " + id);
+		customer.setAddress(id + " Main Street");
+		customer.setCity("Springfield");
+		customer.setPostalCode("12345");
+		customer.setCountry("USA");
+		return customer;
+	}
+}
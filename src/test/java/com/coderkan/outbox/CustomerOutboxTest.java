@@ -0,0 +1,88 @@
+package com.coderkan.outbox;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.transaction.support.TransactionTemplate;
+
+//  the rows the postgres trigger would write are inserted directly, h2 has no plpgsql
+class CustomerOutboxTest {
+
+	private EmbeddedDatabase database;
+	private JdbcTemplate jdbcTemplate;
+	private CustomerOutbox outbox;
+
+	@BeforeEach
+	void createOutbox() {
+		database = new EmbeddedDatabaseBuilder().setType(EmbeddedDatabaseType.H2).generateUniqueName(true).build();
+		jdbcTemplate = new JdbcTemplate(database);
+		outbox = new CustomerOutbox(jdbcTemplate, new TransactionTemplate(new DataSourceTransactionManager(database)),
+				"test");
+		outbox.createSchema();
+	}
+
+	@AfterEach
+	void shutdown() {
+		database.shutdown();
+	}
+
+	@Test
+	void batchesAreHandedOutInOrderAndMoveTheCheckpoint() {
+		for (long customerId = 1; customerId <= 5; customerId++) {
+			jdbcTemplate.update("insert into customer_outbox (customer_id, op) values (?, 'U')", customerId);
+		}
+		assertEquals(5, outbox.lag().getPending());
+
+		List<Long> handled = new ArrayList<>();
+		assertEquals(3, outbox.poll(3, events -> events.forEach(event -> handled.add(event.getCustomerId()))));
+		assertEquals(List.of(1L, 2L, 3L), handled);
+		assertEquals(3, outbox.checkpoint());
+		assertEquals(2, outbox.lag().getPending());
+
+		assertEquals(2, outbox.poll(3, events -> events.forEach(event -> handled.add(event.getCustomerId()))));
+		assertEquals(List.of(1L, 2L, 3L, 4L, 5L), handled);
+		assertEquals(5, outbox.checkpoint());
+		assertEquals(0, outbox.poll(3, events -> handled.add(-1L)));
+		assertEquals(0, outbox.lag().getPending());
+	}
+
+	@Test
+	void theWritersOriginIsHandedOut() {
+		jdbcTemplate.update("insert into customer_outbox (customer_id, op, origin) values (3, 'U', ?)", OutboxEvent.SERVICE);
+		jdbcTemplate.update("insert into customer_outbox (customer_id, op) values (4, 'U')");
+
+		List<OutboxEvent> handled = new ArrayList<>();
+		assertEquals(2, outbox.poll(10, handled::addAll));
+		assertEquals(OutboxEvent.SERVICE, handled.get(0).getOrigin());
+		assertNull(handled.get(1).getOrigin());
+	}
+
+	@Test
+	void aFailedBatchIsHandedOutAgain() {
+		jdbcTemplate.update("insert into customer_outbox (customer_id, op) values (7, 'D')");
+
+		assertThrows(IllegalStateException.class, () -> outbox.poll(10, events -> {
+			throw new IllegalStateException("redis down");
+		}));
+		assertEquals(0, outbox.checkpoint());
+		assertEquals(1, outbox.lag().getPending());
+
+		List<OutboxEvent> handled = new ArrayList<>();
+		assertEquals(1, outbox.poll(10, handled::addAll));
+		assertEquals(7, handled.get(0).getCustomerId());
+		assertEquals(OutboxEvent.DELETE, handled.get(0).getOp());
+		assertEquals(0, outbox.lag().getPending());
+	}
+}
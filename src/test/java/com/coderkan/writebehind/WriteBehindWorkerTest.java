@@ -0,0 +1,166 @@
+package com.coderkan.writebehind;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.cache.CacheManager;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.RedisStreamCommands.XClaimOptions;
+import org.springframework.data.redis.connection.stream.Consumer;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.PendingMessage;
+import org.springframework.data.redis.connection.stream.PendingMessages;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamRecords;
+import org.springframework.data.redis.core.StreamOperations;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.coderkan.cache.CacheBatchOperations;
+import com.coderkan.models.Customer;
+import com.coderkan.repositories.CustomerRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+//  redis is mocked, the sweep's decisions are what's under test
+class WriteBehindWorkerTest {
+
+	private static final String STREAM = "customers:write-behind";
+	private static final String GROUP = "customers-writer";
+
+	private StreamOperations<String, Object, Object> ops;
+	private CustomerRepository customerRepository;
+	private CacheBatchOperations cacheBatchOperations;
+	private WriteBehindWorker worker;
+
+	@BeforeEach
+	@SuppressWarnings("unchecked")
+	void createWorker() {
+		ops = mock(StreamOperations.class);
+		StringRedisTemplate template = mock(StringRedisTemplate.class);
+		when(template.opsForStream()).thenReturn(ops);
+		WriteBehindQueue queue = mock(WriteBehindQueue.class);
+		when(queue.getStreamKey()).thenReturn(STREAM);
+		customerRepository = mock(CustomerRepository.class);
+		cacheBatchOperations = mock(CacheBatchOperations.class);
+
+		worker = new WriteBehindWorker(new SimpleMeterRegistry());
+		ReflectionTestUtils.setField(worker, "writeBehindQueue", queue);
+		ReflectionTestUtils.setField(worker, "stringRedisTemplate", template);
+		ReflectionTestUtils.setField(worker, "customerRepository", customerRepository);
+		ReflectionTestUtils.setField(worker, "objectMapper", new ObjectMapper());
+		ReflectionTestUtils.setField(worker, "cacheBatchOperations", cacheBatchOperations);
+		ReflectionTestUtils.setField(worker, "cacheManager", mock(CacheManager.class));
+		ReflectionTestUtils.setField(worker, "group", GROUP);
+		ReflectionTestUtils.setField(worker, "batchSize", 10);
+		ReflectionTestUtils.setField(worker, "maxRetries", 1);
+		ReflectionTestUtils.setField(worker, "deadLetterStream", STREAM + ":dlq");
+		ReflectionTestUtils.setField(worker, "claimMinIdle", 60_000L);
+		ReflectionTestUtils.setField(worker, "maxDeliveries", 5L);
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	void staleEntriesOfAGoneConsumerAreFlushedAndTheExhaustedDeadLettered() {
+		RecordId stale = RecordId.of(1000, 0);
+		RecordId exhausted = RecordId.of(1000, 1);
+		RecordId recent = RecordId.of(2000, 0);
+		Consumer gone = Consumer.from(GROUP, "writer-gone");
+		when(ops.pending(eq(STREAM), eq(GROUP), any(Range.class), anyLong())).thenReturn(new PendingMessages(GROUP,
+				List.of(new PendingMessage(stale, gone, Duration.ofMinutes(5), 1),
+						new PendingMessage(exhausted, gone, Duration.ofMinutes(5), 5),
+						new PendingMessage(recent, gone, Duration.ofSeconds(1), 1))));
+		when(ops.claim(eq(STREAM), eq(GROUP), any(String.class), any(XClaimOptions.class)))
+				.thenReturn(List.of(upsert(stale, 1, "Ada"), upsert(exhausted, 2, "Bob")));
+
+		assertEquals(2, worker.reclaim());
+
+		ArgumentCaptor<XClaimOptions> claim = ArgumentCaptor.forClass(XClaimOptions.class);
+		verify(ops).claim(eq(STREAM), eq(GROUP), any(String.class), claim.capture());
+		assertEquals(List.of(stale, exhausted), claim.getValue().getIds());
+		assertEquals(Duration.ofMinutes(1), claim.getValue().getMinIdleTime());
+
+		ArgumentCaptor<Collection<Customer>> written = ArgumentCaptor.forClass(Collection.class);
+		verify(customerRepository).writeBatch(written.capture(), any(), any());
+		assertEquals(List.of(1L), written.getValue().stream().map(Customer::getId).toList());
+
+		ArgumentCaptor<MapRecord<String, String, String>> deadLetter = ArgumentCaptor.forClass(MapRecord.class);
+		verify(ops).add(deadLetter.capture());
+		assertEquals(STREAM + ":dlq", deadLetter.getValue().getStream());
+		assertEquals("2", deadLetter.getValue().getValue().get("id"));
+		verify(ops).acknowledge(STREAM, GROUP, stale);
+		verify(ops).acknowledge(STREAM, GROUP, exhausted);
+		verify(ops, never()).acknowledge(STREAM, GROUP, recent);
+	}
+
+	@Test
+	void nothingIsClaimedWhileEveryEntryIsStillBeingWorkedOn() {
+		when(ops.pending(eq(STREAM), eq(GROUP), any(Range.class), anyLong())).thenReturn(new PendingMessages(GROUP,
+				List.of(new PendingMessage(RecordId.of(1000, 0), Consumer.from(GROUP, "writer-busy"), Duration.ofSeconds(2), 1))));
+
+		assertEquals(0, worker.reclaim());
+		verify(ops, never()).claim(any(), any(), any(), any(XClaimOptions.class));
+	}
+
+	@Test
+	void aFlushedDeleteIsEvictedAgainAfterTheRowIsGone() {
+		MapRecord<String, Object, Object> delete = StreamRecords.newRecord().in(STREAM).withId(RecordId.of(3000, 0))
+				.ofMap(Map.<Object, Object>of(WriteBehindQueue.FIELD_OP, WriteBehindQueue.OP_DELETE,
+						WriteBehindQueue.FIELD_ID, "9"));
+
+		worker.flush(List.of(delete));
+
+		verify(customerRepository).writeBatch(argThat(Collection::isEmpty), eq(Map.of()), eq(Set.of(9L)));
+		verify(cacheBatchOperations).evictAll("customers", Set.of(9L));
+		verify(ops).acknowledge(STREAM, GROUP, delete.getId());
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	void patchesAreMergedOntoTheChangesBeforeThemAndCarryOnlyTheirFields() {
+		worker.flush(List.of(upsert(RecordId.of(4000, 0), 1, "Ada"),
+				patch(RecordId.of(4000, 1), 1, "{\"city\":\"Ankara\"}"),
+				patch(RecordId.of(4000, 2), 2, "{\"name\":\"Bob\"}"),
+				patch(RecordId.of(4000, 3), 2, "{\"country\":\"TR\"}")));
+
+		ArgumentCaptor<Collection<Customer>> upserts = ArgumentCaptor.forClass(Collection.class);
+		ArgumentCaptor<Map<Long, Map<String, String>>> patches = ArgumentCaptor.forClass(Map.class);
+		verify(customerRepository).writeBatch(upserts.capture(), patches.capture(), any());
+		Customer ada = upserts.getValue().iterator().next();
+		assertEquals("Ada", ada.getName());
+		assertEquals("Ankara", ada.getCity());
+		assertEquals(Map.of(2L, Map.of("name", "Bob", "country", "TR")), patches.getValue());
+	}
+
+	private static MapRecord<String, Object, Object> patch(RecordId id, long customerId, String changes) {
+		return StreamRecords.newRecord().in(STREAM).withId(id).ofMap(Map.<Object, Object>of(
+				WriteBehindQueue.FIELD_OP, WriteBehindQueue.OP_PATCH,
+				WriteBehindQueue.FIELD_ID, String.valueOf(customerId),
+				WriteBehindQueue.FIELD_CHANGES, changes));
+	}
+
+	private static MapRecord<String, Object, Object> upsert(RecordId id, long customerId, String name) {
+		String json = "{\"id\":" + customerId + ",\"name\":\"" + name + "\",\"city\":\"Izmir\"}";
+		return StreamRecords.newRecord().in(STREAM).withId(id).ofMap(Map.<Object, Object>of(
+				WriteBehindQueue.FIELD_OP, WriteBehindQueue.OP_UPSERT,
+				WriteBehindQueue.FIELD_ID, String.valueOf(customerId),
+				WriteBehindQueue.FIELD_CUSTOMER, json));
+	}
+}